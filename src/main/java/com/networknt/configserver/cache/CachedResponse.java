@@ -0,0 +1,306 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.cache;
+
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Final body of a response with its content type, kept as immutable bytes.
+ *
+ * The gzip and deflate variants are compressed on first use and kept with the entry, so a cache hit costs neither
+ * serialization nor compression. With an {@link OffHeapStore} the body and its variants are kept in direct buffers.
+ * A response is reference counted: it starts with one reference for its creator, every user takes one with
+ * {@link #retain()} and gives it back with {@link #release()}, and the off-heap budget is returned on the last release.
+ * A cold response, see {@link #toCold()}, keeps only its gzip variant on the heap and inflates the body on demand.
+ */
+public class CachedResponse {
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+
+    // null when the response is cold
+    private final ByteBuffer body;
+    private final String contentType;
+    private final boolean immutable;
+    private final long expiresAt;
+    private final OffHeapStore offHeapStore;
+    private final AtomicInteger references = new AtomicInteger(1);
+    private volatile ByteBuffer gzip;
+    private volatile ByteBuffer deflate;
+    private volatile String etag;
+
+    public CachedResponse(byte[] body, String contentType, boolean immutable, long expiresAt) {
+        this(body, contentType, immutable, expiresAt, null);
+    }
+
+    /**
+     * @param offHeapStore store to keep the body and its variants in, or null to keep them on the heap
+     */
+    public CachedResponse(byte[] body, String contentType, boolean immutable, long expiresAt, OffHeapStore offHeapStore) {
+        ByteBuffer offHeapBody = offHeapStore == null ? null : offHeapStore.copyOf(body);
+        this.body = offHeapBody != null ? offHeapBody : ByteBuffer.wrap(DedupPool.dedup(body)).asReadOnlyBuffer();
+        this.offHeapStore = offHeapBody != null ? offHeapStore : null;
+        this.contentType = contentType;
+        this.immutable = immutable;
+        this.expiresAt = expiresAt;
+    }
+
+    private CachedResponse(ByteBuffer gzip, String contentType, boolean immutable, long expiresAt) {
+        this.body = null;
+        this.offHeapStore = null;
+        this.gzip = gzip;
+        this.contentType = contentType;
+        this.immutable = immutable;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * @param encoding null, GZIP or DEFLATE
+     * @return independent read-only view of the body in the given content encoding
+     */
+    public ByteBuffer getBody(String encoding) {
+        if (GZIP.equals(encoding)) {
+            if (gzip == null) {
+                compress(true);
+            }
+            return gzip.duplicate();
+        }
+        if (DEFLATE.equals(encoding)) {
+            if (deflate == null) {
+                compress(false);
+            }
+            return deflate.duplicate();
+        }
+        return identity();
+    }
+
+    /**
+     * @return hex SHA-256 of the identity body, computed on first use
+     */
+    public String getETag() {
+        String value = etag;
+        if (value == null) {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                digest.update(identity());
+                StringBuilder hex = new StringBuilder();
+                for (byte b : digest.digest()) {
+                    hex.append(String.format("%02x", b));
+                }
+                value = hex.toString();
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+            etag = value;
+        }
+        return value;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * @return true when the response was read at a revision that can never change
+     */
+    public boolean isImmutable() {
+        return immutable;
+    }
+
+    /**
+     * @return epoch millis the response expires at, unless it is immutable
+     */
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    public boolean isFresh(long now) {
+        return immutable || now < expiresAt;
+    }
+
+    /**
+     * @return true when the body is kept off-heap
+     */
+    public boolean isOffHeap() {
+        return offHeapStore != null;
+    }
+
+    /**
+     * @return true when only the gzip variant is kept, see {@link #toCold()}
+     */
+    public boolean isCold() {
+        return body == null;
+    }
+
+    /**
+     * Build the cold form of this response, which keeps only the gzip variant on the heap. An existing gzip variant
+     * is reused, otherwise the body is compressed at the fastest level.
+     *
+     * @return cold response with one reference for the caller
+     */
+    CachedResponse toCold() {
+        CachedResponse cold;
+        if (isCold()) {
+            cold = new CachedResponse(gzip, contentType, immutable, expiresAt);
+            cold.etag = etag;
+            return cold;
+        }
+        ByteBuffer variant = gzip;
+        byte[] bytes;
+        if (variant != null) {
+            bytes = new byte[variant.remaining()];
+            variant.duplicate().get(bytes);
+        } else {
+            bytes = gzipBytes(body.duplicate(), Deflater.BEST_SPEED);
+        }
+        cold = new CachedResponse(ByteBuffer.wrap(DedupPool.dedup(bytes)).asReadOnlyBuffer(), contentType, immutable, expiresAt);
+        cold.etag = etag;
+        return cold;
+    }
+
+    /**
+     * Build the hot form of a cold response, with the body inflated again. The gzip variant is kept.
+     *
+     * @param offHeapStore store to keep the body in, or null to keep it on the heap
+     * @return hot response with one reference for the caller
+     */
+    CachedResponse toHot(OffHeapStore offHeapStore) {
+        ByteBuffer identity = identity();
+        byte[] bytes = new byte[identity.remaining()];
+        identity.get(bytes);
+        CachedResponse hot = new CachedResponse(bytes, contentType, immutable, expiresAt, offHeapStore);
+        hot.gzip = gzip;
+        hot.etag = etag;
+        return hot;
+    }
+
+    /**
+     * Take a reference.
+     *
+     * @return false when the response was already released by all its users and must not be used
+     */
+    public boolean retain() {
+        int count;
+        do {
+            count = references.get();
+            if (count <= 0) {
+                return false;
+            }
+        } while (!references.compareAndSet(count, count + 1));
+        return true;
+    }
+
+    /**
+     * Give back a reference; the last one returns the off-heap budget.
+     */
+    public void release() {
+        if (references.decrementAndGet() == 0 && offHeapStore != null) {
+            offHeapStore.free(body);
+            synchronized (this) {
+                if (gzip != null && gzip.isDirect()) {
+                    offHeapStore.free(gzip);
+                }
+                if (deflate != null && deflate.isDirect()) {
+                    offHeapStore.free(deflate);
+                }
+            }
+        }
+    }
+
+    private synchronized void compress(boolean gzipFormat) {
+        if ((gzipFormat ? gzip : deflate) != null) {
+            return;
+        }
+        ByteBuffer source = identity();
+        byte[] bytes = gzipFormat ? gzipBytes(source, Deflater.DEFAULT_COMPRESSION) : deflateBytes(source);
+        // hold a reference over the copy, so that a concurrent last release can not return the budget before the
+        // variant is set and the variant can not outlive it uncredited
+        boolean retained = offHeapStore != null && retain();
+        try {
+            ByteBuffer offHeap = retained ? offHeapStore.copyOf(bytes) : null;
+            ByteBuffer variant = offHeap != null ? offHeap : ByteBuffer.wrap(DedupPool.dedup(bytes)).asReadOnlyBuffer();
+            if (gzipFormat) {
+                gzip = variant;
+            } else {
+                deflate = variant;
+            }
+        } finally {
+            if (retained) {
+                release();
+            }
+        }
+    }
+
+    private ByteBuffer identity() {
+        if (body != null) {
+            return body.duplicate();
+        }
+        ByteArrayOutputStream inflated = new ByteArrayOutputStream(Math.max(64, gzip.remaining() * 4));
+        byte[] buffer = new byte[8192];
+        try (InputStream in = new GZIPInputStream(new ByteBufferBackedInputStream(gzip.duplicate()))) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                inflated.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return ByteBuffer.wrap(inflated.toByteArray()).asReadOnlyBuffer();
+    }
+
+    private static byte[] gzipBytes(ByteBuffer source, int level) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, source.remaining() / 4));
+        try (OutputStream out = new GZIPOutputStream(compressed) {{ def.setLevel(level); }}) {
+            write(source, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static byte[] deflateBytes(ByteBuffer source) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, source.remaining() / 4));
+        try (OutputStream out = new DeflaterOutputStream(compressed)) {
+            write(source, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static void write(ByteBuffer source, OutputStream out) throws IOException {
+        byte[] buffer = new byte[8192];
+        while (source.hasRemaining()) {
+            int length = Math.min(buffer.length, source.remaining());
+            source.get(buffer, 0, length);
+            out.write(buffer, 0, length);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.cache;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Bounded weak pool that makes equal config keys, string values and payloads held by the caches share one instance.
+ *
+ * Hostnames, URLs, log levels and org-wide truststores repeat across thousands of services; passing them through the
+ * pool before they are cached keeps a single copy of each. Strings are matched by content and byte arrays of at least
+ * MIN_BYTES by their SHA-256. The pool only holds weak references, so a value is dropped once no cache uses it, and
+ * it stops taking new values when full instead of evicting, so it never costs more than its bound.
+ */
+public final class DedupPool {
+    static final int MAX_STRINGS = 65536;
+    static final int MAX_BYTE_ARRAYS = 4096;
+    static final int MIN_BYTES = 256;
+
+    private static final Map<String, WeakReference<String>> strings = new WeakHashMap<>();
+    private static final Map<ByteBuffer, DigestReference> byteArrays = new HashMap<>();
+    private static final ReferenceQueue<byte[]> clearedByteArrays = new ReferenceQueue<>();
+
+    private DedupPool() {
+    }
+
+    /**
+     * @return the pooled string equal to value, or value itself when it is new
+     */
+    public static String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        synchronized (strings) {
+            WeakReference<String> reference = strings.get(value);
+            String pooled = reference == null ? null : reference.get();
+            if (pooled != null) {
+                return pooled;
+            }
+            if (strings.size() < MAX_STRINGS) {
+                strings.put(value, new WeakReference<>(value));
+            }
+            return value;
+        }
+    }
+
+    /**
+     * @return the pooled array with the same content as value, or value itself when it is new or small
+     */
+    public static byte[] dedup(byte[] value) {
+        if (value == null || value.length < MIN_BYTES) {
+            return value;
+        }
+        ByteBuffer digest = digest(value);
+        synchronized (byteArrays) {
+            expunge();
+            DigestReference reference = byteArrays.get(digest);
+            byte[] pooled = reference == null ? null : reference.get();
+            if (pooled != null && pooled.length == value.length) {
+                return pooled;
+            }
+            if (byteArrays.size() < MAX_BYTE_ARRAYS) {
+                byteArrays.put(digest, new DigestReference(value, digest, clearedByteArrays));
+            }
+            return value;
+        }
+    }
+
+    private static void expunge() {
+        Reference<? extends byte[]> reference;
+        while ((reference = clearedByteArrays.poll()) != null) {
+            byteArrays.remove(((DigestReference) reference).digest, reference);
+        }
+    }
+
+    private static ByteBuffer digest(byte[] value) {
+        try {
+            return ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(value));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class DigestReference extends WeakReference<byte[]> {
+        private final ByteBuffer digest;
+
+        private DigestReference(byte[] value, ByteBuffer digest, ReferenceQueue<byte[]> queue) {
+            super(value, queue);
+            this.digest = digest;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.cache;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Budget of direct memory for cached cert and file payloads, so that they stay out of the heap and the old generation.
+ *
+ * Payloads are copied into direct buffers, which Undertow writes to the socket without another copy. The store only
+ * accounts for the bytes in use: a payload is charged when it is copied in and credited when the reference count of
+ * its {@link CachedResponse} drops to zero, after which the buffer is left to the collector. When the budget is
+ * exhausted payloads are kept on the heap instead.
+ *
+ * The budget is therefore a soft accounting limit, not a bound on the direct memory of the process: a credited buffer
+ * keeps its native memory until the collector finds it unreachable, which can be long after it was credited when the
+ * heap is quiet. The hard bound stays -XX:MaxDirectMemorySize, which should leave room above the budget for the buffers
+ * awaiting collection and for Undertow's own buffers.
+ */
+public class OffHeapStore {
+    private final long maxBytes;
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    /**
+     * @param maxBytes direct memory budget; 0 keeps all payloads on the heap
+     */
+    public OffHeapStore(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Copy content into a new direct buffer.
+     *
+     * @return read-only direct buffer, or null when the budget can not take the content
+     */
+    public ByteBuffer copyOf(byte[] content) {
+        long used;
+        do {
+            used = usedBytes.get();
+            if (used + content.length > maxBytes) {
+                return null;
+            }
+        } while (!usedBytes.compareAndSet(used, used + content.length));
+        ByteBuffer buffer = ByteBuffer.allocateDirect(content.length);
+        buffer.put(content).flip();
+        return buffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * Give back the budget of a buffer returned by {@link #copyOf}.
+     */
+    public void free(ByteBuffer buffer) {
+        usedBytes.addAndGet(-buffer.capacity());
+    }
+
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+}
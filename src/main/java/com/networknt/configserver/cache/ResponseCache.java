@@ -0,0 +1,523 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.networknt.config.Config;
+import com.networknt.configserver.constants.ConfigServerConstants;
+import com.networknt.configserver.model.ConfigChangeEvent;
+import com.networknt.configserver.model.Service;
+import com.networknt.configserver.model.ServiceConfigs;
+import com.networknt.configserver.provider.ConfigChangeListener;
+import com.networknt.configserver.provider.GitRateLimitScheduler;
+import com.networknt.configserver.provider.IProvider;
+import com.networknt.exception.ApiException;
+import com.networknt.exception.ClientException;
+import com.networknt.status.Status;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Cache of the final response bodies of the configs, certs and files endpoints, keyed by artifact type, Service and
+ * a digest of the Authorization header.
+ *
+ * The cache is disabled unless responseCacheEnabled is set. Entries expire after responseCacheTtl seconds, except
+ * entries read at a Git commit SHA, and are dropped when the provider reports a change of the service or its globals.
+ * The provider login still runs for every request, and a cached response is only served to the credentials it was
+ * read with.
+ * Cached responses are reference counted, see {@link CachedResponse}; get and put return a reference that the caller
+ * must release once the response is sent.
+ * Entries not read for responseCacheColdAfter seconds are compressed into a cold tier that keeps only the gzip
+ * bytes on the heap; the next read inflates the entry back.
+ * When responseCacheSnapshotFile is set, the cache is saved to that file every responseCacheSnapshotInterval seconds
+ * and on shutdown, and restored from it on startup. A restored entry is served right away, even past its expiry, and
+ * refreshed from the provider in the background the first time it is served. It keeps being served while the provider
+ * can not be reached, but never more than responseCacheMaxStale seconds past its expiry; it is dropped as soon as the
+ * provider denies the credentials or no longer has the service.
+ */
+public class ResponseCache implements ConfigChangeListener {
+    static final String RESPONSE_CACHE_ENABLED = "responseCacheEnabled";
+    static final String RESPONSE_CACHE_TTL = "responseCacheTtl";
+    static final String RESPONSE_CACHE_MAX_ENTRIES = "responseCacheMaxEntries";
+    static final String RESPONSE_CACHE_OFF_HEAP_MAX_BYTES = "responseCacheOffHeapMaxBytes";
+    static final String RESPONSE_CACHE_COLD_AFTER = "responseCacheColdAfter";
+    static final String RESPONSE_CACHE_SNAPSHOT_FILE = "responseCacheSnapshotFile";
+    static final String RESPONSE_CACHE_SNAPSHOT_INTERVAL = "responseCacheSnapshotInterval";
+    static final String RESPONSE_CACHE_MAX_STALE = "responseCacheMaxStale";
+    static final long DEFAULT_MAX_STALE = 3600;
+
+    // backend status in the description of ACS00001, "Error while calling backend [{status}|{message}]"
+    private static final Pattern BACKEND_STATUS = Pattern.compile("\\[(\\d{3})\\|");
+
+    private static final Logger logger = LoggerFactory.getLogger(ResponseCache.class);
+    private static volatile ResponseCache instance;
+
+    private final boolean enabled;
+    private final long ttl;
+    private final long coldAfter;
+    private final long maxStale;
+    private final OffHeapStore offHeapStore;
+    private final Map<String, CacheEntry> entries;
+    private final Set<IProvider> listenedProviders = Collections.newSetFromMap(new IdentityHashMap<>());
+    // snapshot entries not requested yet, their bodies are views of the mapped snapshot file
+    private final Map<String, ResponseCacheSnapshot.Entry> restored = new ConcurrentHashMap<>();
+    private final ExecutorService revalidator = Executors.newFixedThreadPool(2, daemonThreads("response-cache-revalidator"));
+
+    ResponseCache(boolean enabled, long ttl, int maxEntries, long offHeapMaxBytes, long coldAfter) {
+        this(enabled, ttl, maxEntries, offHeapMaxBytes, coldAfter, DEFAULT_MAX_STALE);
+    }
+
+    /**
+     * @param coldAfter seconds an entry stays unread before it is compressed, 0 to never compress
+     * @param maxStale  seconds past its expiry a restored entry may still be served while it can not be refreshed
+     */
+    ResponseCache(boolean enabled, long ttl, int maxEntries, long offHeapMaxBytes, long coldAfter, long maxStale) {
+        this.enabled = enabled;
+        this.ttl = ttl;
+        this.coldAfter = coldAfter;
+        this.maxStale = maxStale;
+        this.offHeapStore = new OffHeapStore(offHeapMaxBytes);
+        this.entries = Collections.synchronizedMap(new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                if (size() > maxEntries) {
+                    eldest.getValue().response.release();
+                    return true;
+                }
+                return false;
+            }
+        });
+    }
+
+    public static ResponseCache getInstance() {
+        if (instance == null) {
+            synchronized (ResponseCache.class) {
+                if (instance == null) {
+                    Map<String, Object> config = Config.getInstance().getJsonMapConfig(ConfigServerConstants.CONFIG_NAME);
+                    ResponseCache cache = new ResponseCache(Boolean.parseBoolean(String.valueOf(config.get(RESPONSE_CACHE_ENABLED))),
+                            getLong(config, RESPONSE_CACHE_TTL, 60), (int) getLong(config, RESPONSE_CACHE_MAX_ENTRIES, 10000),
+                            getLong(config, RESPONSE_CACHE_OFF_HEAP_MAX_BYTES, 268435456), getLong(config, RESPONSE_CACHE_COLD_AFTER, 300),
+                            getLong(config, RESPONSE_CACHE_MAX_STALE, DEFAULT_MAX_STALE));
+                    Object snapshotFile = config.get(RESPONSE_CACHE_SNAPSHOT_FILE);
+                    Path snapshot = snapshotFile == null || snapshotFile.toString().isEmpty() ? null : Paths.get(snapshotFile.toString());
+                    cache.scheduleMaintenance(snapshot, getLong(config, RESPONSE_CACHE_SNAPSHOT_INTERVAL, 60));
+                    instance = cache;
+                }
+            }
+        }
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public OffHeapStore getOffHeapStore() {
+        return offHeapStore;
+    }
+
+    /**
+     * Build the cache key of a response.
+     *
+     * @param artifactType  CONFIGS, CERTS or FILES
+     * @param authorization Authorization header of the request
+     * @param service       requested service
+     * @param format        content type of the response body
+     * @return cache key
+     */
+    public static String key(String artifactType, String authorization, Service service, String format) {
+        return artifactType + ' ' + digest(authorization) + ' ' + service.getProjectName() + '/' + service.getProjectVersion()
+                + '/' + service.getServiceName() + '/' + service.getServiceVersion() + '/' + service.getEnvironment()
+                + '@' + service.getRef() + ' ' + format;
+    }
+
+    /**
+     * @return fresh cached response with a reference taken for the caller, or null when the cache is disabled or has
+     * no fresh entry
+     */
+    public CachedResponse get(IProvider provider, String key) {
+        if (!enabled) {
+            return null;
+        }
+        listen(provider);
+        CacheEntry entry = entries.get(key);
+        if (entry == null) {
+            entry = restore(key);
+            if (entry == null) {
+                return null;
+            }
+        }
+        long now = System.currentTimeMillis();
+        CachedResponse response = entry.response;
+        if (!isServable(response, entry.restored, now)) {
+            if (entries.remove(key, entry)) {
+                release(entry);
+            }
+            return null;
+        }
+        entry.lastAccess = now;
+        if (response.isCold()) {
+            response = promote(key, entry, response);
+        }
+        return response.retain() ? response : null;
+    }
+
+    /**
+     * Store a response body. Nothing is stored when the cache is disabled. Cert and file bodies are kept off-heap
+     * while the responseCacheOffHeapMaxBytes budget allows.
+     *
+     * @return the response to send, with a reference owned by the caller
+     */
+    public CachedResponse put(String key, String artifactType, Service service, byte[] body, String contentType, boolean immutable) {
+        boolean cacheable = enabled && (immutable || ttl > 0);
+        boolean payload = isPayload(artifactType);
+        CachedResponse response = new CachedResponse(body, contentType, immutable, System.currentTimeMillis() + ttl * 1000,
+                cacheable && payload ? offHeapStore : null);
+        if (cacheable) {
+            response.retain();
+            CacheEntry previous = entries.put(key, new CacheEntry(response, artifactType, service.getProjectName(), service.getEnvironment()));
+            if (previous != null) {
+                release(previous);
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Refresh an entry restored from the snapshot in the background, once it has been served. The loader runs in the
+     * background lane of the Git rate limit. When the provider can not be reached the restored entry is kept, within
+     * responseCacheMaxStale, and the next request retries; any other failure drops it.
+     *
+     * @param key    cache key of the served response
+     * @param mapper mapper of the response format
+     * @param loader reads the response from the provider again
+     */
+    public void revalidate(String key, ObjectMapper mapper, Callable<ServiceConfigs> loader) {
+        CacheEntry entry = entries.get(key);
+        if (entry == null || !entry.restored || !entry.revalidating.compareAndSet(false, true)) {
+            return;
+        }
+        revalidator.execute(() -> {
+            try {
+                ServiceConfigs serviceConfigs = GitRateLimitScheduler.withPriority(GitRateLimitScheduler.Priority.BACKGROUND, loader);
+                if (serviceConfigs == null || serviceConfigs.getConfigProperties() == null) {
+                    throw new IllegalStateException("no configProperties returned");
+                }
+                put(key, entry.artifactType, serviceConfigs.getService(), mapper.writeValueAsBytes(serviceConfigs),
+                        entry.response.getContentType(), serviceConfigs.isImmutable()).release();
+                // still there when the refreshed response is not cacheable
+                if (entries.remove(key, entry)) {
+                    release(entry);
+                }
+            } catch (Exception e) {
+                if (isUnavailable(e)) {
+                    logger.warn("Could not revalidate restored response {}: {}", key, e.getMessage());
+                    entry.revalidating.set(false);
+                } else {
+                    // denied, gone or otherwise rejected: the restored response must not be served again
+                    logger.info("Dropping restored response {}: {}", key, e.getMessage());
+                    if (entries.remove(key, entry)) {
+                        release(entry);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Save the fresh entries, and the restored entries not requested yet, to the snapshot file.
+     */
+    void checkpoint(Path file) throws IOException {
+        Map<String, CacheEntry> current;
+        synchronized (entries) {
+            current = new LinkedHashMap<>(entries);
+        }
+        long now = System.currentTimeMillis();
+        List<ResponseCacheSnapshot.Entry> snapshot = new ArrayList<>();
+        for (ResponseCacheSnapshot.Entry entry : restored.values()) {
+            if (entry.immutable || now < entry.expiresAt + maxStale * 1000) {
+                snapshot.add(entry);
+            }
+        }
+        List<CachedResponse> retained = new ArrayList<>();
+        try {
+            for (Map.Entry<String, CacheEntry> entry : current.entrySet()) {
+                CacheEntry cacheEntry = entry.getValue();
+                CachedResponse response = cacheEntry.response;
+                if (!isServable(response, cacheEntry.restored, now) || !response.retain()) {
+                    continue;
+                }
+                retained.add(response);
+                snapshot.add(new ResponseCacheSnapshot.Entry(entry.getKey(), cacheEntry.artifactType, cacheEntry.projectName,
+                        cacheEntry.environment, response.getContentType(), response.getETag(), response.isImmutable(),
+                        response.getExpiresAt(), response.getBody(null)));
+            }
+            ResponseCacheSnapshot.write(file, snapshot);
+        } finally {
+            retained.forEach(CachedResponse::release);
+        }
+    }
+
+    /**
+     * Load the snapshot file. Entries are only copied into the cache when first requested.
+     *
+     * @return number of entries in the snapshot
+     */
+    int restore(Path file) throws IOException {
+        Map<String, ResponseCacheSnapshot.Entry> snapshot = ResponseCacheSnapshot.read(file);
+        restored.putAll(snapshot);
+        return snapshot.size();
+    }
+
+    /**
+     * Compress the entries not read since coldAfter seconds before now.
+     *
+     * @return number of entries compressed
+     */
+    int compactColdEntries(long now) {
+        long idleBefore = now - coldAfter * 1000;
+        Map<String, CacheEntry> candidates = new HashMap<>();
+        synchronized (entries) {
+            for (Map.Entry<String, CacheEntry> entry : entries.entrySet()) {
+                CacheEntry cacheEntry = entry.getValue();
+                if (cacheEntry.lastAccess < idleBefore && !cacheEntry.response.isCold()) {
+                    candidates.put(entry.getKey(), cacheEntry);
+                }
+            }
+        }
+        int compacted = 0;
+        for (Map.Entry<String, CacheEntry> candidate : candidates.entrySet()) {
+            CacheEntry entry = candidate.getValue();
+            CachedResponse hot = entry.response;
+            // compressed outside the lock, the swap is skipped when the entry changed meanwhile
+            CachedResponse cold = hot.toCold();
+            if (swap(candidate.getKey(), entry, hot, cold)) {
+                hot.release();
+                compacted++;
+            } else {
+                cold.release();
+            }
+        }
+        return compacted;
+    }
+
+    @Override
+    public void onChange(ConfigChangeEvent event) {
+        synchronized (entries) {
+            Iterator<CacheEntry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                CacheEntry entry = iterator.next();
+                if (entry.artifactType.equals(event.getConfigType())
+                        && entry.projectName.equals(event.getProjectName())
+                        && entry.environment.equals(event.getEnvironment())) {
+                    iterator.remove();
+                    release(entry);
+                }
+            }
+        }
+        restored.values().removeIf(entry -> entry.artifactType.equals(event.getConfigType())
+                && entry.projectName.equals(event.getProjectName())
+                && entry.environment.equals(event.getEnvironment()));
+    }
+
+    /**
+     * Tell the failures of a backend that could not answer from the answers it gave.
+     *
+     * @return true for transport errors, and backend errors with a 429 or 5xx status or without a status; false when
+     * the backend answered, e.g. with a 401, 403 or 404
+     */
+    static boolean isUnavailable(Exception e) {
+        if (e instanceof IOException || e instanceof ClientException) {
+            return true;
+        }
+        if (!(e instanceof ApiException) || ((ApiException) e).getStatus() == null) {
+            return false;
+        }
+        Status status = ((ApiException) e).getStatus();
+        if (!"ACS00001".equals(status.getCode())) {
+            return false;
+        }
+        Matcher matcher = status.getDescription() == null ? null : BACKEND_STATUS.matcher(status.getDescription());
+        if (matcher == null || !matcher.find()) {
+            return true;
+        }
+        int backendStatus = Integer.parseInt(matcher.group(1));
+        return backendStatus == 429 || backendStatus >= 500;
+    }
+
+    private boolean isServable(CachedResponse response, boolean restored, long now) {
+        return response.isFresh(now) || restored && now < response.getExpiresAt() + maxStale * 1000;
+    }
+
+    private CacheEntry restore(String key) {
+        ResponseCacheSnapshot.Entry snapshot = restored.remove(key);
+        if (snapshot == null) {
+            return null;
+        }
+        byte[] body = new byte[snapshot.body.remaining()];
+        snapshot.body.duplicate().get(body);
+        CachedResponse response = new CachedResponse(body, snapshot.contentType, snapshot.immutable, snapshot.expiresAt,
+                isPayload(snapshot.artifactType) ? offHeapStore : null);
+        if (!response.getETag().equals(snapshot.etag)) {
+            logger.warn("Dropping corrupt snapshot entry {}", key);
+            response.release();
+            return null;
+        }
+        CacheEntry entry = new CacheEntry(response, snapshot.artifactType, snapshot.projectName, snapshot.environment);
+        entry.restored = true;
+        synchronized (entries) {
+            CacheEntry current = entries.get(key);
+            if (current != null) {
+                response.release();
+                return current;
+            }
+            entries.put(key, entry);
+        }
+        return entry;
+    }
+
+    private CachedResponse promote(String key, CacheEntry entry, CachedResponse cold) {
+        CachedResponse hot = cold.toHot(isPayload(entry.artifactType) ? offHeapStore : null);
+        if (swap(key, entry, cold, hot)) {
+            cold.release();
+            return hot;
+        }
+        // another request promoted or removed the entry first
+        hot.release();
+        CachedResponse current = entry.response;
+        return current.isCold() ? cold : current;
+    }
+
+    private boolean swap(String key, CacheEntry entry, CachedResponse expected, CachedResponse replacement) {
+        synchronized (entries) {
+            if (entries.get(key) != entry || entry.response != expected) {
+                return false;
+            }
+            entry.response = replacement;
+            return true;
+        }
+    }
+
+    private void release(CacheEntry entry) {
+        synchronized (entries) {
+            entry.response.release();
+        }
+    }
+
+    private void scheduleMaintenance(Path snapshot, long snapshotInterval) {
+        if (!enabled) {
+            return;
+        }
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(daemonThreads("response-cache-maintenance"));
+        if (coldAfter > 0) {
+            long period = Math.max(1, coldAfter / 2);
+            executor.scheduleWithFixedDelay(() -> compactColdEntries(System.currentTimeMillis()), period, period, TimeUnit.SECONDS);
+        }
+        if (snapshot != null) {
+            try {
+                logger.info("Restored {} responses from {}", restore(snapshot), snapshot);
+            } catch (IOException e) {
+                logger.warn("Could not restore the response cache from {}", snapshot, e);
+            }
+            Runnable checkpoint = () -> {
+                try {
+                    checkpoint(snapshot);
+                } catch (IOException | RuntimeException e) {
+                    logger.warn("Could not save the response cache to {}", snapshot, e);
+                }
+            };
+            long period = Math.max(1, snapshotInterval);
+            executor.scheduleWithFixedDelay(checkpoint, period, period, TimeUnit.SECONDS);
+            Runtime.getRuntime().addShutdownHook(new Thread(checkpoint, "response-cache-snapshot"));
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static boolean isPayload(String artifactType) {
+        return ConfigServerConstants.CERTS.equals(artifactType) || ConfigServerConstants.FILES.equals(artifactType);
+    }
+
+    private void listen(IProvider provider) {
+        synchronized (listenedProviders) {
+            if (listenedProviders.add(provider)) {
+                provider.addChangeListener(this);
+            }
+        }
+    }
+
+    private static long getLong(Map<String, Object> config, String key, long defaultValue) {
+        Object value = config.get(key);
+        return value == null ? defaultValue : Long.parseLong(value.toString());
+    }
+
+    private static String digest(String value) {
+        if (value == null) {
+            return "";
+        }
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class CacheEntry {
+        private final String artifactType;
+        private final String projectName;
+        private final String environment;
+        // swapped between the hot and cold forms while holding the entries lock
+        private volatile CachedResponse response;
+        private volatile long lastAccess;
+        // restored from the snapshot and not refreshed from the provider yet
+        private volatile boolean restored;
+        private final AtomicBoolean revalidating = new AtomicBoolean();
+
+        private CacheEntry(CachedResponse response, String artifactType, String projectName, String environment) {
+            this.response = response;
+            this.artifactType = artifactType;
+            this.projectName = projectName;
+            this.environment = environment;
+            this.lastAccess = System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.cache;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Snapshot file of the {@link ResponseCache}, so that a restarted server can answer from the responses it had cached.
+ *
+ * The snapshot is written to a temporary file which then replaces the previous one, so a crash never leaves a partial
+ * snapshot behind. It is read through a memory-mapped buffer: only the entry headers are parsed on load, and a body
+ * is paged in when its entry is first requested.
+ *
+ * The snapshot holds the response bodies as served, i.e. the decrypted configs, certs and files of every cached service,
+ * so it is as sensitive as the backend itself. It is created readable and writable by the owner only where the file
+ * system supports POSIX permissions; elsewhere, and for the directory it is in, access must be restricted by the
+ * operator.
+ */
+class ResponseCacheSnapshot {
+    // "LCSC"
+    private static final int MAGIC = 0x4c435343;
+    private static final int VERSION = 1;
+    private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rw-------");
+
+    private ResponseCacheSnapshot() {
+    }
+
+    /**
+     * Write the entries to the snapshot file, replacing the previous snapshot.
+     */
+    static void write(Path file, Collection<Entry> entries) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        // created with its permissions before any secret is written to it
+        Files.deleteIfExists(temp);
+        if (Files.getFileStore(temp.toAbsolutePath().getParent()).supportsFileAttributeView(PosixFileAttributeView.class)) {
+            Files.createFile(temp, PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+        } else {
+            Files.createFile(temp);
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            byte[] buffer = new byte[8192];
+            for (Entry entry : entries) {
+                writeString(out, entry.key);
+                writeString(out, entry.artifactType);
+                writeString(out, entry.projectName);
+                writeString(out, entry.environment);
+                writeString(out, entry.contentType);
+                writeString(out, entry.etag);
+                out.writeBoolean(entry.immutable);
+                out.writeLong(entry.expiresAt);
+                ByteBuffer body = entry.body.duplicate();
+                out.writeInt(body.remaining());
+                while (body.hasRemaining()) {
+                    int length = Math.min(buffer.length, body.remaining());
+                    body.get(buffer, 0, length);
+                    out.write(buffer, 0, length);
+                }
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Map the snapshot file and index its entries. The bodies are views of the mapped file.
+     *
+     * @return entries by cache key, empty when there is no snapshot file
+     * @throws IOException when the file can not be read or is not a valid snapshot
+     */
+    static Map<String, Entry> read(Path file) throws IOException {
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        if (!Files.isRegularFile(file)) {
+            return entries;
+        }
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Response cache snapshot too large: " + file);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Not a response cache snapshot: " + file);
+            }
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                String key = readString(buffer);
+                String artifactType = readString(buffer);
+                String projectName = readString(buffer);
+                String environment = readString(buffer);
+                String contentType = readString(buffer);
+                String etag = readString(buffer);
+                boolean immutable = buffer.get() != 0;
+                long expiresAt = buffer.getLong();
+                int length = buffer.getInt();
+                ByteBuffer body = buffer.slice();
+                body.limit(length);
+                buffer.position(buffer.position() + length);
+                entries.put(key, new Entry(key, artifactType, projectName, environment, contentType, etag, immutable,
+                        expiresAt, body.asReadOnlyBuffer()));
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Truncated response cache snapshot: " + file, e);
+        }
+        return entries;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes == null ? -1 : bytes.length);
+        if (bytes != null) {
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static class Entry {
+        final String key;
+        final String artifactType;
+        final String projectName;
+        final String environment;
+        final String contentType;
+        final String etag;
+        final boolean immutable;
+        final long expiresAt;
+        final ByteBuffer body;
+
+        Entry(String key, String artifactType, String projectName, String environment, String contentType, String etag,
+              boolean immutable, long expiresAt, ByteBuffer body) {
+            this.key = key;
+            this.artifactType = artifactType;
+            this.projectName = projectName;
+            this.environment = environment;
+            this.contentType = contentType;
+            this.etag = etag;
+            this.immutable = immutable;
+            this.expiresAt = expiresAt;
+            this.body = body;
+        }
+    }
+}
@@ -26,6 +26,10 @@ public class ConfigServerConstants {
     public static final String SERVICE_NAME="service_name";
     public static final String SERVICE_VERSION="service_version";
     public static final String ENVIRONMENT="environment";
+    public static final String REF="ref";
+    public static final String FILE_NAME="file_name";
+    public static final String CONFIG_TYPE="config_type";
+    public static final String PATH="path";
 
     public static final String PROJECT_NAME_PLACEHOLDER="{projectName}";
     public static final String ENVIRONMENT_PLACEHOLDER="{environment}";
@@ -34,4 +38,10 @@ public class ConfigServerConstants {
     public static final String FILES="files";
     public static final String CERTS="certs";
     public static final String GLOBALS="globals";
+    public static final String SERVICE="service";
+
+    public static final String CACHE_CONTROL_IMMUTABLE="private, max-age=31536000, immutable";
+
+    public static final String MULTIPART_MIXED="multipart/mixed";
+    public static final String APPLICATION_ZIP="application/zip";
 }
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.handler;
+
+import com.networknt.config.Config;
+import com.networknt.configserver.constants.ConfigServerConstants;
+import com.networknt.configserver.model.ConfigFingerprint;
+import com.networknt.configserver.model.Service;
+import com.networknt.configserver.provider.ConfigMerkleTree;
+import com.networknt.configserver.provider.IProvider;
+import com.networknt.exception.ApiException;
+import com.networknt.handler.LightHttpHandler;
+import com.networknt.httpstring.ContentType;
+import com.networknt.status.Status;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Returns the hash of a node of the config hierarchy and the hashes of its children, from the {@link ConfigMerkleTree}.
+ * A client compares them with its own tree and walks down only the children that differ. The hash is also the strong
+ * ETag of the response, so polling a node with If-None-Match costs a 304 until something below it changes.
+ *
+ * The tree holds the services of every token. A node at or below a service is only returned when the provider lets
+ * the token read that service, for the config type of the node or for all of them at the service itself; the answer
+ * is remembered for fingerprintAccessTtl seconds per Authorization header, as the provider may issue a new token on
+ * every login. A node above a service is returned with its hash only, as its
+ * children are the projects and services of everyone.
+ */
+public class GetFingerprintHandler implements LightHttpHandler {
+    static Logger logger = LoggerFactory.getLogger(GetFingerprintHandler.class);
+
+    static final String FINGERPRINT_ACCESS_TTL = "fingerprintAccessTtl";
+    // "{projectName}/{projectVersion}/{serviceName}/{serviceVersion}/{environment}"
+    static final int SERVICE_DEPTH = 5;
+    private static final List<String> CONFIG_TYPES = Arrays.asList(ConfigServerConstants.CONFIGS,
+            ConfigServerConstants.CERTS, ConfigServerConstants.FILES);
+    private static final int ACCESS_MAX_SIZE = 10000;
+
+    // "{configType} {Authorization digest} {service path}" to the epoch millis the provider last granted it until
+    private static final Map<String, Long> access = Collections.synchronizedMap(new LinkedHashMap<String, Long>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > ACCESS_MAX_SIZE;
+        }
+    });
+
+    @Override
+    public void handleRequest(HttpServerExchange exchange) throws Exception {
+        // the provider is called and the response streamed with blocking IO, which is not allowed on the IO thread
+        if (exchange.isInIoThread()) {
+            exchange.dispatch(this);
+            return;
+        }
+        IProvider provider = IProvider.getInstance();
+
+        // Login to provider backend, only clients the backend accepts can compare fingerprints
+        final String authorization = exchange.getRequestHeaders().getFirst(Headers.AUTHORIZATION);
+        String authToken = provider.login(authorization);
+
+        Deque<String> pathParameter = exchange.getQueryParameters().get(ConfigServerConstants.PATH);
+        String path = pathParameter == null ? "" : pathParameter.getFirst();
+        if (!path.isEmpty()) {
+            for (String part : path.split(ConfigServerConstants.SLASH, -1)) {
+                if (!IProvider.isValidFileName(part)) {
+                    throw new ApiException(new Status("ACS00005", path));
+                }
+            }
+        }
+
+        logger.debug("Fingerprint requested for:{}", path);
+        String[] parts = path.isEmpty() ? new String[0] : path.split(ConfigServerConstants.SLASH);
+        if (parts.length >= SERVICE_DEPTH) {
+            authorize(provider, authorization, authToken, parts, getAccessTtl());
+        }
+        ConfigFingerprint fingerprint = ConfigMerkleTree.getInstance().getFingerprint(path);
+        if (fingerprint == null) {
+            throw new ApiException(new Status("ACS00007", path));
+        }
+        if (parts.length < SERVICE_DEPTH) {
+            fingerprint = new ConfigFingerprint(fingerprint.getPath(), fingerprint.getHash(), Collections.emptyMap());
+        }
+        String etag = "\"" + fingerprint.getHash() + "\"";
+        exchange.getResponseHeaders().put(Headers.ETAG, etag);
+        if (JsonResponder.matches(exchange.getRequestHeaders().getFirst(Headers.IF_NONE_MATCH), etag)) {
+            exchange.setStatusCode(304);
+            exchange.endExchange();
+            return;
+        }
+        exchange.setStatusCode(200);
+        exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, ContentType.APPLICATION_JSON.value());
+        JsonResponder.send(exchange, fingerprint);
+    }
+
+    /**
+     * Check that the provider lets the token read the service of a path at or below a service, by reading the config
+     * type of the path, or every config type for the service itself, unless it was granted less than accessTtl
+     * seconds ago for the same Authorization header.
+     *
+     * @param authorization Authorization header the token was logged in with
+     * @param authToken token returned by the provider login
+     * @param parts path split on "/", at least SERVICE_DEPTH long
+     * @throws ApiException as thrown by the provider when it denies the token, or ACS00007 for an unknown config type
+     */
+    static void authorize(IProvider provider, String authorization, String authToken, String[] parts, long accessTtl) throws ApiException {
+        Service service = new Service();
+        service.setProjectName(parts[0]);
+        service.setProjectVersion(parts[1]);
+        service.setServiceName(parts[2]);
+        service.setServiceVersion(parts[3]);
+        service.setEnvironment(parts[4]);
+        String servicePath = String.join(ConfigServerConstants.SLASH, Arrays.copyOf(parts, SERVICE_DEPTH));
+        List<String> configTypes = parts.length > SERVICE_DEPTH ? Collections.singletonList(parts[SERVICE_DEPTH]) : CONFIG_TYPES;
+        String principal = digest(authorization == null ? "" : authorization);
+        for (String configType : configTypes) {
+            if (!CONFIG_TYPES.contains(configType)) {
+                // never recorded, so there is nothing to authorize
+                throw new ApiException(new Status("ACS00007", String.join(ConfigServerConstants.SLASH, parts)));
+            }
+            String key = configType + ' ' + principal + ' ' + servicePath;
+            Long grantedUntil = access.get(key);
+            long now = System.currentTimeMillis();
+            if (grantedUntil != null && now < grantedUntil) {
+                continue;
+            }
+            provider.getServiceConfigs(authToken, service, configType);
+            if (accessTtl > 0) {
+                access.put(key, now + accessTtl * 1000);
+            }
+        }
+    }
+
+    private static long getAccessTtl() {
+        Map<String, Object> config = Config.getInstance().getJsonMapConfig(ConfigServerConstants.CONFIG_NAME);
+        Object value = config == null ? null : config.get(FINGERPRINT_ACCESS_TTL);
+        return value == null ? 60 : Long.parseLong(value.toString());
+    }
+
+    private static String digest(String authorization) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(messageDigest.digest(authorization.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
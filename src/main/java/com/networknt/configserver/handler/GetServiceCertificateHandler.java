@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.handler;
+
+import com.networknt.configserver.constants.ConfigServerConstants;
+import com.networknt.configserver.model.FileContent;
+import com.networknt.configserver.model.Service;
+import com.networknt.configserver.model.ServiceConfigs;
+import com.networknt.configserver.provider.IProvider;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.networknt.config.Config;
+import com.networknt.exception.ApiException;
+import com.networknt.handler.LightHttpHandler;
+import com.networknt.status.Status;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Deque;
+import java.util.Map;
+
+/**
+ * Returns a single certificate of a service; the service certificate is used over a global one with the same name.
+ */
+public class GetServiceCertificateHandler implements LightHttpHandler {
+    static Logger logger = LoggerFactory.getLogger(GetServiceCertificateHandler.class);
+
+    private static final ObjectMapper mapper = Config.getInstance().getMapper();
+
+    @Override
+    public void handleRequest(HttpServerExchange exchange) throws Exception {
+        // the provider is called and the response streamed with blocking IO, which is not allowed on the IO thread
+        if (exchange.isInIoThread()) {
+            exchange.dispatch(this);
+            return;
+        }
+        IProvider provider = IProvider.getInstance();
+
+        // Login to provider backend and get the token
+        final String authorization = exchange.getRequestHeaders().getFirst(Headers.AUTHORIZATION);
+        String clientToken = provider.login(authorization);
+
+        //Get the inputs from request object!.
+        Map<String, Deque<String>> parameters = exchange.getQueryParameters();
+        Service service = new Service();
+        service.setProjectName(parameters.get(ConfigServerConstants.PROJECT_NAME).getFirst());
+        service.setProjectVersion(parameters.get(ConfigServerConstants.PROJECT_VERSION).getFirst());
+        service.setServiceName(parameters.get(ConfigServerConstants.SERVICE_NAME).getFirst());
+        service.setServiceVersion(parameters.get(ConfigServerConstants.SERVICE_VERSION).getFirst());
+        service.setEnvironment(parameters.get(ConfigServerConstants.ENVIRONMENT).getFirst());
+        Deque<String> ref = parameters.get(ConfigServerConstants.REF);
+        if (ref != null) {
+            service.setRef(ref.getFirst());
+        }
+        String fileName = parameters.get(ConfigServerConstants.FILE_NAME).getFirst();
+        if (!IProvider.isValidFileName(fileName)) {
+            throw new ApiException(new Status("ACS00005", fileName));
+        }
+
+        logger.debug("Service Certificate {} requested for:{}", fileName, service);
+        // Read only the requested file from provider
+        ServiceConfigs serviceConfigs = provider.getServiceCertificate(clientToken, service, fileName);
+        if (serviceConfigs.getConfigProperties() instanceof Map && ((Map<?, ?>) serviceConfigs.getConfigProperties()).isEmpty()) {
+            throw new ApiException(new Status("ACS00004", fileName));
+        }
+
+        if (serviceConfigs.getConfigProperties()!= null) {
+            exchange.setStatusCode(200);
+            if (serviceConfigs.isImmutable()) {
+                exchange.getResponseHeaders().put(Headers.CACHE_CONTROL, ConfigServerConstants.CACHE_CONTROL_IMMUTABLE);
+            }
+            String rawContentType = RawFilesResponder.getRawContentType(exchange);
+            if (rawContentType != null) {
+                exchange.startBlocking();
+                RawFilesResponder.send(exchange, serviceConfigs.getConfigProperties(), rawContentType);
+                exchange.endExchange();
+                return;
+            }
+            ResponseFormat format = ResponseFormat.fromAccept(exchange.getRequestHeaders().getFirst(Headers.ACCEPT));
+            exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, format.getContentType());
+            if (format.isBinary()) {
+                serviceConfigs.setConfigProperties(FileContent.toFileContents(serviceConfigs.getConfigProperties()));
+            }
+            JsonResponder.send(exchange, serviceConfigs, format);
+        } else {
+            logger.error("Could not read configs from the provider");
+            exchange.getResponseSender().send(mapper.writeValueAsString(serviceConfigs));
+            Status status = new Status("500");
+            String errorResp = mapper.writeValueAsString(status);
+            exchange.setStatusCode(status.getStatusCode());
+            exchange.getResponseSender().send(errorResp);
+        }
+        exchange.endExchange();
+    }
+}
@@ -16,14 +16,17 @@
 
 package com.networknt.configserver.handler;
 
+import com.networknt.configserver.cache.CachedResponse;
+import com.networknt.configserver.cache.ResponseCache;
 import com.networknt.configserver.constants.ConfigServerConstants;
+import com.networknt.configserver.model.FileContent;
 import com.networknt.configserver.model.Service;
 import com.networknt.configserver.model.ServiceConfigs;
+import com.networknt.configserver.provider.ConfigMerkleTree;
 import com.networknt.configserver.provider.IProvider;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.networknt.config.Config;
 import com.networknt.handler.LightHttpHandler;
-import com.networknt.httpstring.ContentType;
 import com.networknt.status.Status;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.util.Headers;
@@ -40,6 +43,11 @@ public class GetServiceFilesHandler implements LightHttpHandler {
 
     @Override
     public void handleRequest(HttpServerExchange exchange) throws Exception {
+        // the provider is called and the response streamed with blocking IO, which is not allowed on the IO thread
+        if (exchange.isInIoThread()) {
+            exchange.dispatch(this);
+            return;
+        }
         IProvider provider = IProvider.getInstance();
 
         // Login to provider backend and get the token
@@ -54,15 +62,48 @@ public class GetServiceFilesHandler implements LightHttpHandler {
         service.setServiceName(parameters.get(ConfigServerConstants.SERVICE_NAME).getFirst());
         service.setServiceVersion(parameters.get(ConfigServerConstants.SERVICE_VERSION).getFirst());
         service.setEnvironment(parameters.get(ConfigServerConstants.ENVIRONMENT).getFirst());
+        Deque<String> ref = parameters.get(ConfigServerConstants.REF);
+        if (ref != null) {
+            service.setRef(ref.getFirst());
+        }
 
         logger.debug("Service Files requested for:{}", service);
+        String rawContentType = RawFilesResponder.getRawContentType(exchange);
+        ResponseFormat format = ResponseFormat.fromAccept(exchange.getRequestHeaders().getFirst(Headers.ACCEPT));
+        String cacheKey = ResponseCache.key(ConfigServerConstants.FILES, authorization, service, format.getContentType());
+        CachedResponse cached = rawContentType != null ? null : ResponseCache.getInstance().get(provider, cacheKey);
+        if (cached != null) {
+            logger.debug("Serving cached Service Files for:{}", service);
+            JsonResponder.send(exchange, cached);
+            ResponseCache.getInstance().revalidate(cacheKey, format.getMapper(), () -> {
+                ServiceConfigs serviceConfigs = provider.getServiceFiles(clientToken, service);
+                if (format.isBinary()) {
+                    serviceConfigs.setConfigProperties(FileContent.toFileContents(serviceConfigs.getConfigProperties()));
+                }
+                return serviceConfigs;
+            });
+            return;
+        }
         // Read config properties from provider
         ServiceConfigs serviceConfigs = provider.getServiceFiles(clientToken,service);
 
         if (serviceConfigs.getConfigProperties()!= null) {
             exchange.setStatusCode(200);
-            exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, ContentType.APPLICATION_JSON.value());
-            exchange.getResponseSender().send(mapper.writeValueAsString(serviceConfigs));
+            if (serviceConfigs.isImmutable()) {
+                exchange.getResponseHeaders().put(Headers.CACHE_CONTROL, ConfigServerConstants.CACHE_CONTROL_IMMUTABLE);
+            }
+            if (rawContentType != null) {
+                ConfigMerkleTree.getInstance().record(provider, serviceConfigs, ConfigServerConstants.FILES);
+                exchange.startBlocking();
+                RawFilesResponder.send(exchange, serviceConfigs.getConfigProperties(), rawContentType);
+                exchange.endExchange();
+                return;
+            }
+            exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, format.getContentType());
+            if (format.isBinary()) {
+                serviceConfigs.setConfigProperties(FileContent.toFileContents(serviceConfigs.getConfigProperties()));
+            }
+            JsonResponder.send(exchange, serviceConfigs, ConfigServerConstants.FILES, cacheKey, format);
         } else {
             logger.error("Could not read configs from the provider");
             exchange.getResponseSender().send(mapper.writeValueAsString(serviceConfigs));
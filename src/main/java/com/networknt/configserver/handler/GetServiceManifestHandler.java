@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.handler;
+
+import com.networknt.configserver.constants.ConfigServerConstants;
+import com.networknt.configserver.model.Service;
+import com.networknt.configserver.model.FileManifest;
+import com.networknt.configserver.provider.FileManifestCache;
+import com.networknt.configserver.provider.IProvider;
+import com.networknt.exception.ApiException;
+import com.networknt.handler.LightHttpHandler;
+import com.networknt.httpstring.ContentType;
+import com.networknt.status.Status;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Deque;
+import java.util.Map;
+
+/**
+ * Returns the manifest of the certs or files of a service: name, size, SHA-256 and source layer of each merged file.
+ * Clients compare it with their local copies and download only the files that changed.
+ */
+public class GetServiceManifestHandler implements LightHttpHandler {
+    static Logger logger = LoggerFactory.getLogger(GetServiceManifestHandler.class);
+
+    private static final FileManifestCache manifests = new FileManifestCache();
+
+    @Override
+    public void handleRequest(HttpServerExchange exchange) throws Exception {
+        // the provider is called and the response streamed with blocking IO, which is not allowed on the IO thread
+        if (exchange.isInIoThread()) {
+            exchange.dispatch(this);
+            return;
+        }
+        IProvider provider = IProvider.getInstance();
+
+        // Login to provider backend and get the token
+        final String authorization = exchange.getRequestHeaders().getFirst(Headers.AUTHORIZATION);
+        String clientToken = provider.login(authorization);
+
+        //Get the inputs from request object!.
+        Map<String, Deque<String>> parameters = exchange.getQueryParameters();
+        String configType = parameters.get(ConfigServerConstants.CONFIG_TYPE).getFirst();
+        if (!ConfigServerConstants.CERTS.equals(configType) && !ConfigServerConstants.FILES.equals(configType)) {
+            throw new ApiException(new Status("ACS00006", configType));
+        }
+        Service service = new Service();
+        service.setProjectName(parameters.get(ConfigServerConstants.PROJECT_NAME).getFirst());
+        service.setProjectVersion(parameters.get(ConfigServerConstants.PROJECT_VERSION).getFirst());
+        service.setServiceName(parameters.get(ConfigServerConstants.SERVICE_NAME).getFirst());
+        service.setServiceVersion(parameters.get(ConfigServerConstants.SERVICE_VERSION).getFirst());
+        service.setEnvironment(parameters.get(ConfigServerConstants.ENVIRONMENT).getFirst());
+        Deque<String> ref = parameters.get(ConfigServerConstants.REF);
+        if (ref != null) {
+            service.setRef(ref.getFirst());
+        }
+
+        logger.debug("Manifest of {} requested for:{}", configType, service);
+        FileManifest manifest = manifests.getManifest(provider, authorization, clientToken, service, configType);
+
+        exchange.setStatusCode(200);
+        exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, ContentType.APPLICATION_JSON.value());
+        if (manifest.isImmutable()) {
+            exchange.getResponseHeaders().put(Headers.CACHE_CONTROL, ConfigServerConstants.CACHE_CONTROL_IMMUTABLE);
+        }
+        JsonResponder.send(exchange, manifest);
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.handler;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.networknt.configserver.cache.CachedResponse;
+import com.networknt.configserver.cache.ResponseCache;
+import com.networknt.configserver.constants.ConfigServerConstants;
+import com.networknt.configserver.model.ServiceConfigs;
+import com.networknt.configserver.provider.ConfigMerkleTree;
+import com.networknt.configserver.provider.IProvider;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes JSON responses, or CBOR, Smile or YAML ones when the client accepts a {@link ResponseFormat}, by serializing
+ * straight into the exchange output stream.
+ *
+ * The generator fills the pooled Undertow response buffer, which is sent as a chunk whenever it is full, so no
+ * String or byte array of the whole body is built. Small bodies that fit in one buffer still get a Content-Length.
+ * The exchange must not be in the IO thread; handlers dispatch before calling the provider.
+ * When the {@link ResponseCache} is enabled, ServiceConfigs bodies are serialized once into the cache instead, and
+ * cached bodies are written as they are, in the gzip or deflate variant when the client accepts one, with a strong
+ * ETag per variant that answers a matching If-None-Match with a 304.
+ * ServiceConfigs read from the provider are recorded in the {@link ConfigMerkleTree} on the way out.
+ */
+public class JsonResponder {
+    private JsonResponder() {
+    }
+
+    /**
+     * Serialize the value as the response body and end the response.
+     *
+     * @param exchange exchange with status and headers already set
+     * @param value    object to serialize
+     * @throws IOException when the response can not be written
+     */
+    public static void send(HttpServerExchange exchange, Object value) throws IOException {
+        send(exchange, value, ResponseFormat.JSON);
+    }
+
+    /**
+     * Serialize the value in the given format as the response body and end the response.
+     *
+     * @param exchange exchange with status and headers already set
+     * @param value    object to serialize
+     * @param format   format of the body
+     * @throws IOException when the response can not be written
+     */
+    public static void send(HttpServerExchange exchange, Object value, ResponseFormat format) throws IOException {
+        ObjectMapper mapper = format.getMapper();
+        exchange.startBlocking();
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(exchange.getOutputStream(), JsonEncoding.UTF8)) {
+            mapper.writeValue(generator, value);
+        }
+    }
+
+    /**
+     * Send ServiceConfigs and keep the body in the response cache when it is enabled.
+     *
+     * @param exchange       exchange with status and headers already set
+     * @param serviceConfigs configs, certs or files to send
+     * @param artifactType   CONFIGS, CERTS or FILES
+     * @param cacheKey       key from {@link ResponseCache#key}
+     * @param format         format of the body
+     * @throws IOException when the response can not be written
+     */
+    public static void send(HttpServerExchange exchange, ServiceConfigs serviceConfigs, String artifactType, String cacheKey, ResponseFormat format) throws IOException {
+        ConfigMerkleTree.getInstance().record(IProvider.getInstance(), serviceConfigs, artifactType);
+        ResponseCache responseCache = ResponseCache.getInstance();
+        if (!responseCache.isEnabled()) {
+            send(exchange, serviceConfigs, format);
+            return;
+        }
+        send(exchange, responseCache.put(cacheKey, artifactType, serviceConfigs.getService(),
+                format.getMapper().writeValueAsBytes(serviceConfigs), format.getContentType(), serviceConfigs.isImmutable()));
+    }
+
+    /**
+     * Send a cached body without serializing or compressing it again, and release the reference of the caller.
+     * The body is written in blocking mode straight from its buffer, which may be off-heap, to the connection.
+     */
+    public static void send(HttpServerExchange exchange, CachedResponse response) {
+        try {
+            String encoding = getContentEncoding(exchange.getRequestHeaders().getFirst(Headers.ACCEPT_ENCODING));
+            String etag = "\"" + response.getETag() + (encoding == null ? "" : "-" + encoding) + "\"";
+            exchange.getResponseHeaders().put(Headers.ETAG, etag);
+            exchange.getResponseHeaders().put(Headers.VARY, "Accept-Encoding");
+            if (response.isImmutable()) {
+                exchange.getResponseHeaders().put(Headers.CACHE_CONTROL, ConfigServerConstants.CACHE_CONTROL_IMMUTABLE);
+            }
+            if (matches(exchange.getRequestHeaders().getFirst(Headers.IF_NONE_MATCH), etag)) {
+                exchange.setStatusCode(304);
+                exchange.endExchange();
+                return;
+            }
+            ByteBuffer body = response.getBody(encoding);
+            exchange.setStatusCode(200);
+            exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, response.getContentType());
+            if (encoding != null) {
+                exchange.getResponseHeaders().put(Headers.CONTENT_ENCODING, encoding);
+            }
+            exchange.getResponseHeaders().put(Headers.CONTENT_LENGTH, body.remaining());
+            exchange.startBlocking();
+            exchange.getResponseSender().send(body);
+        } finally {
+            response.release();
+        }
+    }
+
+    /**
+     * @return true when the If-None-Match header lists the ETag, or is "*"
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if ("*".equals(value) || etag.equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return GZIP or DEFLATE when accepted, gzip preferred, otherwise null for the identity encoding
+     */
+    static String getContentEncoding(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        boolean deflate = false;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim().toLowerCase();
+            if (parts.length > 1 && parts[1].trim().matches("q=0(\\.0*)?")) {
+                continue;
+            }
+            if (CachedResponse.GZIP.equals(name)) {
+                return CachedResponse.GZIP;
+            }
+            deflate |= CachedResponse.DEFLATE.equals(name);
+        }
+        return deflate ? CachedResponse.DEFLATE : null;
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.handler;
+
+import com.networknt.configserver.constants.ConfigServerConstants;
+import com.networknt.configserver.model.FileContent;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Sends certs and files as raw bytes instead of base64 strings inside the ServiceConfigs JSON.
+ *
+ * The format is picked from the Accept header: multipart/mixed sends one part per file and application/zip sends a
+ * single uncompressed (STORED) archive. Both responses and all parts carry their exact Content-Length.
+ */
+public class RawFilesResponder {
+    // sizes of the zip records written by ZipOutputStream for STORED entries without extra fields or comments
+    private static final int ZIP_LOCAL_HEADER_SIZE = 30;
+    private static final int ZIP_CENTRAL_HEADER_SIZE = 46;
+    private static final int ZIP_END_SIZE = 22;
+    private static final int COPY_BUFFER_SIZE = 8192;
+
+    private RawFilesResponder() {
+    }
+
+    /**
+     * @return MULTIPART_MIXED or APPLICATION_ZIP when the client accepts one of them, otherwise null
+     */
+    public static String getRawContentType(HttpServerExchange exchange) {
+        String accept = exchange.getRequestHeaders().getFirst(Headers.ACCEPT);
+        if (accept == null) {
+            return null;
+        }
+        for (String mediaRange : accept.split(",")) {
+            String mediaType = mediaRange.split(";", 2)[0].trim();
+            if (ConfigServerConstants.MULTIPART_MIXED.equalsIgnoreCase(mediaType)) {
+                return ConfigServerConstants.MULTIPART_MIXED;
+            }
+            if (ConfigServerConstants.APPLICATION_ZIP.equalsIgnoreCase(mediaType)) {
+                return ConfigServerConstants.APPLICATION_ZIP;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Send the files of configProperties in the given raw content type. The exchange must be in blocking mode.
+     */
+    public static void send(HttpServerExchange exchange, Object configProperties, String contentType) throws IOException {
+        Map<String, ByteBuffer> files = getFiles(configProperties);
+        if (ConfigServerConstants.APPLICATION_ZIP.equals(contentType)) {
+            sendZip(exchange, files);
+        } else {
+            sendMultipart(exchange, files);
+        }
+    }
+
+    /**
+     * Decode the file values, which are FileContent buffers or MIME base64 strings depending on the provider.
+     */
+    static Map<String, ByteBuffer> getFiles(Object configProperties) {
+        Map<String, ByteBuffer> files = new TreeMap<>();
+        if (!(configProperties instanceof Map)) {
+            return files;
+        }
+        for (Map.Entry<String, Object> entry : ((Map<String, Object>) configProperties).entrySet()) {
+            if (entry.getValue() != null) {
+                files.put(entry.getKey(), FileContent.toBuffer(entry.getValue()));
+            }
+        }
+        return files;
+    }
+
+    private static void sendMultipart(HttpServerExchange exchange, Map<String, ByteBuffer> files) throws IOException {
+        String boundary = "configserver-" + UUID.randomUUID();
+        Map<String, byte[]> partHeaders = new TreeMap<>();
+        long contentLength = 0;
+        for (Map.Entry<String, ByteBuffer> file : files.entrySet()) {
+            byte[] header = ("--" + boundary + "\r\n"
+                    + "Content-Type: application/octet-stream\r\n"
+                    + "Content-Disposition: attachment; filename=\"" + quoteFileName(file.getKey()) + "\"\r\n"
+                    + "Content-Length: " + file.getValue().remaining() + "\r\n\r\n").getBytes(StandardCharsets.UTF_8);
+            partHeaders.put(file.getKey(), header);
+            contentLength += header.length + file.getValue().remaining() + 2;
+        }
+        byte[] end = ("--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        contentLength += end.length;
+
+        exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, ConfigServerConstants.MULTIPART_MIXED + "; boundary=" + boundary);
+        exchange.getResponseHeaders().put(Headers.CONTENT_LENGTH, contentLength);
+        OutputStream out = exchange.getOutputStream();
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        for (Map.Entry<String, ByteBuffer> file : files.entrySet()) {
+            out.write(partHeaders.get(file.getKey()));
+            copy(file.getValue(), out, buffer);
+            out.write('\r');
+            out.write('\n');
+        }
+        out.write(end);
+        out.flush();
+    }
+
+    private static void sendZip(HttpServerExchange exchange, Map<String, ByteBuffer> files) throws IOException {
+        exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, ConfigServerConstants.APPLICATION_ZIP);
+        exchange.getResponseHeaders().put(Headers.CONTENT_LENGTH, getZipSize(files));
+        ZipOutputStream zip = new ZipOutputStream(exchange.getOutputStream(), StandardCharsets.UTF_8);
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        for (Map.Entry<String, ByteBuffer> file : files.entrySet()) {
+            ByteBuffer content = file.getValue();
+            CRC32 crc = new CRC32();
+            crc.update(content.duplicate());
+            ZipEntry entry = new ZipEntry(file.getKey());
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(content.remaining());
+            entry.setCompressedSize(content.remaining());
+            entry.setCrc(crc.getValue());
+            zip.putNextEntry(entry);
+            copy(content, zip, buffer);
+            zip.closeEntry();
+        }
+        zip.finish();
+        zip.flush();
+    }
+
+    /**
+     * Make a file name safe inside the quoted filename of a Content-Disposition part header: quotes and backslashes are
+     * escaped, and control characters, which could end the header line and inject headers, are percent-encoded.
+     */
+    static String quoteFileName(String fileName) {
+        StringBuilder quoted = new StringBuilder(fileName.length());
+        for (int i = 0; i < fileName.length(); i++) {
+            char c = fileName.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20 || c == 0x7f) {
+                quoted.append(String.format("%%%02X", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.toString();
+    }
+
+    static long getZipSize(Map<String, ByteBuffer> files) {
+        long size = ZIP_END_SIZE;
+        for (Map.Entry<String, ByteBuffer> file : files.entrySet()) {
+            int nameLength = file.getKey().getBytes(StandardCharsets.UTF_8).length;
+            size += ZIP_LOCAL_HEADER_SIZE + ZIP_CENTRAL_HEADER_SIZE + 2 * nameLength + file.getValue().remaining();
+        }
+        return size;
+    }
+
+    private static void copy(ByteBuffer content, OutputStream out, byte[] buffer) throws IOException {
+        ByteBuffer source = content.duplicate();
+        while (source.hasRemaining()) {
+            int length = Math.min(buffer.length, source.remaining());
+            source.get(buffer, 0, length);
+            out.write(buffer, 0, length);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.handler;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLMapper;
+import com.networknt.config.Config;
+import com.networknt.httpstring.ContentType;
+
+/**
+ * Body formats of the ServiceConfigs responses, picked from the Accept header.
+ *
+ * JSON is the default. CBOR and Smile are smaller and faster to parse for clients that opt in, and carry cert and
+ * file content as native byte strings instead of base64. YAML is meant for humans.
+ */
+public enum ResponseFormat {
+    JSON(ContentType.APPLICATION_JSON.value(), Config.getInstance().getMapper()),
+    CBOR("application/cbor", new CBORMapper()),
+    SMILE("application/x-jackson-smile", new SmileMapper()),
+    YAML("application/yaml", new YAMLMapper());
+
+    private static final String APPLICATION_X_YAML = "application/x-yaml";
+
+    private final String contentType;
+    private final ObjectMapper mapper;
+
+    ResponseFormat(String contentType, ObjectMapper mapper) {
+        this.contentType = contentType;
+        this.mapper = mapper;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public ObjectMapper getMapper() {
+        return mapper;
+    }
+
+    /**
+     * @return true when cert and file content is written as raw bytes
+     */
+    public boolean isBinary() {
+        return mapper.getFactory().canHandleBinaryNatively();
+    }
+
+    /**
+     * @return the first format of the Accept header that is not refused with q=0, or JSON when there is none
+     */
+    public static ResponseFormat fromAccept(String accept) {
+        if (accept == null) {
+            return JSON;
+        }
+        for (String mediaRange : accept.split(",")) {
+            String[] parts = mediaRange.split(";");
+            if (parts.length > 1 && parts[1].trim().matches("q=0(\\.0*)?")) {
+                continue;
+            }
+            String mediaType = parts[0].trim();
+            for (ResponseFormat format : values()) {
+                if (format.contentType.equalsIgnoreCase(mediaType)) {
+                    return format;
+                }
+            }
+            if (APPLICATION_X_YAML.equalsIgnoreCase(mediaType)) {
+                return YAML;
+            }
+        }
+        return JSON;
+    }
+}
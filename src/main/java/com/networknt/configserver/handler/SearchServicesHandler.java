@@ -38,6 +38,11 @@ public class SearchServicesHandler implements LightHttpHandler {
 
     @Override
     public void handleRequest(HttpServerExchange exchange) throws Exception {
+        // the provider is called and the response streamed with blocking IO, which is not allowed on the IO thread
+        if (exchange.isInIoThread()) {
+            exchange.dispatch(this);
+            return;
+        }
         IProvider provider = IProvider.getInstance();
 
         // Login to provider backend and get the token
@@ -56,7 +61,7 @@ public class SearchServicesHandler implements LightHttpHandler {
         if (servicesList != null) {
             exchange.setStatusCode(200);
             exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, ContentType.APPLICATION_JSON.value());
-            exchange.getResponseSender().send(mapper.writeValueAsString(servicesList));
+            JsonResponder.send(exchange, servicesList);
         } else {
             logger.error("Could not read services from the vault");
             exchange.getResponseSender().send(mapper.writeValueAsString(servicesList));
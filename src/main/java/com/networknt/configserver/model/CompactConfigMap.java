@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.model;
+
+import com.networknt.configserver.cache.DedupPool;
+
+import java.util.*;
+
+/**
+ * Compact read-only copy of a parsed config tree, used for the documents kept in the config caches.
+ *
+ * A parsed document is a tree of LinkedHashMaps with an entry object per key and a boxed object per number. Here a
+ * map is a sorted array of keys with a parallel array of values, searched with a binary search. Integer,
+ * long, double and boolean values are stored as raw bits in a long array and boxed again when read, so they cost no
+ * object of their own; nested maps and lists are compacted the same way. Maps iterate in key order. Keys and string
+ * values are taken from the {@link DedupPool}, so values repeated across services are stored once.
+ */
+public final class CompactConfigMap extends AbstractMap<String, Object> {
+    private static final CompactConfigMap EMPTY = new CompactConfigMap(new String[0], new Object[0], null);
+
+    // markers of the values stored as raw bits in scalars
+    private static final Object INTEGER = new Object();
+    private static final Object LONG = new Object();
+    private static final Object DOUBLE = new Object();
+    private static final Object BOOLEAN = new Object();
+
+    private final String[] keys;
+    private final Object[] values;
+    private final long[] scalars;
+
+    private CompactConfigMap(String[] keys, Object[] values, long[] scalars) {
+        this.keys = keys;
+        this.values = values;
+        this.scalars = scalars;
+    }
+
+    /**
+     * Copy a parsed config map.
+     *
+     * @param map map with String keys; other keys are converted with String.valueOf
+     * @return compact copy, or the map itself when it is compact already
+     */
+    public static CompactConfigMap of(Map<?, ?> map) {
+        if (map instanceof CompactConfigMap) {
+            return (CompactConfigMap) map;
+        }
+        if (map.isEmpty()) {
+            return EMPTY;
+        }
+        TreeMap<String, Object> sorted = new TreeMap<>();
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            sorted.put(String.valueOf(entry.getKey()), entry.getValue());
+        }
+        String[] keys = new String[sorted.size()];
+        Object[] values = new Object[sorted.size()];
+        long[] scalars = null;
+        int i = 0;
+        for (Map.Entry<String, Object> entry : sorted.entrySet()) {
+            keys[i] = DedupPool.intern(entry.getKey());
+            Object value = entry.getValue();
+            Object marker = markerOf(value);
+            if (marker != null) {
+                if (scalars == null) {
+                    scalars = new long[keys.length];
+                }
+                scalars[i] = toBits(value);
+                values[i] = marker;
+            } else {
+                values[i] = compact(value);
+            }
+            i++;
+        }
+        return new CompactConfigMap(keys, values, scalars);
+    }
+
+    @Override
+    public int size() {
+        return keys.length;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && Arrays.binarySearch(keys, key) >= 0;
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        int index = Arrays.binarySearch(keys, key);
+        return index < 0 ? null : valueAt(index);
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<Entry<String, Object>>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new Iterator<Entry<String, Object>>() {
+                    private int index;
+
+                    @Override
+                    public boolean hasNext() {
+                        return index < keys.length;
+                    }
+
+                    @Override
+                    public Entry<String, Object> next() {
+                        if (index >= keys.length) {
+                            throw new NoSuchElementException();
+                        }
+                        Entry<String, Object> entry = new SimpleImmutableEntry<>(keys[index], valueAt(index));
+                        index++;
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return keys.length;
+            }
+        };
+    }
+
+    private Object valueAt(int index) {
+        Object value = values[index];
+        if (value == INTEGER) {
+            return (int) scalars[index];
+        } else if (value == LONG) {
+            return scalars[index];
+        } else if (value == DOUBLE) {
+            return Double.longBitsToDouble(scalars[index]);
+        } else if (value == BOOLEAN) {
+            return scalars[index] != 0;
+        }
+        return value;
+    }
+
+    private static Object markerOf(Object value) {
+        if (value instanceof Integer) {
+            return INTEGER;
+        } else if (value instanceof Long) {
+            return LONG;
+        } else if (value instanceof Double) {
+            return DOUBLE;
+        } else if (value instanceof Boolean) {
+            return BOOLEAN;
+        }
+        return null;
+    }
+
+    private static long toBits(Object value) {
+        if (value instanceof Double) {
+            return Double.doubleToRawLongBits((Double) value);
+        } else if (value instanceof Boolean) {
+            return (Boolean) value ? 1 : 0;
+        }
+        return ((Number) value).longValue();
+    }
+
+    private static Object compact(Object value) {
+        if (value instanceof Map) {
+            return of((Map<?, ?>) value);
+        } else if (value instanceof List) {
+            return CompactList.of((List<?>) value);
+        } else if (value instanceof String) {
+            return DedupPool.intern((String) value);
+        } else if (value instanceof byte[]) {
+            return DedupPool.dedup((byte[]) value);
+        }
+        return value;
+    }
+
+    /**
+     * Read-only list backed by a single array, with the elements compacted like map values.
+     */
+    private static final class CompactList extends AbstractList<Object> implements RandomAccess {
+        private final Object[] elements;
+
+        private CompactList(Object[] elements) {
+            this.elements = elements;
+        }
+
+        static CompactList of(List<?> list) {
+            if (list instanceof CompactList) {
+                return (CompactList) list;
+            }
+            Object[] elements = list.toArray();
+            for (int i = 0; i < elements.length; i++) {
+                elements[i] = compact(elements[i]);
+            }
+            return new CompactList(elements);
+        }
+
+        @Override
+        public Object get(int index) {
+            return elements[index];
+        }
+
+        @Override
+        public int size() {
+            return elements.length;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.model;
+
+import java.util.Objects;
+
+/**
+ * Change of one artifact in a provider backend.
+ *
+ * name is either a service name or "globals"; version is the service version or, for globals, the project version.
+ * fileName is the changed file, or null when a whole folder changed.
+ */
+public class ConfigChangeEvent {
+
+    private final String configType;
+    private final String projectName;
+    private final String name;
+    private final String version;
+    private final String environment;
+    private final String fileName;
+
+    public ConfigChangeEvent(String configType, String projectName, String name, String version, String environment, String fileName) {
+        this.configType = configType;
+        this.projectName = projectName;
+        this.name = name;
+        this.version = version;
+        this.environment = environment;
+        this.fileName = fileName;
+    }
+
+    public String getConfigType() {
+        return configType;
+    }
+
+    public String getProjectName() {
+        return projectName;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public String getEnvironment() {
+        return environment;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ConfigChangeEvent event = (ConfigChangeEvent) o;
+        return Objects.equals(configType, event.configType) &&
+                Objects.equals(projectName, event.projectName) &&
+                Objects.equals(name, event.name) &&
+                Objects.equals(version, event.version) &&
+                Objects.equals(environment, event.environment) &&
+                Objects.equals(fileName, event.fileName);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(configType, projectName, name, version, environment, fileName);
+    }
+
+    @Override
+    public String toString() {
+        return "ConfigChangeEvent{" + configType + "/" + projectName + "/" + name + "/" + version + "/" + environment + "/" + fileName + "}";
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.model;
+
+import java.util.Map;
+import java.util.Objects;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Hash of a node of the config hierarchy with the hashes of its children, so two servers, or a server and a client,
+ * can compare the hierarchy and walk down only the branches that differ.
+ */
+public class ConfigFingerprint {
+
+    private String path;
+    private String hash;
+    private Map<String, String> children;
+
+    public ConfigFingerprint() {
+    }
+
+    public ConfigFingerprint(String path, String hash, Map<String, String> children) {
+        this.path = path;
+        this.hash = hash;
+        this.children = children;
+    }
+
+    /**
+     * "{projectName}/{projectVersion}/{serviceName}/{serviceVersion}/{environment}/{configType}/{key}", or a prefix of
+     * it; empty for the root.
+     */
+    @JsonProperty("path")
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    /**
+     * Hex encoded hash of the node, which changes whenever anything below it changes.
+     */
+    @JsonProperty("hash")
+    public String getHash() {
+        return hash;
+    }
+
+    public void setHash(String hash) {
+        this.hash = hash;
+    }
+
+    /**
+     * Hex encoded hash of each child by name, sorted by name; empty for a config key, cert or file.
+     */
+    @JsonProperty("children")
+    public Map<String, String> getChildren() {
+        return children;
+    }
+
+    public void setChildren(Map<String, String> children) {
+        this.children = children;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ConfigFingerprint fingerprint = (ConfigFingerprint) o;
+
+        return Objects.equals(path, fingerprint.path) &&
+        Objects.equals(hash, fingerprint.hash) &&
+        Objects.equals(children, fingerprint.children);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(path, hash, children);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("class ConfigFingerprint {\n");
+        sb.append("    path: ").append(path).append("\n");
+        sb.append("    hash: ").append(hash).append("\n");
+        sb.append("    children: ").append(children).append("\n");
+        sb.append("}");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.json.JsonGeneratorImpl;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Content of a cert or file, kept as a (possibly memory-mapped) read-only buffer instead of a base64 string.
+ *
+ * It serializes exactly like the MIME base64 string the providers used to put in configProperties, but the encoding
+ * is done chunk by chunk straight into the JSON generator, so no full-size byte array or string copy is created.
+ * Binary formats that support it get the raw bytes.
+ */
+@JsonSerialize(using = FileContent.Serializer.class)
+public class FileContent {
+    // MIME base64 lines are 76 characters, encoding 57 bytes each
+    private static final int MIME_LINE_BYTES = 57;
+    private static final int MIME_LINE_CHARS = 76;
+    private static final int LINES_PER_CHUNK = 64;
+
+    private final ByteBuffer buffer;
+
+    public FileContent(ByteBuffer buffer) {
+        this.buffer = buffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * @return independent read-only view of the content, positioned at its start
+     */
+    public ByteBuffer getBuffer() {
+        return buffer.duplicate();
+    }
+
+    public int size() {
+        return buffer.remaining();
+    }
+
+    /**
+     * @return content encoded the same way as {@link Base64#getMimeEncoder()}
+     */
+    public String toBase64() {
+        return new String(Base64.getMimeEncoder().encode(getBuffer()).array(), StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Get the bytes of a cert or file value, which is a FileContent or a MIME base64 string depending on the provider.
+     *
+     * @param value cert or file value of configProperties
+     * @return read-only content, positioned at its start
+     */
+    public static ByteBuffer toBuffer(Object value) {
+        if (value instanceof FileContent) {
+            return ((FileContent) value).getBuffer();
+        }
+        return ByteBuffer.wrap(Base64.getMimeDecoder().decode(value.toString())).asReadOnlyBuffer();
+    }
+
+    /**
+     * Convert the cert or file values of configProperties to FileContent, so that binary formats get raw bytes
+     * whatever the provider returned.
+     *
+     * @param configProperties certs or files by name
+     * @return map of FileContent by name, or configProperties itself when it is not a map
+     */
+    public static Object toFileContents(Object configProperties) {
+        if (!(configProperties instanceof Map)) {
+            return configProperties;
+        }
+        Map<String, Object> files = new LinkedHashMap<>();
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) configProperties).entrySet()) {
+            Object value = entry.getValue();
+            files.put(String.valueOf(entry.getKey()), value == null || value instanceof FileContent ? value : new FileContent(toBuffer(value)));
+        }
+        return files;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        return buffer.equals(((FileContent) o).buffer);
+    }
+
+    @Override
+    public int hashCode() {
+        return buffer.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return toBase64();
+    }
+
+    public static class Serializer extends StdSerializer<FileContent> {
+
+        public Serializer() {
+            super(FileContent.class);
+        }
+
+        @Override
+        public void serialize(FileContent value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            ByteBuffer buffer = value.getBuffer();
+            if (gen.canWriteBinaryNatively()) {
+                gen.writeBinary(new ByteBufferBackedInputStream(buffer), buffer.remaining());
+            } else if (gen instanceof JsonGeneratorImpl) {
+                writeMimeBase64(buffer, gen);
+            } else {
+                gen.writeString(value.toBase64());
+            }
+        }
+
+        private void writeMimeBase64(ByteBuffer buffer, JsonGenerator gen) throws IOException {
+            Base64.Encoder encoder = Base64.getEncoder();
+            byte[] line = new byte[MIME_LINE_BYTES];
+            byte[] encoded = new byte[MIME_LINE_CHARS];
+            // each line is followed by the escaped \r\n separator except the last one
+            char[] chunk = new char[LINES_PER_CHUNK * (MIME_LINE_CHARS + 4)];
+            int position = 0;
+            gen.writeRawValue("\"");
+            while (buffer.hasRemaining()) {
+                int length = Math.min(MIME_LINE_BYTES, buffer.remaining());
+                buffer.get(line, 0, length);
+                int encodedLength = length == MIME_LINE_BYTES ? encoder.encode(line, encoded)
+                        : encoder.encode(Arrays.copyOf(line, length), encoded);
+                for (int i = 0; i < encodedLength; i++) {
+                    chunk[position++] = (char) encoded[i];
+                }
+                if (buffer.hasRemaining()) {
+                    chunk[position++] = '\\';
+                    chunk[position++] = 'r';
+                    chunk[position++] = '\\';
+                    chunk[position++] = 'n';
+                }
+                if (position > chunk.length - MIME_LINE_CHARS - 4) {
+                    gen.writeRaw(chunk, 0, position);
+                    position = 0;
+                }
+            }
+            chunk[position++] = '"';
+            gen.writeRaw(chunk, 0, position);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.model;
+
+import java.util.List;
+import java.util.Objects;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Manifest of the merged certs or files of a service, so clients can download only the files that changed.
+ */
+public class FileManifest {
+
+    private Service service;
+    private List<FileManifestEntry> files;
+    private boolean immutable;
+
+    public FileManifest() {
+    }
+
+    @JsonProperty("service")
+    public Service getService() {
+        return service;
+    }
+
+    public void setService(Service service) {
+        this.service = service;
+    }
+
+    @JsonProperty("files")
+    public List<FileManifestEntry> getFiles() {
+        return files;
+    }
+
+    public void setFiles(List<FileManifestEntry> files) {
+        this.files = files;
+    }
+
+    /**
+     * True when the files were read at a revision that can never change, e.g. a Git commit SHA.
+     */
+    @JsonIgnore
+    public boolean isImmutable() {
+        return immutable;
+    }
+
+    public void setImmutable(boolean immutable) {
+        this.immutable = immutable;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        FileManifest manifest = (FileManifest) o;
+
+        return Objects.equals(service, manifest.service) &&
+        Objects.equals(files, manifest.files);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(service, files);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("class FileManifest {\n");
+        sb.append("    service: ").append(toIndentedString(service)).append("\n");
+        sb.append("    files: ").append(toIndentedString(files)).append("\n");
+        sb.append("}");
+        return sb.toString();
+    }
+
+    private String toIndentedString(Object o) {
+        if (o == null) {
+            return "null";
+        }
+        return o.toString().replace("\n", "\n    ");
+    }
+}
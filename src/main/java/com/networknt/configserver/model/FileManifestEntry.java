@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.model;
+
+import java.util.Objects;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Name, size, SHA-256 and source layer of one merged cert or file.
+ */
+public class FileManifestEntry {
+
+    private String name;
+    private long size;
+    private String sha256;
+    private String layer;
+
+    public FileManifestEntry() {
+    }
+
+    public FileManifestEntry(String name, long size, String sha256, String layer) {
+        this.name = name;
+        this.size = size;
+        this.sha256 = sha256;
+        this.layer = layer;
+    }
+
+    @JsonProperty("name")
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    @JsonProperty("size")
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    /**
+     * Hex encoded SHA-256 of the decoded file content.
+     */
+    @JsonProperty("sha256")
+    public String getSha256() {
+        return sha256;
+    }
+
+    public void setSha256(String sha256) {
+        this.sha256 = sha256;
+    }
+
+    /**
+     * "globals" when the file comes from the project globals, "service" when it comes from the service folder.
+     */
+    @JsonProperty("layer")
+    public String getLayer() {
+        return layer;
+    }
+
+    public void setLayer(String layer) {
+        this.layer = layer;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        FileManifestEntry entry = (FileManifestEntry) o;
+
+        return size == entry.size &&
+        Objects.equals(name, entry.name) &&
+        Objects.equals(sha256, entry.sha256) &&
+        Objects.equals(layer, entry.layer);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, size, sha256, layer);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("class FileManifestEntry {\n");
+        sb.append("    name: ").append(name).append("\n");
+        sb.append("    size: ").append(size).append("\n");
+        sb.append("    sha256: ").append(sha256).append("\n");
+        sb.append("    layer: ").append(layer).append("\n");
+        sb.append("}");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.model;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Read-only view of a globals layer merged with a service layer, where the service layer wins for keys in both.
+ *
+ * It replaces copying both layers into a new HashMap with putAll: the layers are referenced, not copied, so a merge
+ * costs no copy of the globals. Where the globals come from the content-hash cache of {@link
+ * com.networknt.configserver.provider.ConfigParser} (Git, Url and file system providers), the views of all services
+ * of a project reference the same globals map. It is a plain Map to Jackson and serializes exactly like the merged
+ * flat map. The layers must not change after the view is created.
+ */
+public class LayeredConfigMap extends AbstractMap<String, Object> {
+    private final Map<String, Object> globals;
+    private final Map<String, Object> overrides;
+    private final int size;
+
+    private LayeredConfigMap(Map<String, Object> globals, Map<String, Object> overrides) {
+        this.globals = globals;
+        this.overrides = overrides;
+        int shadowed = 0;
+        for (String key : overrides.keySet()) {
+            if (globals.containsKey(key)) {
+                shadowed++;
+            }
+        }
+        this.size = globals.size() + overrides.size() - shadowed;
+    }
+
+    /**
+     * Merge two layers.
+     *
+     * @param globals   lower layer, may be null
+     * @param overrides upper layer, may be null
+     * @return read-only merged map; a single non-empty layer is returned as an unmodifiable view of itself
+     */
+    public static Map<String, Object> merge(Map<String, Object> globals, Map<String, Object> overrides) {
+        if (overrides == null || overrides.isEmpty()) {
+            return globals == null ? Collections.emptyMap() : Collections.unmodifiableMap(globals);
+        }
+        if (globals == null || globals.isEmpty()) {
+            return Collections.unmodifiableMap(overrides);
+        }
+        return new LayeredConfigMap(globals, overrides);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return overrides.containsKey(key) || globals.containsKey(key);
+    }
+
+    @Override
+    public Object get(Object key) {
+        return overrides.containsKey(key) ? overrides.get(key) : globals.get(key);
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<Entry<String, Object>>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new LayeredIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Iterates the globals that are not overridden, then the overrides.
+     */
+    private class LayeredIterator implements Iterator<Entry<String, Object>> {
+        private final Iterator<Entry<String, Object>> globalEntries = globals.entrySet().iterator();
+        private final Iterator<Entry<String, Object>> overrideEntries = overrides.entrySet().iterator();
+        private Entry<String, Object> next;
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && globalEntries.hasNext()) {
+                Entry<String, Object> entry = globalEntries.next();
+                if (!overrides.containsKey(entry.getKey())) {
+                    next = entry;
+                }
+            }
+            return next != null || overrideEntries.hasNext();
+        }
+
+        @Override
+        public Entry<String, Object> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Entry<String, Object> entry = next != null ? next : overrideEntries.next();
+            next = null;
+            return new SimpleImmutableEntry<>(entry);
+        }
+    }
+}
@@ -17,6 +17,7 @@
 package com.networknt.configserver.model;
 
 import java.util.Objects;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 public class Service {
@@ -26,7 +27,7 @@ public class Service {
     private String serviceVersion;
     private String serviceName;
     private String environment;
-
+    private String ref;
 
     public Service () {
     }
@@ -74,6 +75,19 @@ public class Service {
         this.projectVersion = projectVersion;
     }
 
+    /**
+     * Optional backend revision (branch, tag or commit SHA) to read the configs from; null means the default revision.
+     */
+    @JsonProperty("ref")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public String getRef() {
+        return ref;
+    }
+
+    public void setRef(String ref) {
+        this.ref = ref;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -88,13 +102,13 @@ public class Service {
         Objects.equals(environment, Service.environment) &&
         Objects.equals(serviceName, Service.serviceName) &&
         Objects.equals(projectName, Service.projectName) &&
-        
+        Objects.equals(ref, Service.ref) &&
         Objects.equals(projectVersion, Service.projectVersion);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(serviceVersion, environment, serviceName, projectName,  projectVersion);
+        return Objects.hash(serviceVersion, environment, serviceName, projectName,  projectVersion, ref);
     }
 
     @Override
@@ -106,6 +120,7 @@ public class Service {
         sb.append("    serviceName: ").append(toIndentedString(serviceName)).append("\n");
         sb.append("    projectName: ").append(toIndentedString(projectName)).append("\n");
         sb.append("    projectVersion: ").append(toIndentedString(projectVersion)).append("\n");
+        sb.append("    ref: ").append(toIndentedString(ref)).append("\n");
         sb.append("}");
         return sb.toString();
     }
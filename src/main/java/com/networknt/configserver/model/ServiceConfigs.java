@@ -17,12 +17,14 @@
 package com.networknt.configserver.model;
 
 import java.util.Objects;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 public class ServiceConfigs {
 
     private Object configProperties;
     private Service service;
+    private boolean immutable;
 
     public ServiceConfigs () {
     }
@@ -44,6 +46,18 @@ public class ServiceConfigs {
         this.service = service;
     }
 
+    /**
+     * True when the configs were read from a pinned commit and can be cached without expiry.
+     */
+    @JsonIgnore
+    public boolean isImmutable() {
+        return immutable;
+    }
+
+    public void setImmutable(boolean immutable) {
+        this.immutable = immutable;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.provider;
+
+import com.networknt.configserver.model.ConfigChangeEvent;
+
+/**
+ * Listener for changes detected by a provider in its backend.
+ * Listeners are called on the provider's watcher thread and should return quickly.
+ */
+public interface ConfigChangeListener {
+
+    void onChange(ConfigChangeEvent event);
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.provider;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.networknt.config.Config;
+import com.networknt.configserver.constants.ConfigServerConstants;
+import com.networknt.configserver.model.ConfigChangeEvent;
+import com.networknt.configserver.model.ConfigFingerprint;
+import com.networknt.configserver.model.FileContent;
+import com.networknt.configserver.model.Service;
+import com.networknt.configserver.model.ServiceConfigs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.*;
+
+/**
+ * Merkle tree over the configs, certs and files served, by
+ * "{projectName}/{projectVersion}/{serviceName}/{serviceVersion}/{environment}/{configType}/{key}".
+ *
+ * The leaves are the config keys, certs and files of the responses read from the provider, hashed with HMAC-SHA256 so
+ * that a fingerprint gives nothing away about a low-entropy secret; servers compared with each other need the same
+ * fingerprintKey. The hash of a node is the SHA-256 of the names and hashes of its sorted children, computed again only
+ * when something below it changed. A branch is dropped when the provider reports a change of the service or its
+ * globals, and refreshed by the next response after fingerprintTtl seconds for providers that can not detect changes.
+ * Reads at a ref and empty responses are not part of the tree, and at most fingerprintMaxBranches service and config
+ * type branches are recorded; the responses of other services are not recorded until branches are dropped.
+ */
+public class ConfigMerkleTree implements ConfigChangeListener {
+    private static final Logger logger = LoggerFactory.getLogger(ConfigMerkleTree.class);
+
+    static final String FINGERPRINT_KEY = "fingerprintKey";
+    static final String FINGERPRINT_TTL = "fingerprintTtl";
+    static final String FINGERPRINT_MAX_BRANCHES = "fingerprintMaxBranches";
+    static final int DEFAULT_MAX_BRANCHES = 100000;
+    private static final String HMAC = "HmacSHA256";
+
+    private static volatile ConfigMerkleTree instance;
+
+    private final SecretKeySpec key;
+    private final long ttl;
+    private final int maxBranches;
+    private final Node root = new Node();
+    // service and config type branches recorded
+    private int branches;
+    // changes reported so far, so content read before a change is not recorded after it
+    private long changes;
+    private final Set<IProvider> listenedProviders = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final ObjectWriter writer = Config.getInstance().getMapper().writer().with(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+
+    /**
+     * @param key leaf hash key
+     * @param ttl seconds before a recorded branch is hashed again
+     */
+    ConfigMerkleTree(byte[] key, long ttl) {
+        this(key, ttl, DEFAULT_MAX_BRANCHES);
+    }
+
+    /**
+     * @param key         leaf hash key
+     * @param ttl         seconds before a recorded branch is hashed again
+     * @param maxBranches maximum number of service and config type branches
+     */
+    ConfigMerkleTree(byte[] key, long ttl, int maxBranches) {
+        this.key = new SecretKeySpec(key, HMAC);
+        this.ttl = ttl * 1000;
+        this.maxBranches = maxBranches;
+    }
+
+    public static ConfigMerkleTree getInstance() {
+        if (instance == null) {
+            synchronized (ConfigMerkleTree.class) {
+                if (instance == null) {
+                    Map<String, Object> config = Config.getInstance().getJsonMapConfig(ConfigServerConstants.CONFIG_NAME);
+                    Object key = config == null ? null : config.get(FINGERPRINT_KEY);
+                    Object ttl = config == null ? null : config.get(FINGERPRINT_TTL);
+                    Object maxBranches = config == null ? null : config.get(FINGERPRINT_MAX_BRANCHES);
+                    byte[] keyBytes;
+                    if (key == null || key.toString().isEmpty()) {
+                        // fingerprints of this server only compare with its own
+                        keyBytes = new byte[32];
+                        new SecureRandom().nextBytes(keyBytes);
+                    } else {
+                        keyBytes = key.toString().getBytes(StandardCharsets.UTF_8);
+                    }
+                    instance = new ConfigMerkleTree(keyBytes, ttl == null ? 60 : Long.parseLong(ttl.toString()),
+                            maxBranches == null ? DEFAULT_MAX_BRANCHES : Integer.parseInt(maxBranches.toString()));
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Replace the leaves of a service and config type with the content read from the provider, unless they were
+     * recorded less than fingerprintTtl seconds ago.
+     *
+     * @param provider       provider the content was read from
+     * @param serviceConfigs configs, certs or files of a service
+     * @param configType     CONFIGS, CERTS or FILES
+     */
+    public void record(IProvider provider, ServiceConfigs serviceConfigs, String configType) {
+        listen(provider);
+        Service service = serviceConfigs.getService();
+        if (service == null || service.getRef() != null || !(serviceConfigs.getConfigProperties() instanceof Map)) {
+            return;
+        }
+        String[] path = {service.getProjectName(), service.getProjectVersion(), service.getServiceName(),
+                service.getServiceVersion(), service.getEnvironment(), configType};
+        for (String part : path) {
+            if (!IProvider.isValidFileName(part)) {
+                return;
+            }
+        }
+        long now = System.currentTimeMillis();
+        long seen;
+        synchronized (root) {
+            Node recorded = root.find(path);
+            if (recorded != null && now - recorded.recordedAt < ttl) {
+                return;
+            }
+            seen = changes;
+        }
+        // hashed outside the lock, the leaves can be large files
+        Map<String, Node> leaves = new TreeMap<>();
+        Mac mac = newMac();
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) serviceConfigs.getConfigProperties()).entrySet()) {
+            if (entry.getValue() == null) {
+                continue;
+            }
+            if (ConfigServerConstants.CONFIGS.equals(configType)) {
+                try {
+                    mac.update(writer.writeValueAsBytes(entry.getValue()));
+                } catch (JsonProcessingException e) {
+                    logger.warn("Could not fingerprint config {} of {}", entry.getKey(), service, e);
+                    return;
+                }
+            } else {
+                mac.update(FileContent.toBuffer(entry.getValue()));
+            }
+            leaves.put(String.valueOf(entry.getKey()), new Node(mac.doFinal()));
+        }
+        synchronized (root) {
+            if (seen != changes) {
+                return;
+            }
+            if (leaves.isEmpty()) {
+                // e.g. a service that does not exist, which the file system and KV store providers answer for anyone
+                remove(root, path, 0);
+                return;
+            }
+            if (root.find(path) == null) {
+                if (branches >= maxBranches) {
+                    logger.debug("Fingerprint tree full, {} of {} not recorded", configType, service);
+                    return;
+                }
+                branches++;
+            }
+            Node node = root;
+            root.hash = null;
+            for (String part : path) {
+                node = node.children.computeIfAbsent(part, name -> new Node());
+                node.hash = null;
+            }
+            node.children = leaves;
+            node.recordedAt = now;
+        }
+    }
+
+    /**
+     * Get the hash of a node and of its children.
+     *
+     * @param path "/" separated names from the root; empty or null for the root
+     * @return fingerprint of the node, or null when nothing was recorded under the path
+     */
+    public ConfigFingerprint getFingerprint(String path) {
+        String[] parts = path == null || path.isEmpty() ? new String[0] : path.split(ConfigServerConstants.SLASH);
+        synchronized (root) {
+            Node node = root.find(parts);
+            if (node == null) {
+                return null;
+            }
+            Map<String, String> children = new LinkedHashMap<>();
+            if (node.children != null) {
+                for (Map.Entry<String, Node> child : node.children.entrySet()) {
+                    children.put(child.getKey(), hex(child.getValue().hash()));
+                }
+            }
+            return new ConfigFingerprint(String.join(ConfigServerConstants.SLASH, parts), hex(node.hash()), children);
+        }
+    }
+
+    @Override
+    public void onChange(ConfigChangeEvent event) {
+        boolean globals = ConfigServerConstants.GLOBALS.equals(event.getName());
+        // null matches any name; globals are merged into every service of the project version
+        String[] pattern = {event.getProjectName(), globals ? event.getVersion() : null, globals ? null : event.getName(),
+                globals ? null : event.getVersion(), event.getEnvironment(), event.getConfigType()};
+        synchronized (root) {
+            changes++;
+            remove(root, pattern, 0);
+        }
+    }
+
+    private boolean remove(Node node, String[] pattern, int depth) {
+        boolean changed = false;
+        Iterator<Map.Entry<String, Node>> children = node.children.entrySet().iterator();
+        while (children.hasNext()) {
+            Map.Entry<String, Node> child = children.next();
+            if (pattern[depth] != null && !pattern[depth].equals(child.getKey())) {
+                continue;
+            }
+            boolean last = depth == pattern.length - 1;
+            if (last || remove(child.getValue(), pattern, depth + 1)) {
+                changed = true;
+                if (last || child.getValue().children.isEmpty()) {
+                    children.remove();
+                }
+                if (last) {
+                    branches--;
+                }
+            }
+        }
+        if (changed) {
+            node.hash = null;
+        }
+        return changed;
+    }
+
+    private void listen(IProvider provider) {
+        synchronized (listenedProviders) {
+            if (listenedProviders.add(provider)) {
+                provider.addChangeListener(this);
+            }
+        }
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(HMAC);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] hash) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : hash) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static class Node {
+        // null for a leaf
+        private Map<String, Node> children;
+        // null when something below changed since it was computed
+        private byte[] hash;
+        private long recordedAt;
+
+        private Node() {
+            children = new TreeMap<>();
+        }
+
+        private Node(byte[] hash) {
+            this.hash = hash;
+        }
+
+        private Node find(String[] path) {
+            Node node = this;
+            for (String part : path) {
+                node = node.children == null ? null : node.children.get(part);
+                if (node == null) {
+                    return null;
+                }
+            }
+            return node;
+        }
+
+        private byte[] hash() {
+            if (hash == null) {
+                try {
+                    MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                    for (Map.Entry<String, Node> child : children.entrySet()) {
+                        digest.update(child.getKey().getBytes(StandardCharsets.UTF_8));
+                        digest.update((byte) 0);
+                        digest.update(child.getValue().hash());
+                    }
+                    hash = digest.digest();
+                } catch (NoSuchAlgorithmException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.provider;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.networknt.config.Config;
+import com.networknt.configserver.model.CompactConfigMap;
+import com.networknt.exception.ApiException;
+import com.networknt.status.Status;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Parses values.yml/values.yaml/values.json content into a config map in a single pass.
+ *
+ * YAML content is loaded by SnakeYAML straight from the bytes and JSON content by Jackson; there is no intermediate
+ * JSON string. Parsed documents are cached by the SHA-256 of their content, so an unchanged file is parsed only once.
+ * Returned maps are shared between callers and therefore unmodifiable; merge them into a new map instead of changing them.
+ * They are kept as {@link CompactConfigMap}s, which hold many more documents on the same heap than the parsed trees.
+ */
+public class ConfigParser {
+    private static final Logger logger = LoggerFactory.getLogger(ConfigParser.class);
+
+    private static final int CACHE_MAX_SIZE = 512;
+
+    private static final Map<ByteBuffer, Map<String, Object>> parsedDocuments = Collections.synchronizedMap(new LinkedHashMap<ByteBuffer, Map<String, Object>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Map<String, Object>> eldest) {
+            return size() > CACHE_MAX_SIZE;
+        }
+    });
+
+    private ConfigParser() {
+    }
+
+    /**
+     * Parse YAML content into a config map.
+     *
+     * @param content raw YAML bytes
+     * @return unmodifiable config map; empty for empty content
+     * @throws ApiException when the content can not be parsed
+     */
+    public static Map<String, Object> parseYaml(byte[] content) throws ApiException {
+        return parse(content, false);
+    }
+
+    /**
+     * Parse JSON content into a config map.
+     *
+     * @param content raw JSON bytes
+     * @return unmodifiable config map; empty for empty content
+     * @throws ApiException when the content can not be parsed
+     */
+    public static Map<String, Object> parseJson(byte[] content) throws ApiException {
+        return parse(content, true);
+    }
+
+    private static Map<String, Object> parse(byte[] content, boolean json) throws ApiException {
+        if (content == null || content.length == 0) {
+            return Collections.emptyMap();
+        }
+        ByteBuffer key = digest(content, json);
+        Map<String, Object> configsMap = parsedDocuments.get(key);
+        if (configsMap != null) {
+            return configsMap;
+        }
+        try {
+            Object document;
+            if (json) {
+                document = Config.getInstance().getMapper().readValue(content, new TypeReference<Map<String, Object>>() {});
+            } else {
+                document = new Yaml().load(new ByteArrayInputStream(content));
+            }
+            configsMap = document == null ? Collections.emptyMap() : CompactConfigMap.of((Map<?, ?>) document);
+        } catch (Exception e) {
+            logger.error("Error while parsing config content:", e);
+            throw new ApiException(new Status("ACS00002"));
+        }
+        parsedDocuments.put(key, configsMap);
+        return configsMap;
+    }
+
+    private static ByteBuffer digest(byte[] content, boolean json) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            messageDigest.update((byte) (json ? 1 : 0));
+            return ByteBuffer.wrap(messageDigest.digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.provider;
+
+import com.networknt.configserver.constants.ConfigServerConstants;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * {@link MirrorStore} keeping one file per key under a root directory.
+ *
+ * Values are written to a temporary file that is then moved over the previous one, and read memory-mapped.
+ */
+public class DirectoryMirrorStore implements MirrorStore {
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path root;
+
+    public DirectoryMirrorStore(Path root) {
+        this.root = root.toAbsolutePath().normalize();
+    }
+
+    @Override
+    public ByteBuffer get(String key) throws IOException {
+        Path file = resolve(key);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).asReadOnlyBuffer();
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void put(String key, byte[] value) throws IOException {
+        Path file = resolve(key);
+        Files.createDirectories(file.getParent());
+        Path temp = file.resolveSibling(file.getFileName() + TEMP_SUFFIX);
+        Files.write(temp, value);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        return Files.deleteIfExists(resolve(key));
+    }
+
+    @Override
+    public List<String> keys(String prefix) throws IOException {
+        // walk only the deepest directory the prefix names
+        int slash = prefix.lastIndexOf('/');
+        Path directory = slash < 0 ? root : resolve(prefix.substring(0, slash));
+        if (!Files.isDirectory(directory)) {
+            return Collections.emptyList();
+        }
+        List<String> keys;
+        try (Stream<Path> files = Files.walk(directory)) {
+            keys = files.filter(Files::isRegularFile)
+                    .map(file -> root.relativize(file).toString().replace(file.getFileSystem().getSeparator(), ConfigServerConstants.SLASH))
+                    .filter(key -> key.startsWith(prefix) && !key.endsWith(TEMP_SUFFIX))
+                    .collect(Collectors.toCollection(ArrayList::new));
+        }
+        Collections.sort(keys);
+        return keys;
+    }
+
+    private Path resolve(String key) {
+        for (String segment : key.split(ConfigServerConstants.SLASH)) {
+            if (!IProvider.isValidFileName(segment)) {
+                throw new IllegalArgumentException("Invalid mirror key: " + key);
+            }
+        }
+        return root.resolve(key);
+    }
+}
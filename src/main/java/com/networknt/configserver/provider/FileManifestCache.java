@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.provider;
+
+import com.networknt.config.Config;
+import com.networknt.configserver.constants.ConfigServerConstants;
+import com.networknt.configserver.model.ConfigChangeEvent;
+import com.networknt.configserver.model.FileContent;
+import com.networknt.configserver.model.FileManifest;
+import com.networknt.configserver.model.FileManifestEntry;
+import com.networknt.configserver.model.Service;
+import com.networknt.exception.ApiException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Builds the manifests of the certs and files of services and caches them per Service.
+ *
+ * A manifest lists each merged file with its size, SHA-256 and source layer. It is cached for manifestCacheTtl
+ * seconds, without expiry when read at a Git commit SHA, and dropped when the provider reports a change of the
+ * service or its globals. Cache entries are keyed by a digest of the Authorization header as well, so a manifest is
+ * only served to credentials the backend accepted for that service, even when the provider issues a new token on every
+ * login.
+ */
+public class FileManifestCache implements ConfigChangeListener {
+    static final String MANIFEST_CACHE_TTL = "manifestCacheTtl";
+    private static final int MAX_SIZE = 1024;
+
+    private final Map<String, CachedManifest> manifests = Collections.synchronizedMap(new LinkedHashMap<String, CachedManifest>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedManifest> eldest) {
+            return size() > MAX_SIZE;
+        }
+    });
+    private final Set<IProvider> listenedProviders = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * Get the manifest of the certs or files of a service.
+     *
+     * @param provider  provider to read the files from
+     * @param authorization Authorization header of the request
+     * @param authToken token returned by the provider login
+     * @param service   service to get the manifest for
+     * @param configType CERTS or FILES
+     * @return manifest sorted by file name
+     * @throws ApiException when the files can not be read from the provider
+     */
+    public FileManifest getManifest(IProvider provider, String authorization, String authToken, Service service, String configType) throws ApiException {
+        listen(provider);
+        String key = configType + " " + digest(authorization == null ? new byte[0] : authorization.getBytes(StandardCharsets.UTF_8)) + " " + service;
+        long now = System.currentTimeMillis();
+        CachedManifest cached = manifests.get(key);
+        if (cached != null && cached.isFresh(now)) {
+            return cached.manifest;
+        }
+        FileManifest manifest = buildManifest(service, provider.getServiceFileLayers(authToken, service, configType));
+        manifest.setImmutable(provider instanceof GitProviderImpl && GitProviderImpl.isCommitSha(service.getRef()));
+        long ttl = getTtl();
+        if (manifest.isImmutable()) {
+            manifests.put(key, new CachedManifest(manifest, configType, Long.MAX_VALUE));
+        } else if (ttl > 0) {
+            manifests.put(key, new CachedManifest(manifest, configType, now + ttl * 1000));
+        }
+        return manifest;
+    }
+
+    @Override
+    public void onChange(ConfigChangeEvent event) {
+        synchronized (manifests) {
+            manifests.values().removeIf(cached -> cached.configType.equals(event.getConfigType())
+                    && event.getProjectName().equals(cached.manifest.getService().getProjectName())
+                    && event.getEnvironment().equals(cached.manifest.getService().getEnvironment()));
+        }
+    }
+
+    static FileManifest buildManifest(Service service, Map<String, Map<String, Object>> layers) {
+        // later layers override earlier ones, like the merge of the files themselves
+        Map<String, FileManifestEntry> entries = new TreeMap<>();
+        for (Map.Entry<String, Map<String, Object>> layer : layers.entrySet()) {
+            if (layer.getValue() == null) {
+                continue;
+            }
+            for (Map.Entry<String, Object> file : layer.getValue().entrySet()) {
+                if (file.getValue() == null) {
+                    continue;
+                }
+                ByteBuffer content = FileContent.toBuffer(file.getValue());
+                long size = content.remaining();
+                entries.put(file.getKey(), new FileManifestEntry(file.getKey(), size, digest(content), layer.getKey()));
+            }
+        }
+        FileManifest manifest = new FileManifest();
+        manifest.setService(service);
+        manifest.setFiles(new ArrayList<>(entries.values()));
+        return manifest;
+    }
+
+    private void listen(IProvider provider) {
+        synchronized (listenedProviders) {
+            if (listenedProviders.add(provider)) {
+                provider.addChangeListener(this);
+            }
+        }
+    }
+
+    private long getTtl() {
+        Map<String, Object> config = Config.getInstance().getJsonMapConfig(ConfigServerConstants.CONFIG_NAME);
+        Object value = config == null ? null : config.get(MANIFEST_CACHE_TTL);
+        return value == null ? 60 : Long.parseLong(value.toString());
+    }
+
+    private static String digest(byte[] content) {
+        return digest(ByteBuffer.wrap(content));
+    }
+
+    private static String digest(ByteBuffer content) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            messageDigest.update(content);
+            StringBuilder hex = new StringBuilder();
+            for (byte b : messageDigest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class CachedManifest {
+        private final FileManifest manifest;
+        private final String configType;
+        private final long expiresAt;
+
+        private CachedManifest(FileManifest manifest, String configType, long expiresAt) {
+            this.manifest = manifest;
+            this.configType = configType;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isFresh(long now) {
+            return now < expiresAt;
+        }
+    }
+}
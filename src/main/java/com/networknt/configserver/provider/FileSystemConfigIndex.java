@@ -0,0 +1,359 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.provider;
+
+import com.networknt.configserver.constants.ConfigServerConstants;
+import com.networknt.configserver.model.ConfigChangeEvent;
+import com.networknt.exception.ApiException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * In-memory index of the serviceConfigsDir tree used by {@link FileSystemProviderImpl}.
+ *
+ * The whole tree is loaded at startup and kept current with a {@link WatchService}; only the files that changed are
+ * read and parsed again, so requests never touch the disk. A missing serviceConfigsDir is checked for again until it
+ * exists. Cert and file contents are copied into read-only heap buffers rather than memory-mapped: operators edit these
+ * files in place, and truncating a mapped file fails or tears the reads of the requests using it.
+ * Directories are keyed by their path relative to the root with '/' separators, e.g. "configs/retail/api-customers/v1/dev".
+ */
+public class FileSystemConfigIndex implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(FileSystemConfigIndex.class);
+
+    static final String CONFIGS_FILE_NAME = "values";
+    static final String[] configExtensionsOrdered = {".yml", ".yaml", ".json"};
+    private static final long RETRY_INTERVAL = 5000;
+
+    private final Path root;
+    private final long retryInterval;
+    private final Map<String, Map<String, IndexedFile>> directories = new ConcurrentHashMap<>();
+    private final Map<WatchKey, Path> watchKeys = new ConcurrentHashMap<>();
+    private final List<ConfigChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile WatchService watchService;
+    private Thread watcher;
+    private volatile boolean running;
+    private volatile boolean loaded;
+
+    public FileSystemConfigIndex(Path root) {
+        this(root, RETRY_INTERVAL);
+    }
+
+    /**
+     * @param root          serviceConfigsDir
+     * @param retryInterval milliseconds between the checks for a root that does not exist yet
+     */
+    FileSystemConfigIndex(Path root, long retryInterval) {
+        this.root = root.toAbsolutePath().normalize();
+        this.retryInterval = retryInterval;
+    }
+
+    /**
+     * Load the whole tree and start watching it for changes. When the root does not exist yet, it is loaded as soon as
+     * it is created.
+     */
+    public synchronized void start() {
+        running = true;
+        if (Files.isDirectory(root)) {
+            loadRoot(false);
+        } else {
+            logger.warn("Service configs directory does not exist: {}; checking again every {} ms", root, retryInterval);
+        }
+        watcher = new Thread(this::run, "config-index-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    @Override
+    public synchronized void close() {
+        running = false;
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                logger.warn("Error while closing watch service", e);
+            }
+        }
+        if (watcher != null) {
+            watcher.interrupt();
+        }
+    }
+
+    public void addListener(ConfigChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Get the parsed values.yml (or values.yaml/values.json) of a directory.
+     *
+     * @param directory relative directory key
+     * @return parsed configs or null if the directory has no values file
+     */
+    public Map<String, Object> getConfigs(String directory) {
+        Map<String, IndexedFile> files = directories.get(directory);
+        if (files != null) {
+            for (String extension : configExtensionsOrdered) {
+                IndexedFile file = files.get(CONFIGS_FILE_NAME + extension);
+                if (file != null && file.configs != null) {
+                    return file.configs;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the content of all regular files of a directory.
+     *
+     * @param directory relative directory key
+     * @return file name to read-only file content; empty if the directory is unknown
+     */
+    public Map<String, ByteBuffer> getFiles(String directory) {
+        Map<String, IndexedFile> files = directories.get(directory);
+        if (files == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, ByteBuffer> contents = new HashMap<>();
+        for (IndexedFile file : files.values()) {
+            contents.put(file.name, file.content.duplicate());
+        }
+        return contents;
+    }
+
+    /**
+     * Get the content of one file of a directory.
+     *
+     * @param directory relative directory key
+     * @param fileName name of the file
+     * @return read-only file content, or null if the file is not indexed
+     */
+    public ByteBuffer getFile(String directory, String fileName) {
+        Map<String, IndexedFile> files = directories.get(directory);
+        IndexedFile file = files == null ? null : files.get(fileName);
+        return file == null ? null : file.content.duplicate();
+    }
+
+    /**
+     * Get the relative keys of all indexed directories.
+     *
+     * @return directory keys
+     */
+    public Set<String> getDirectories() {
+        return Collections.unmodifiableSet(directories.keySet());
+    }
+
+    private void loadRoot(boolean notify) {
+        try {
+            watchService = root.getFileSystem().newWatchService();
+        } catch (IOException e) {
+            logger.error("Could not create watch service for: " + root, e);
+        }
+        scan(root, notify);
+        loaded = true;
+        logger.info("Indexed {} directories under {}", directories.size(), root);
+    }
+
+    private void run() {
+        while (running && !loaded) {
+            try {
+                Thread.sleep(retryInterval);
+            } catch (InterruptedException e) {
+                return;
+            }
+            synchronized (this) {
+                if (running && Files.isDirectory(root)) {
+                    // requests answered before are stale now
+                    loadRoot(true);
+                }
+            }
+        }
+        if (running && watchService != null) {
+            processEvents();
+        }
+    }
+
+    private void scan(Path start, boolean notify) {
+        try {
+            Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    register(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile()) {
+                        load(file, notify);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    logger.error("Exception while reading file: {}", file);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            logger.error("Exception while reading files from configs directory: " + start, e);
+        }
+    }
+
+    private void register(Path dir) {
+        if (watchService == null) {
+            return;
+        }
+        try {
+            watchKeys.put(dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+        } catch (IOException e) {
+            logger.error("Could not watch directory: " + dir, e);
+        }
+    }
+
+    private void load(Path file, boolean notify) {
+        String directory = relativize(file.getParent());
+        String fileName = file.getFileName().toString();
+        try {
+            byte[] bytes = Files.readAllBytes(file);
+            ByteBuffer content = ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+            Map<String, Object> configs = null;
+            if (isValuesFile(directory, fileName)) {
+                try {
+                    configs = fileName.endsWith(".json") ? ConfigParser.parseJson(bytes) : ConfigParser.parseYaml(bytes);
+                } catch (ApiException e) {
+                    logger.error("Exception while parsing config file: {}", file);
+                }
+            }
+            directories.computeIfAbsent(directory, k -> new ConcurrentHashMap<>()).put(fileName, new IndexedFile(fileName, content, configs));
+            if (notify) {
+                fireChange(directory, fileName);
+            }
+        } catch (NoSuchFileException e) {
+            remove(file);
+        } catch (IOException e) {
+            logger.error("Exception while reading file: {}", file);
+        }
+    }
+
+    private void remove(Path path) {
+        String key = relativize(path);
+        // the path is gone, so it may have been a directory or a file
+        Iterator<String> iterator = directories.keySet().iterator();
+        while (iterator.hasNext()) {
+            String directory = iterator.next();
+            if (directory.equals(key) || directory.startsWith(key + ConfigServerConstants.SLASH)) {
+                iterator.remove();
+                fireChange(directory, null);
+            }
+        }
+        Map<String, IndexedFile> files = directories.get(relativize(path.getParent()));
+        if (files != null && files.remove(path.getFileName().toString()) != null) {
+            fireChange(relativize(path.getParent()), path.getFileName().toString());
+        }
+    }
+
+    private void processEvents() {
+        while (running) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Path dir = watchKeys.get(key);
+            if (dir != null) {
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW) {
+                        logger.warn("Watch events lost for {}; rescanning", dir);
+                        scan(dir, true);
+                        continue;
+                    }
+                    Path child = dir.resolve((Path) event.context());
+                    logger.debug("{}: {}", event.kind().name(), child);
+                    if (event.kind() == ENTRY_DELETE) {
+                        remove(child);
+                    } else if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                        scan(child, true);
+                    } else if (Files.isRegularFile(child)) {
+                        load(child, true);
+                    }
+                }
+            }
+            if (!key.reset()) {
+                watchKeys.remove(key);
+            }
+        }
+    }
+
+    private void fireChange(String directory, String fileName) {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        // {configType}/{projectName}/{name}/{version}/{environment}
+        String[] parts = directory.split(ConfigServerConstants.SLASH);
+        if (parts.length != 5) {
+            return;
+        }
+        ConfigChangeEvent event = new ConfigChangeEvent(parts[0], parts[1], parts[2], parts[3], parts[4], fileName);
+        for (ConfigChangeListener listener : listeners) {
+            try {
+                listener.onChange(event);
+            } catch (RuntimeException e) {
+                logger.error("Config change listener failed for " + event, e);
+            }
+        }
+    }
+
+    private boolean isValuesFile(String directory, String fileName) {
+        if (!directory.startsWith(ConfigServerConstants.CONFIGS + ConfigServerConstants.SLASH)) {
+            return false;
+        }
+        for (String extension : configExtensionsOrdered) {
+            if (fileName.equals(CONFIGS_FILE_NAME + extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String relativize(Path path) {
+        return root.relativize(path.toAbsolutePath().normalize()).toString().replace('\\', '/');
+    }
+
+    private static class IndexedFile {
+        private final String name;
+        private final ByteBuffer content;
+        private final Map<String, Object> configs;
+
+        private IndexedFile(String name, ByteBuffer content, Map<String, Object> configs) {
+            this.name = name;
+            this.content = content;
+            this.configs = configs;
+        }
+    }
+}
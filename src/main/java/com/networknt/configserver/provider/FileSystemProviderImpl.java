@@ -17,13 +17,14 @@
 package com.networknt.configserver.provider;
 
 import com.networknt.configserver.constants.ConfigServerConstants;
+import com.networknt.configserver.model.FileContent;
+import com.networknt.configserver.model.LayeredConfigMap;
 import com.networknt.configserver.model.Service;
 import com.networknt.configserver.model.ServiceConfigs;
 import com.networknt.config.Config;
 import com.networknt.exception.ApiException;
 
-import java.io.IOException;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
 import java.nio.file.Paths;
 import java.util.*;
 
@@ -33,6 +34,9 @@ import java.util.*;
  * This provider can be used for simple local environment when testing with config server.
  * Not intended for production use, unless until the encryption and authentication is implemented.
  *
+ * The folder is loaded into an in-memory {@link FileSystemConfigIndex} on first use and kept current by watching
+ * the file system, so requests are served without reading the disk.
+ *
  * To use this provider:
  * create a folder for the externalized configurations with below structure and
  * set your configserver.serviceConfigsDir config property to point to this folder.
@@ -77,7 +81,8 @@ import java.util.*;
 public class FileSystemProviderImpl implements IProvider {
 
     private static final String SERVICE_CONFIGS_DIR = "serviceConfigsDir";
-    private static final String CONFIGS_FILE_NAME = "values";
+
+    private volatile FileSystemConfigIndex index;
 
 
     @Override
@@ -96,23 +101,17 @@ public class FileSystemProviderImpl implements IProvider {
     @Override
     public ServiceConfigs getServiceConfigs(String authToken, Service service) throws ApiException {
         ServiceConfigs serviceConfigs = new ServiceConfigs();
-        serviceConfigs.setConfigProperties(new HashMap<String, Object>());
         serviceConfigs.setService(service);
         String configPath = null;
         Map<String, Object> configsMap = null;
 
         //Get Global configs
         configPath = buildConfigPath(service, ConfigServerConstants.CONFIGS, ConfigServerConstants.GLOBALS, service.getProjectVersion());
-        configsMap = Config.getInstance().getJsonMapConfigNoCache(CONFIGS_FILE_NAME, configPath);
-        if (configsMap != null) {
-            ((Map<String, Object>) serviceConfigs.getConfigProperties()).putAll(configsMap);
-        }
+        Map<String, Object> globalsMap = getIndex().getConfigs(configPath);
         //Get Service configs
         configPath = buildConfigPath(service, ConfigServerConstants.CONFIGS, service.getServiceName(), service.getServiceVersion());
-        configsMap = Config.getInstance().getJsonMapConfigNoCache(CONFIGS_FILE_NAME, configPath);
-        if (configsMap != null) {
-            ((Map<String, Object>) serviceConfigs.getConfigProperties()).putAll(configsMap);
-        }
+        configsMap = getIndex().getConfigs(configPath);
+        serviceConfigs.setConfigProperties(LayeredConfigMap.merge(globalsMap, configsMap));
         return serviceConfigs;
     }
 
@@ -129,21 +128,15 @@ public class FileSystemProviderImpl implements IProvider {
     public ServiceConfigs getServiceCertificates(String authToken, Service service) throws ApiException {
         ServiceConfigs serviceConfigs = new ServiceConfigs();
         serviceConfigs.setService(service);
-        serviceConfigs.setConfigProperties(new HashMap<String, Object>());
         String configPath = null;
         Map<String, Object> certsMap = null;
         //Get Global certs
         configPath = buildConfigPath(service, ConfigServerConstants.CERTS, ConfigServerConstants.GLOBALS, service.getProjectVersion());
-        certsMap = getFiles(configPath);
-        if (certsMap != null) {
-            ((Map<String, Object>) serviceConfigs.getConfigProperties()).putAll(certsMap);
-        }
+        Map<String, Object> globalsMap = getFiles(configPath);
         //Get Service certs
         configPath = buildConfigPath(service, ConfigServerConstants.CERTS, service.getServiceName(), service.getServiceVersion());
         certsMap = getFiles(configPath);
-        if (certsMap != null) {
-            ((Map<String, Object>) serviceConfigs.getConfigProperties()).putAll(certsMap);
-        }
+        serviceConfigs.setConfigProperties(LayeredConfigMap.merge(globalsMap, certsMap));
         return serviceConfigs;
     }
 
@@ -159,60 +152,141 @@ public class FileSystemProviderImpl implements IProvider {
     public ServiceConfigs getServiceFiles(String authToken, Service service) throws ApiException {
         ServiceConfigs serviceConfigs = new ServiceConfigs();
         serviceConfigs.setService(service);
-        serviceConfigs.setConfigProperties(new HashMap<String, Object>());
         String configPath = null;
         Map<String, Object> filesMap = null;
 
         //Get Global files
         configPath = buildConfigPath(service, ConfigServerConstants.FILES, ConfigServerConstants.GLOBALS, service.getProjectVersion());
-        filesMap = getFiles(configPath);
-        if (filesMap != null) {
-            ((Map<String, Object>) serviceConfigs.getConfigProperties()).putAll(filesMap);
-        }
+        Map<String, Object> globalsMap = getFiles(configPath);
         //Get Service files
         configPath = buildConfigPath(service, ConfigServerConstants.FILES, service.getServiceName(), service.getServiceVersion());
         filesMap = getFiles(configPath);
-        if (filesMap != null) {
-            ((Map<String, Object>) serviceConfigs.getConfigProperties()).putAll(filesMap);
-        }
+        serviceConfigs.setConfigProperties(LayeredConfigMap.merge(globalsMap, filesMap));
         return serviceConfigs;
     }
 
+    /**
+     * Get a single cert from config directory for given service details
+     *
+     * @param authToken can be ignored for file system provider
+     * @param service:  object with service details to create config directory certs path
+     * @param fileName: name of the cert file; the service cert is used over a global cert with the same name
+     * @return service cert, or an empty map if it does not exist
+     */
+    @Override
+    public ServiceConfigs getServiceCertificate(String authToken, Service service, String fileName) throws ApiException {
+        return getFile(service, ConfigServerConstants.CERTS, fileName);
+    }
+
+    /**
+     * Get a single file from config directory for given service details
+     *
+     * @param authToken can be ignored for file system provider
+     * @param service:  object with service details to create config directory files path
+     * @param fileName: name of the file; the service file is used over a global file with the same name
+     * @return service file, or an empty map if it does not exist
+     */
+    @Override
+    public ServiceConfigs getServiceFile(String authToken, Service service, String fileName) throws ApiException {
+        return getFile(service, ConfigServerConstants.FILES, fileName);
+    }
+
+    @Override
+    public Map<String, Map<String, Object>> getServiceFileLayers(String authToken, Service service, String configType) throws ApiException {
+        Map<String, Map<String, Object>> layers = new LinkedHashMap<>();
+        layers.put(ConfigServerConstants.GLOBALS, getFiles(buildConfigPath(service, configType, ConfigServerConstants.GLOBALS, service.getProjectVersion())));
+        layers.put(ConfigServerConstants.SERVICE, getFiles(buildConfigPath(service, configType, service.getServiceName(), service.getServiceVersion())));
+        return layers;
+    }
+
+    /**
+     * Get services from the config directory index for given project Name
+     *
+     * @param authToken   can be ignored for file system provider
+     * @param projectName projectName to get the services for; all projects if null
+     * @return servicesList
+     * @throws ApiException never for file system provider
+     */
     @Override
     public List<Service> searchServices(String authToken, String projectName) throws ApiException {
-        return null;
+        Set<Service> services = new LinkedHashSet<>();
+        List<String> directories = new ArrayList<>(getIndex().getDirectories());
+        Collections.sort(directories);
+        for (String directory : directories) {
+            // {configType}/{projectName}/{serviceName}/{serviceVersion}/{environment}
+            String[] parts = directory.split(ConfigServerConstants.SLASH);
+            if (parts.length != 5 || ConfigServerConstants.GLOBALS.equals(parts[2])) {
+                continue;
+            }
+            if (projectName != null && !projectName.equals(parts[1])) {
+                continue;
+            }
+            Service service = new Service();
+            service.setProjectName(parts[1]);
+            service.setServiceName(parts[2]);
+            service.setServiceVersion(parts[3]);
+            service.setEnvironment(parts[4]);
+            services.add(service);
+        }
+        return new ArrayList<>(services);
+    }
+
+    @Override
+    public void addChangeListener(ConfigChangeListener listener) {
+        getIndex().addListener(listener);
+    }
+
+    // stop watching the folder
+    synchronized void close() {
+        if (index != null) {
+            index.close();
+            index = null;
+        }
+    }
+
+    private FileSystemConfigIndex getIndex() {
+        if (index == null) {
+            synchronized (this) {
+                if (index == null) {
+                    Map<String, Object> config = Config.getInstance().getJsonMapConfig(ConfigServerConstants.CONFIG_NAME);
+                    FileSystemConfigIndex configIndex = new FileSystemConfigIndex(Paths.get((String) config.get(SERVICE_CONFIGS_DIR)));
+                    configIndex.start();
+                    index = configIndex;
+                }
+            }
+        }
+        return index;
     }
 
     private String buildConfigPath(Service service, String configType, String name, String version) {
-        Map<String, Object> config = Config.getInstance().getJsonMapConfig(ConfigServerConstants.CONFIG_NAME);
-        String configsDir = (String) config.get(SERVICE_CONFIGS_DIR);
-        StringBuffer configPath = new StringBuffer(configsDir);
-        configPath.append(ConfigServerConstants.SLASH).append(configType)
-                .append(ConfigServerConstants.SLASH).append(service.getProjectName())
+        StringBuilder configPath = new StringBuilder(configType);
+        configPath.append(ConfigServerConstants.SLASH).append(service.getProjectName())
                 .append(ConfigServerConstants.SLASH).append(name)
                 .append(ConfigServerConstants.SLASH).append(version)
                 .append(ConfigServerConstants.SLASH).append(service.getEnvironment());
         return configPath.toString();
     }
 
+    private ServiceConfigs getFile(Service service, String configType, String fileName) {
+        ServiceConfigs serviceConfigs = new ServiceConfigs();
+        serviceConfigs.setService(service);
+        Map<String, Object> configsMap = new HashMap<>();
+        serviceConfigs.setConfigProperties(configsMap);
+        ByteBuffer content = getIndex().getFile(buildConfigPath(service, configType, service.getServiceName(), service.getServiceVersion()), fileName);
+        if (content == null) {
+            content = getIndex().getFile(buildConfigPath(service, configType, ConfigServerConstants.GLOBALS, service.getProjectVersion()), fileName);
+        }
+        if (content != null) {
+            configsMap.put(fileName, new FileContent(content));
+        }
+        return serviceConfigs;
+    }
+
     private Map<String, Object> getFiles(String filesPath) {
         Map<String, Object> configsMap = new HashMap<>();
-        try {
-            Files.list(Paths.get(filesPath)).filter(Files::isRegularFile).forEach(file -> {
-                String fileName = file.getFileName().toString();
-                byte[] content = new byte[0];
-                try {
-                    content = Files.readAllBytes(file);
-                } catch (IOException e) {
-                    logger.error("Exception while reading file: " + fileName);;
-                }
-                if (content != null) {
-                    String encodedContent = Base64.getMimeEncoder().encodeToString(content);
-                    configsMap.put(fileName, encodedContent);
-                }
-            });
-        } catch (IOException e) {
-            logger.error("Exception while reading files from configs directory: " + filesPath);
+        for (Map.Entry<String, ByteBuffer> file : getIndex().getFiles(filesPath).entrySet()) {
+            // base64 encoding is done while the response is written
+            configsMap.put(file.getKey(), new FileContent(file.getValue()));
         }
         return configsMap;
     }
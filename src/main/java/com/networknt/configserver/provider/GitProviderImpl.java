@@ -17,6 +17,7 @@
 package com.networknt.configserver.provider;
 
 import com.networknt.configserver.constants.ConfigServerConstants;
+import com.networknt.configserver.model.LayeredConfigMap;
 import com.networknt.configserver.model.ProxyConfig;
 import com.networknt.configserver.model.Service;
 import com.networknt.configserver.model.ServiceConfigs;
@@ -26,6 +27,7 @@ import com.networknt.exception.ApiException;
 import com.networknt.status.Status;
 import io.undertow.util.Headers;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.http.Header;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.config.RequestConfig;
@@ -33,11 +35,13 @@ import org.apache.http.client.methods.HttpGet;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.util.EntityUtils;
-import org.jose4j.json.internal.json_simple.JSONValue;
-import org.yaml.snakeyaml.Yaml;
 
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 
@@ -97,6 +101,9 @@ public class GitProviderImpl implements IProvider {
     public static final String CONFIG_PROXY = "proxy";
 
     private static final String CONFIGS_FILE_NAME = "values.yml";
+    // latest commit of the default branch
+    private static final String COMMITS_HEAD = "commits?per_page=1";
+    private static final String SHA = "sha";
 
     private static final String GIT_API_HOST = "gitApiHost";
     private static final String GIT_API_CONTEXT_ROOT = "gitApiContextRoot";
@@ -105,6 +112,29 @@ public class GitProviderImpl implements IProvider {
     private static final String GIT_REPO_NAME = "gitRepoName";
     private static final String GIT_REPO_NAME_PREFIX = "light-service-configs-";
 
+    private static final String GIT_RATE_LIMIT_RESERVE = "gitRateLimitReserve";
+    private static final String GIT_RATE_LIMIT_CATALOG_RESERVE = "gitRateLimitCatalogReserve";
+    private static final String GIT_BACKGROUND_CONCURRENCY = "gitBackgroundConcurrency";
+    private static final String GIT_STALE_RESPONSES_MAX_BYTES = "gitStaleResponsesMaxBytes";
+    private static final String GIT_PINNED_RESPONSES_MAX_BYTES = "gitPinnedResponsesMaxBytes";
+    private static final String GIT_PINNED_RESPONSES_MAX_AGE = "gitPinnedResponsesMaxAge";
+    private static final int STALE_RESPONSES_MAX_SIZE = 1024;
+    private static final int PINNED_RESPONSES_MAX_SIZE = 4096;
+    private static final Pattern COMMIT_SHA = Pattern.compile("[0-9a-fA-F]{40}|[0-9a-fA-F]{64}");
+
+    private volatile GitRateLimitScheduler scheduler;
+
+    // Paths that returned 404, per token and url, so missing globals, certs and files are not requested again
+    private final MissingPathCache missingPaths = new MissingPathCache();
+
+    // Last good response per token and url, served when the rate limit budget runs out; created with the scheduler
+    private GitResponseCache staleResponses;
+
+    // Responses read at a full commit SHA never change, but they are kept per token, and login only checks the token's
+    // form; they are served for gitPinnedResponsesMaxAge seconds, so a revoked token is refused by the Git API within
+    // that time. Created with the scheduler
+    private GitResponseCache pinnedResponses;
+
 
     /**
      * Login to Git repo
@@ -135,27 +165,27 @@ public class GitProviderImpl implements IProvider {
     public ServiceConfigs getServiceConfigs(String authToken, Service service) throws ApiException {
         ServiceConfigs serviceConfigs = new ServiceConfigs();
         serviceConfigs.setService(service);
-        Map<String, Object> configsMap = new HashMap<String, Object>();
+        serviceConfigs.setImmutable(isCommitSha(service.getRef()));
+        Map<String, Object> globalsMap = null;
+        Map<String, Object> configsMap = null;
         Base64.Decoder decoder = Base64.getMimeDecoder();
 
         String contextRoot = buildContextRoot(service);
         //Get global configs first
         String globalConfigsEndpoint = buildEndpoint(contextRoot, ConfigServerConstants.CONFIGS, ConfigServerConstants.GLOBALS, service.getProjectVersion());
-        String encodedContent = getFileContent(authToken, globalConfigsEndpoint);
+        String encodedContent = getFileContent(authToken, globalConfigsEndpoint, service.getRef());
         if (encodedContent != null) {
-            String fileContent = new String(decoder.decode(encodedContent));
-            configsMap = getJsonFromYaml(fileContent);
+            globalsMap = ConfigParser.parseYaml(decoder.decode(encodedContent));
         }
 
         //Get service configs
         String serviceConfigsEndpoint = buildEndpoint(contextRoot, ConfigServerConstants.CONFIGS, service.getServiceName(), service.getServiceVersion());
-        encodedContent = getFileContent(authToken, serviceConfigsEndpoint);
+        encodedContent = getFileContent(authToken, serviceConfigsEndpoint, service.getRef());
         if (encodedContent != null) {
-            String fileContent = new String(decoder.decode(encodedContent));
-            //Merging two configs
-            configsMap.putAll(getJsonFromYaml(fileContent));
+            configsMap = ConfigParser.parseYaml(decoder.decode(encodedContent));
         }
-        serviceConfigs.setConfigProperties(configsMap);
+        //Merging two configs
+        serviceConfigs.setConfigProperties(LayeredConfigMap.merge(globalsMap, configsMap));
 
         return serviceConfigs;
     }
@@ -170,24 +200,23 @@ public class GitProviderImpl implements IProvider {
      */
     @Override
     public ServiceConfigs getServiceCertificates(String authToken, Service service) throws ApiException {
-        Map<String, Object> configsMap = new HashMap<String, Object>();
         ServiceConfigs serviceConfigs = new ServiceConfigs();
         serviceConfigs.setService(service);
+        serviceConfigs.setImmutable(isCommitSha(service.getRef()));
         List<String> certFileNames = null;
 
         String contextRoot = buildContextRoot(service);
         //Get global certs first
         String globalCertsEndpoint = buildEndpoint(contextRoot, ConfigServerConstants.CERTS, ConfigServerConstants.GLOBALS, service.getProjectVersion());
-        certFileNames = getFileNames(authToken, globalCertsEndpoint);
-        configsMap = getFolderContent(authToken, globalCertsEndpoint, certFileNames);
+        certFileNames = getFileNames(authToken, globalCertsEndpoint, service.getRef());
+        Map<String, Object> globalsMap = getFolderContent(authToken, globalCertsEndpoint, certFileNames, service.getRef());
 
         //Get service certs
         String serviceCertsEndpoint = buildEndpoint(contextRoot, ConfigServerConstants.CERTS, service.getServiceName(), service.getServiceVersion());
-        certFileNames = getFileNames(authToken, serviceCertsEndpoint);
+        certFileNames = getFileNames(authToken, serviceCertsEndpoint, service.getRef());
 
         //Merging two certs
-        configsMap.putAll(getFolderContent(authToken, serviceCertsEndpoint, certFileNames));
-        serviceConfigs.setConfigProperties(configsMap);
+        serviceConfigs.setConfigProperties(LayeredConfigMap.merge(globalsMap, getFolderContent(authToken, serviceCertsEndpoint, certFileNames, service.getRef())));
 
         return serviceConfigs;
     }
@@ -203,32 +232,95 @@ public class GitProviderImpl implements IProvider {
      */
     @Override
     public ServiceConfigs getServiceFiles(String authToken, Service service) throws ApiException {
-        Map<String, Object> configsMap = new HashMap<String, Object>();
         ServiceConfigs serviceConfigs = new ServiceConfigs();
         serviceConfigs.setService(service);
+        serviceConfigs.setImmutable(isCommitSha(service.getRef()));
         List<String> fileNames = null;
 
         String contextRoot = buildContextRoot(service);
         //Get global certs first
         String globalFilesEndpoint = buildEndpoint(contextRoot, ConfigServerConstants.FILES, ConfigServerConstants.GLOBALS, service.getProjectVersion());
-        fileNames = getFileNames(authToken, globalFilesEndpoint);
-        configsMap = getFolderContent(authToken, globalFilesEndpoint, fileNames);
+        fileNames = getFileNames(authToken, globalFilesEndpoint, service.getRef());
+        Map<String, Object> globalsMap = getFolderContent(authToken, globalFilesEndpoint, fileNames, service.getRef());
 
         //Get service files
         String serviceFilesEndpoint = buildEndpoint(contextRoot, ConfigServerConstants.FILES, service.getServiceName(), service.getServiceVersion());
-        fileNames = getFileNames(authToken, serviceFilesEndpoint);
+        fileNames = getFileNames(authToken, serviceFilesEndpoint, service.getRef());
 
         //Merging two files
-        configsMap.putAll(getFolderContent(authToken, serviceFilesEndpoint, fileNames));
+        serviceConfigs.setConfigProperties(LayeredConfigMap.merge(globalsMap, getFolderContent(authToken, serviceFilesEndpoint, fileNames, service.getRef())));
+
+        return serviceConfigs;
+    }
+
+    /**
+     * Get a single cert from git repo for given service details. Only the cert itself is read, first from the
+     * service folder and then from the globals folder.
+     *
+     * @param authToken: auth token to authenticate to git repo
+     * @param service:   object with service details to create git repo certs path
+     * @param fileName:  name of the cert file
+     * @return service cert, or an empty map if it does not exist
+     * @throws ApiException when fails to fetch the cert from git repo
+     */
+    @Override
+    public ServiceConfigs getServiceCertificate(String authToken, Service service, String fileName) throws ApiException {
+        return getFile(authToken, service, ConfigServerConstants.CERTS, fileName);
+    }
+
+    /**
+     * Get a single file from git repo for given service details. Only the file itself is read, first from the
+     * service folder and then from the globals folder.
+     *
+     * @param authToken: auth token to authenticate to git repo
+     * @param service:   object with service details to create git repo files path
+     * @param fileName:  name of the file
+     * @return service file, or an empty map if it does not exist
+     * @throws ApiException when fails to fetch the file from git repo
+     */
+    @Override
+    public ServiceConfigs getServiceFile(String authToken, Service service, String fileName) throws ApiException {
+        return getFile(authToken, service, ConfigServerConstants.FILES, fileName);
+    }
+
+    private ServiceConfigs getFile(String authToken, Service service, String configType, String fileName) throws ApiException {
+        Map<String, Object> configsMap = new HashMap<String, Object>();
+        ServiceConfigs serviceConfigs = new ServiceConfigs();
+        serviceConfigs.setService(service);
+        serviceConfigs.setImmutable(isCommitSha(service.getRef()));
         serviceConfigs.setConfigProperties(configsMap);
 
+        String contextRoot = buildContextRoot(service);
+        String serviceEndpoint = buildEndpoint(contextRoot, configType, service.getServiceName(), service.getServiceVersion());
+        String encodedName = IProvider.encodeFileName(fileName);
+        String encodedContent = getFileContent(authToken, serviceEndpoint + ConfigServerConstants.SLASH + encodedName, service.getRef());
+        if (encodedContent == null) {
+            String globalEndpoint = buildEndpoint(contextRoot, configType, ConfigServerConstants.GLOBALS, service.getProjectVersion());
+            encodedContent = getFileContent(authToken, globalEndpoint + ConfigServerConstants.SLASH + encodedName, service.getRef());
+        }
+        if (encodedContent != null) {
+            configsMap.put(fileName, encodedContent);
+        }
         return serviceConfigs;
     }
 
-    private String getFileContent(String authToken, String filePath) throws ApiException {
+    @Override
+    public Map<String, Map<String, Object>> getServiceFileLayers(String authToken, Service service, String configType) throws ApiException {
+        Map<String, Map<String, Object>> layers = new LinkedHashMap<>();
+        String contextRoot = buildContextRoot(service);
+        String globalEndpoint = buildEndpoint(contextRoot, configType, ConfigServerConstants.GLOBALS, service.getProjectVersion());
+        layers.put(ConfigServerConstants.GLOBALS, getFolderContent(authToken, globalEndpoint,
+                getFileNames(authToken, globalEndpoint, service.getRef()), service.getRef()));
+        String serviceEndpoint = buildEndpoint(contextRoot, configType, service.getServiceName(), service.getServiceVersion());
+        layers.put(ConfigServerConstants.SERVICE, getFolderContent(authToken, serviceEndpoint,
+                getFileNames(authToken, serviceEndpoint, service.getRef()), service.getRef()));
+        return layers;
+    }
+
+    private String getFileContent(String authToken, String filePath, String ref) throws ApiException {
         String encodedContent = null;
 
-        String respBody = executeRequest(authToken, filePath);
+        String respBody = executeRequest(authToken, filePath, ref);
         if (respBody != null) {
             try {
                 Map<String, Object> responseMap = (Map<String, Object>) mapper.readValue(respBody, new TypeReference<Map<String, Object>>(){});
@@ -243,10 +335,10 @@ public class GitProviderImpl implements IProvider {
         return encodedContent;
     }
 
-    private List<String> getFileNames(String authToken, String filePath) throws ApiException {
+    private List<String> getFileNames(String authToken, String filePath, String ref) throws ApiException {
         List<String> fileNames = null;
 
-        String respBody = executeRequest(authToken, filePath);
+        String respBody = executeRequest(authToken, filePath, ref);
         if (respBody != null) {
             try {
                 List<Map<String, Object>> fileNamesList = (List<Map<String, Object>>) mapper.readValue(respBody, new TypeReference<List<Map<String, Object>>>() {});
@@ -265,18 +357,49 @@ public class GitProviderImpl implements IProvider {
     }
 
    /**
-     * Execute REST request using Apache client
+     * Execute REST request using Apache client.
+     * The request goes through the rate limit scheduler in the lane of the current thread; when the Git API budget
+     * is exhausted the last good response for the same endpoint is returned instead.
+     * Responses read at a full commit SHA are cached without expiry and served without calling the Git API.
+     * Paths that returned 404 are remembered for missingPathTtl seconds and answered with null without a request.
      * @param authToken authorization token
      * @param endpoint the endpoint path that needs to be called
-     * @return
+     * @param ref optional branch, tag or commit SHA to read from; the repository default branch if null
+     * @return response body, or null when the path does not exist
      * @throws ApiException
      */
-    private String executeRequest(String authToken, String endpoint) throws ApiException{
+    private String executeRequest(String authToken, String endpoint, String ref) throws ApiException{
         String respBody = null;
         Map<String, Object> config = Config.getInstance().getJsonMapConfig(ConfigServerConstants.CONFIG_NAME);
         String url = config.get(GIT_API_HOST) + endpoint;
+        if (StringUtils.isNotBlank(ref)) {
+            try {
+                url = url + "?ref=" + URLEncoder.encode(ref, StandardCharsets.UTF_8.name());
+            } catch (UnsupportedEncodingException e) {
+                throw new ApiException(new Status("ACS00001", 500, "Invalid ref: " + ref));
+            }
+        }
+        String staleKey = authToken + " " + url;
+        boolean pinned = isCommitSha(ref);
+        GitRateLimitScheduler rateLimitScheduler = getScheduler(config);
+        if (pinned) {
+            respBody = pinnedResponses.get(staleKey);
+            if (respBody != null) {
+                logger.debug("Serving pinned Git API response for URL: {}", url);
+                return respBody;
+            }
+        }
+        if (missingPaths.isMissing(staleKey)) {
+            logger.debug("Path known to be missing in git: {}", endpoint);
+            return null;
+        }
         logger.debug("Creating request for URL: {}", url);
 
+        GitRateLimitScheduler.Priority priority = GitRateLimitScheduler.currentPriority();
+        if (!rateLimitScheduler.tryAcquire(priority)) {
+            return getStaleResponse(staleKey, endpoint);
+        }
+
         CloseableHttpClient client = HttpClients.createDefault();
         HttpGet request = new HttpGet(url);
         request.addHeader(Headers.AUTHORIZATION.toString(), authToken);
@@ -298,15 +421,76 @@ public class GitProviderImpl implements IProvider {
                 respBody = EntityUtils.toString(response.getEntity());
                 logger.debug("Received Git API response: {}", respBody);
 
+                String remaining = getHeader(response, GitRateLimitScheduler.RATE_LIMIT_REMAINING);
+                String retryAfter = getHeader(response, GitRateLimitScheduler.RETRY_AFTER);
+                rateLimitScheduler.update(remaining, getHeader(response, GitRateLimitScheduler.RATE_LIMIT_RESET), retryAfter);
+                if (GitRateLimitScheduler.isRateLimited(statusCode, remaining, retryAfter)) {
+                    logger.warn("Git API rate limit exceeded for: {}", endpoint);
+                    return getStaleResponse(staleKey, endpoint);
+                }
+
                 checkForErrors(endpoint, respBody, statusCode);
+                if (statusCode == 404) {
+                    missingPaths.add(staleKey, MissingPathCache.getTtl(config));
+                    return null;
+                }
+                staleResponses.put(staleKey, respBody);
+                if (pinned && statusCode == 200) {
+                    pinnedResponses.put(staleKey, respBody);
+                }
             }
         } catch (IOException e) {
             logger.error("Exception while calling Git API: ", e);
             throw new ApiException(new Status("ACS00001", 500, "Could not connect to Git server"));
+        } finally {
+            rateLimitScheduler.release(priority);
+        }
+        return respBody;
+    }
+
+    private String getStaleResponse(String staleKey, String endpoint) throws ApiException {
+        String respBody = staleResponses.get(staleKey);
+        if (respBody == null) {
+            logger.error("Git API rate limit exceeded and no cached response for: {}", endpoint);
+            throw new ApiException(new Status("ACS00001", 429, "Git API rate limit exceeded"));
         }
+        logger.info("Serving cached Git API response for: {}", endpoint);
         return respBody;
     }
 
+    private String getHeader(HttpResponse response, String name) {
+        Header header = response.getFirstHeader(name);
+        return header == null ? null : header.getValue();
+    }
+
+    private GitRateLimitScheduler getScheduler(Map<String, Object> config) {
+        if (scheduler == null) {
+            synchronized (this) {
+                if (scheduler == null) {
+                    staleResponses = new GitResponseCache(STALE_RESPONSES_MAX_SIZE,
+                            getLongConfig(config, GIT_STALE_RESPONSES_MAX_BYTES, 32L * 1024 * 1024));
+                    pinnedResponses = new GitResponseCache(PINNED_RESPONSES_MAX_SIZE,
+                            getLongConfig(config, GIT_PINNED_RESPONSES_MAX_BYTES, 64L * 1024 * 1024),
+                            getLongConfig(config, GIT_PINNED_RESPONSES_MAX_AGE, 300) * 1000);
+                    scheduler = new GitRateLimitScheduler(getIntConfig(config, GIT_RATE_LIMIT_RESERVE, 100),
+                            getIntConfig(config, GIT_RATE_LIMIT_CATALOG_RESERVE, 500),
+                            getIntConfig(config, GIT_BACKGROUND_CONCURRENCY, 2));
+                }
+            }
+        }
+        return scheduler;
+    }
+
+    private int getIntConfig(Map<String, Object> config, String key, int defaultValue) {
+        Object value = config.get(key);
+        return value == null ? defaultValue : Integer.parseInt(value.toString());
+    }
+
+    private long getLongConfig(Map<String, Object> config, String key, long defaultValue) {
+        Object value = config.get(key);
+        return value == null ? defaultValue : Long.parseLong(value.toString());
+    }
+
     private void checkForErrors(String endpoint, String respBody, int statusCode) throws IOException, ApiException {
         if (statusCode == 404) {
             logger.error("Path not found in git: {}", endpoint);
@@ -321,27 +505,12 @@ public class GitProviderImpl implements IProvider {
         }
     }
 
-    private Map<String, Object> getJsonFromYaml(String yamlString) throws ApiException {
-        Map<String, Object> jsonMap = new HashMap<String, Object>();
-        if (yamlString != null) {
-            String jsonString = JSONValue.toJSONString(new Yaml().load(yamlString));
-            try {
-                jsonMap = (Map<String, Object>) mapper.readValue(jsonString, new TypeReference<Map<String, Object>>() {
-                });
-            } catch (IOException e) {
-                logger.error("Error while parsing yaml string:", e);
-                throw new ApiException(new Status("ACS00002"));
-            }
-        }
-        return jsonMap;
-    }
-
-    private Map<String, Object> getFolderContent(String authToken, String folderPath, List<String> fileNames) throws ApiException {
+    private Map<String, Object> getFolderContent(String authToken, String folderPath, List<String> fileNames, String ref) throws ApiException {
         Map<String, Object> folderContent = new HashMap<String, Object>();
         if (fileNames != null) {
             for (String fileName : fileNames) {
                 StringBuilder filePath = new StringBuilder(folderPath).append(ConfigServerConstants.SLASH).append(fileName);
-                String encodedFileContent = getFileContent(authToken, filePath.toString());
+                String encodedFileContent = getFileContent(authToken, filePath.toString(), ref);
                 if (encodedFileContent != null) {
                     folderContent.put(fileName, encodedFileContent);
                 }
@@ -355,6 +524,40 @@ public class GitProviderImpl implements IProvider {
         return null;
     }
 
+    /**
+     * Get the head commit of the default branch of the repository the service is read from. Every commit to the
+     * repository changes it, so it tells when any service of the repository may have changed.
+     *
+     * @param authToken: auth token to authenticate to git repo
+     * @param service:   object with the projectName and environment of the repository
+     * @return commit SHA, or null when the repository has no commits or does not exist
+     * @throws ApiException when fails to fetch the commits from git repo
+     */
+    @Override
+    public String getRevision(String authToken, Service service) throws ApiException {
+        String respBody = executeRequest(authToken, buildRepoRoot(service) + ConfigServerConstants.SLASH + COMMITS_HEAD, null);
+        if (respBody == null) {
+            return null;
+        }
+        try {
+            List<Map<String, Object>> commits = mapper.readValue(respBody, new TypeReference<List<Map<String, Object>>>() {});
+            return commits.isEmpty() || commits.get(0).get(SHA) == null ? null : commits.get(0).get(SHA).toString();
+        } catch (IOException e) {
+            logger.error("Error while parsing response from Git API:", e);
+            throw new ApiException(new Status("ACS00002"));
+        }
+    }
+
+    /**
+     * Check if the ref is a full commit SHA, so the content read at it can never change.
+     *
+     * @param ref branch, tag or commit SHA
+     * @return true for a full SHA-1 or SHA-256 commit id
+     */
+    static boolean isCommitSha(String ref) {
+        return ref != null && COMMIT_SHA.matcher(ref).matches();
+    }
+
     private String buildEndpoint(String contextRoot, String configType, String name, String version){
         StringBuilder endpoint = new StringBuilder(contextRoot)
                 .append(ConfigServerConstants.SLASH).append(configType)
@@ -369,6 +572,10 @@ public class GitProviderImpl implements IProvider {
     }
 
     private String buildContextRoot(Service service) {
+        return buildRepoRoot(service) + ConfigServerConstants.SLASH + CONTENTS;
+    }
+
+    private String buildRepoRoot(Service service) {
         Map<String, Object> config = Config.getInstance().getJsonMapConfig(ConfigServerConstants.CONFIG_NAME);
         String gitRepoName = (String) config.get(GIT_REPO_NAME);
         if (StringUtils.isBlank(gitRepoName)) {
@@ -381,11 +588,10 @@ public class GitProviderImpl implements IProvider {
                     .replace(ConfigServerConstants.ENVIRONMENT_PLACEHOLDER, service.getEnvironment());
         }
 
-        StringBuilder contextRoot = new StringBuilder()
+        StringBuilder repoRoot = new StringBuilder()
                 .append(ConfigServerConstants.SLASH).append(config.get(GIT_API_CONTEXT_ROOT))
                 .append(ConfigServerConstants.SLASH).append(config.get(GIT_REPO_OWNER))
-                .append(ConfigServerConstants.SLASH).append(gitRepoName)
-                .append(ConfigServerConstants.SLASH).append(CONTENTS);
-        return contextRoot.toString();
+                .append(ConfigServerConstants.SLASH).append(gitRepoName);
+        return repoRoot.toString();
     }
 }
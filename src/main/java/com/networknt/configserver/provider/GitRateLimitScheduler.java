@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.provider;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admission scheduler for Git API calls, driven by the X-RateLimit-Remaining and X-RateLimit-Reset
+ * response headers.
+ *
+ * Every fetch runs in one of three priority lanes:
+ * - INTERACTIVE: requests that block a client at startup; may spend the whole remaining budget
+ * - BACKGROUND: cache refreshes; stop once the remaining budget drops to the interactive reserve
+ * - CATALOG: service catalog scans; stop once the remaining budget drops to the catalog reserve
+ *
+ * Background and catalog lanes are also limited in concurrency so they can not crowd out interactive calls.
+ * The lane of the current thread defaults to INTERACTIVE and can be changed with {@link #withPriority(Priority, Callable)}.
+ */
+public class GitRateLimitScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(GitRateLimitScheduler.class);
+
+    public static final String RATE_LIMIT_REMAINING = "X-RateLimit-Remaining";
+    public static final String RATE_LIMIT_RESET = "X-RateLimit-Reset";
+    public static final String RETRY_AFTER = "Retry-After";
+
+    public enum Priority {
+        INTERACTIVE, BACKGROUND, CATALOG
+    }
+
+    private static final ThreadLocal<Priority> currentPriority = ThreadLocal.withInitial(() -> Priority.INTERACTIVE);
+
+    private final int interactiveReserve;
+    private final int catalogReserve;
+    private final Semaphore backgroundPermits;
+
+    // -1 means the budget is unknown, e.g. before the first response or after the reset time has passed
+    private volatile int remaining = -1;
+    private volatile long resetEpochSeconds = 0;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public GitRateLimitScheduler(int interactiveReserve, int catalogReserve, int backgroundConcurrency) {
+        this.interactiveReserve = interactiveReserve;
+        this.catalogReserve = Math.max(catalogReserve, interactiveReserve);
+        this.backgroundPermits = new Semaphore(Math.max(1, backgroundConcurrency), true);
+    }
+
+    /**
+     * Run the given task with the given priority lane bound to the current thread.
+     *
+     * @param priority lane to use for Git fetches made by the task
+     * @param task     task to run
+     * @param <T>      task result type
+     * @return result of the task
+     * @throws Exception thrown by the task
+     */
+    public static <T> T withPriority(Priority priority, Callable<T> task) throws Exception {
+        Priority previous = currentPriority.get();
+        currentPriority.set(priority);
+        try {
+            return task.call();
+        } finally {
+            currentPriority.set(previous);
+        }
+    }
+
+    public static Priority currentPriority() {
+        return currentPriority.get();
+    }
+
+    /**
+     * Try to reserve one API call for the given lane.
+     *
+     * @param priority lane of the call
+     * @return true if the call may go to the Git API; the caller must then call {@link #release(Priority)}
+     */
+    public boolean tryAcquire(Priority priority) {
+        if (!hasBudget(priority)) {
+            logger.warn("Git API budget exhausted for {} lane; remaining: {}, reset at: {}", priority, remaining, resetEpochSeconds);
+            return false;
+        }
+        if (priority != Priority.INTERACTIVE) {
+            try {
+                backgroundPermits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        inFlight.incrementAndGet();
+        return true;
+    }
+
+    public void release(Priority priority) {
+        inFlight.decrementAndGet();
+        if (priority != Priority.INTERACTIVE) {
+            backgroundPermits.release();
+        }
+    }
+
+    /**
+     * Update the budget from the rate limit headers of a Git API response. Null values are ignored.
+     *
+     * @param remainingHeader  value of X-RateLimit-Remaining
+     * @param resetHeader      value of X-RateLimit-Reset (epoch seconds)
+     * @param retryAfterHeader value of Retry-After (seconds), sent with secondary rate limits
+     */
+    public void update(String remainingHeader, String resetHeader, String retryAfterHeader) {
+        try {
+            if (resetHeader != null) {
+                resetEpochSeconds = Long.parseLong(resetHeader.trim());
+            }
+            if (remainingHeader != null) {
+                remaining = Integer.parseInt(remainingHeader.trim());
+            }
+            if (retryAfterHeader != null) {
+                remaining = 0;
+                resetEpochSeconds = nowEpochSeconds() + Long.parseLong(retryAfterHeader.trim());
+            }
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid Git API rate limit headers: {}/{}/{}", remainingHeader, resetHeader, retryAfterHeader);
+        }
+    }
+
+    /**
+     * Check whether a Git API response was rejected because of the rate limit.
+     *
+     * @param statusCode       response status code
+     * @param remainingHeader  value of X-RateLimit-Remaining
+     * @param retryAfterHeader value of Retry-After
+     * @return true for a 403/429 response caused by the primary or secondary rate limit
+     */
+    public static boolean isRateLimited(int statusCode, String remainingHeader, String retryAfterHeader) {
+        if (statusCode != 403 && statusCode != 429) {
+            return false;
+        }
+        return statusCode == 429 || retryAfterHeader != null || "0".equals(remainingHeader == null ? null : remainingHeader.trim());
+    }
+
+    public int getRemaining() {
+        return remaining;
+    }
+
+    public long getResetEpochSeconds() {
+        return resetEpochSeconds;
+    }
+
+    boolean hasBudget(Priority priority) {
+        int known = remaining;
+        if (known < 0) {
+            return true;
+        }
+        if (resetEpochSeconds > 0 && nowEpochSeconds() >= resetEpochSeconds) {
+            remaining = -1;
+            return true;
+        }
+        int available = known - inFlight.get();
+        switch (priority) {
+            case INTERACTIVE:
+                return available > 0;
+            case BACKGROUND:
+                return available > interactiveReserve;
+            default:
+                return available > catalogReserve;
+        }
+    }
+
+    long nowEpochSeconds() {
+        return System.currentTimeMillis() / 1000;
+    }
+}
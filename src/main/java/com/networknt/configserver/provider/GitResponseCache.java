@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.provider;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of Git API response bodies, bounded by the total size of the bodies as well as by their number.
+ *
+ * A contents API response carries the whole file base64 encoded, so a count alone does not bound the heap. The size of
+ * an entry is the length of its key and body: the bodies are ASCII JSON, which the JVM keeps at one byte per char.
+ * A body larger than the whole budget is not cached. With a maximum age, an entry is dropped that long after it was
+ * put, so that a response keyed by a token is not served for longer than that without asking the Git API again.
+ */
+class GitResponseCache {
+    private final int maxSize;
+    private final long maxBytes;
+    private final long maxAge;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    GitResponseCache(int maxSize, long maxBytes) {
+        this(maxSize, maxBytes, 0);
+    }
+
+    /**
+     * @param maxAge milliseconds an entry is served after it was put; 0 for no limit
+     */
+    GitResponseCache(int maxSize, long maxBytes, long maxAge) {
+        this.maxSize = maxSize;
+        this.maxBytes = maxBytes;
+        this.maxAge = maxAge;
+    }
+
+    synchronized String get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (maxAge > 0 && System.currentTimeMillis() - entry.storedAt >= maxAge) {
+            entries.remove(key);
+            bytes -= size(key, entry.body);
+            return null;
+        }
+        return entry.body;
+    }
+
+    synchronized void put(String key, String body) {
+        Entry previous = entries.remove(key);
+        if (previous != null) {
+            bytes -= size(key, previous.body);
+        }
+        long size = size(key, body);
+        if (size > maxBytes) {
+            return;
+        }
+        entries.put(key, new Entry(body, System.currentTimeMillis()));
+        bytes += size;
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (bytes > maxBytes || entries.size() > maxSize) {
+            Map.Entry<String, Entry> entry = eldest.next();
+            bytes -= size(entry.getKey(), entry.getValue().body);
+            eldest.remove();
+        }
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized long getBytes() {
+        return bytes;
+    }
+
+    private static long size(String key, String body) {
+        return key.length() + body.length();
+    }
+
+    private static class Entry {
+        private final String body;
+        private final long storedAt;
+
+        private Entry(String body, long storedAt) {
+            this.body = body;
+            this.storedAt = storedAt;
+        }
+    }
+}
@@ -16,6 +16,7 @@
 
 package com.networknt.configserver.provider;
 
+import com.networknt.configserver.constants.ConfigServerConstants;
 import com.networknt.configserver.model.Service;
 import com.networknt.configserver.model.ServiceConfigs;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -25,7 +26,13 @@ import com.networknt.service.SingletonServiceFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Interface class to provide the contract for the different config server provider implementations
@@ -65,7 +72,109 @@ public interface IProvider {
     public ServiceConfigs getServiceFiles(String authToken, Service service) throws ApiException;
 
 
+    // get a single cert from provider backend; a service cert takes precedence over the global cert with the same name
+    default ServiceConfigs getServiceCertificate(String authToken, Service service, String fileName) throws ApiException {
+        return selectFile(getServiceCertificates(authToken, service), fileName);
+    }
+
+    // get a single file from provider backend; a service file takes precedence over the global file with the same name
+    default ServiceConfigs getServiceFile(String authToken, Service service, String fileName) throws ApiException {
+        return selectFile(getServiceFiles(authToken, service), fileName);
+    }
+
+    /**
+     * Get the certs or files of a service per source layer, before they are merged.
+     * The default implementation can not tell the layers apart and returns the merged files as the service layer.
+     *
+     * @param configType CERTS or FILES
+     * @return GLOBALS and SERVICE layers in merge order, each mapping file names to contents
+     */
+    default Map<String, Map<String, Object>> getServiceFileLayers(String authToken, Service service, String configType) throws ApiException {
+        ServiceConfigs serviceConfigs = ConfigServerConstants.CERTS.equals(configType)
+                ? getServiceCertificates(authToken, service) : getServiceFiles(authToken, service);
+        Map<String, Map<String, Object>> layers = new LinkedHashMap<>();
+        layers.put(ConfigServerConstants.SERVICE, (Map<String, Object>) serviceConfigs.getConfigProperties());
+        return layers;
+    }
+
+    /**
+     * Get the configs, certs or files of a service.
+     *
+     * @param configType CONFIGS, CERTS or FILES
+     */
+    default ServiceConfigs getServiceConfigs(String authToken, Service service, String configType) throws ApiException {
+        if (ConfigServerConstants.CERTS.equals(configType)) {
+            return getServiceCertificates(authToken, service);
+        }
+        return ConfigServerConstants.FILES.equals(configType) ? getServiceFiles(authToken, service) : getServiceConfigs(authToken, service);
+    }
+
     // get services from provider backend
     public List<Service> searchServices(String authToken, String projectName) throws ApiException;
 
+    /**
+     * Keep only the given file in the merged certs or files of a service.
+     *
+     * @param serviceConfigs merged certs or files
+     * @param fileName name of the file to keep
+     * @return serviceConfigs with a single entry, or an empty map if the file does not exist
+     */
+    static ServiceConfigs selectFile(ServiceConfigs serviceConfigs, String fileName) {
+        Map<String, Object> configsMap = new HashMap<>();
+        Object configProperties = serviceConfigs.getConfigProperties();
+        if (configProperties instanceof Map && ((Map<String, Object>) configProperties).get(fileName) != null) {
+            configsMap.put(fileName, ((Map<String, Object>) configProperties).get(fileName));
+        }
+        serviceConfigs.setConfigProperties(configsMap);
+        return serviceConfigs;
+    }
+
+    /**
+     * Check that a requested cert or file name can not address anything outside the cert or file folders.
+     *
+     * @param fileName requested file name
+     * @return false for blank names, "." and "..", and names with path separators or control characters
+     */
+    static boolean isValidFileName(String fileName) {
+        if (fileName == null || fileName.trim().isEmpty() || ".".equals(fileName) || "..".equals(fileName)) {
+            return false;
+        }
+        for (int i = 0; i < fileName.length(); i++) {
+            char c = fileName.charAt(i);
+            if (c == '/' || c == '\\' || c < 0x20 || c == 0x7f) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Encode a file name as one segment of a backend URL path, so that characters such as '?', '#', '%' or spaces
+     * are read as part of the name instead of starting a query or fragment.
+     *
+     * @param fileName valid file name, see {@link #isValidFileName(String)}
+     * @return percent-encoded file name
+     */
+    static String encodeFileName(String fileName) {
+        try {
+            return URLEncoder.encode(fileName, StandardCharsets.UTF_8.name()).replace("+", "%20");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Get an identifier of the backend content a service is read from, which changes whenever that content may have
+     * changed, e.g. the head commit of a Git repository. The default implementation can not tell and returns null.
+     *
+     * @return revision, or null when the provider has no such signal
+     */
+    default String getRevision(String authToken, Service service) throws ApiException {
+        return null;
+    }
+
+    // register a listener for backend changes; providers that can not detect changes ignore it
+    default void addChangeListener(ConfigChangeListener listener) {
+    }
+
 }
@@ -0,0 +1,350 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.provider;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.zip.CRC32;
+
+/**
+ * Embedded persistent key-value store kept in a single file.
+ *
+ * Writes are appended to the file as checksummed records, a delete being a record without value, and flushed to
+ * disk before they are visible. Reads never copy: the file is memory-mapped and a value is a read-only view of the
+ * mapping, found through a sorted in-memory index of the live keys that also answers prefix range scans.
+ * When more than half of the file is overwritten records, the live records are rewritten in key order to a new file
+ * that replaces the old one. A record torn by a crash at the end of the file is dropped when the store is opened.
+ *
+ * Records are written through a read-write mapping that is grown ahead of the data, by a quarter of the file and at
+ * least 4 MB, so a put is a copy and a flush rather than a new mapping; the file is remapped only when a record
+ * does not fit. While the store is open the file carries that zero-filled tail, which is cut off on close, or when
+ * the store is opened after a crash.
+ *
+ * Reads are lock-free; writes are serialized. Values already returned stay readable after later writes and compactions.
+ * The file is limited to 2 GB, the size of a single mapping.
+ */
+public class KvStore implements MirrorStore, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(KvStore.class);
+
+    // "LCKV"
+    private static final int MAGIC = 0x4c434b56;
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 8;
+    // key length, value length, then key, value and the CRC32 of both
+    private static final int RECORD_OVERHEAD = 12;
+    private static final int TOMBSTONE = -1;
+    private static final long MIN_COMPACTION_GARBAGE = 1024 * 1024;
+    private static final long MIN_GROWTH = 4 * 1024 * 1024;
+
+    private final Path file;
+    private final ConcurrentNavigableMap<String, Location> index = new ConcurrentSkipListMap<>();
+    private FileChannel channel;
+    // read-write, at least size bytes; beyond size it is the zero-filled tail records are written into
+    private MappedByteBuffer mapping;
+    private long size;
+    private long garbage;
+    private int mappings;
+
+    /**
+     * Open the store, creating the file when it does not exist.
+     */
+    public KvStore(Path file) throws IOException {
+        this.file = file.toAbsolutePath();
+        if (this.file.getParent() != null) {
+            Files.createDirectories(this.file.getParent());
+        }
+        open();
+    }
+
+    @Override
+    public ByteBuffer get(String key) {
+        Location location = index.get(key);
+        if (location == null) {
+            return null;
+        }
+        ByteBuffer value = location.mapping.duplicate();
+        value.position((int) location.offset);
+        value.limit((int) location.offset + location.length);
+        return value.slice().asReadOnlyBuffer();
+    }
+
+    @Override
+    public synchronized void put(String key, byte[] value) throws IOException {
+        append(key, value);
+        compactIfNeeded();
+    }
+
+    @Override
+    public synchronized boolean delete(String key) throws IOException {
+        if (!index.containsKey(key)) {
+            return false;
+        }
+        append(key, null);
+        compactIfNeeded();
+        return true;
+    }
+
+    @Override
+    public List<String> keys(String prefix) {
+        return new ArrayList<>(index.subMap(prefix, true, prefix + Character.MAX_VALUE, false).keySet());
+    }
+
+    public int count() {
+        return index.size();
+    }
+
+    /**
+     * @return bytes of the file taken by overwritten and deleted records
+     */
+    public synchronized long getGarbage() {
+        return garbage;
+    }
+
+    /**
+     * @return number of times the file was mapped since the store was opened
+     */
+    synchronized int getMappings() {
+        return mappings;
+    }
+
+    /**
+     * Rewrite the live records to a new file, dropping the overwritten and deleted ones.
+     */
+    public synchronized void compact() throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".compact");
+        Map<String, long[]> compacted = new LinkedHashMap<>();
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            out.write(header());
+            long position = FILE_HEADER_SIZE;
+            for (Map.Entry<String, Location> entry : index.entrySet()) {
+                ByteBuffer value = get(entry.getKey());
+                byte[] bytes = new byte[value.remaining()];
+                value.get(bytes);
+                ByteBuffer record = record(entry.getKey(), bytes);
+                int keyLength = record.getInt(0);
+                out.write(record);
+                compacted.put(entry.getKey(), new long[]{position + 8 + keyLength, bytes.length});
+                position += record.capacity();
+            }
+            out.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel.close();
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        size = channel.size();
+        map(size);
+        for (Map.Entry<String, long[]> entry : compacted.entrySet()) {
+            index.put(entry.getKey(), new Location(mapping, entry.getValue()[0], (int) entry.getValue()[1]));
+        }
+        garbage = 0;
+        logger.info("Compacted {} to {} keys in {} bytes", file, index.size(), size);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            channel.truncate(size);
+        } catch (IOException e) {
+            // e.g. refused while the file is mapped on Windows; the tail is cut off when the store is opened again
+            logger.debug("Could not cut the unused tail of {}", file, e);
+        }
+        channel.close();
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() == 0) {
+            channel.write(header(), 0);
+            channel.force(true);
+        }
+        checkSize(channel.size());
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (buffer.limit() < FILE_HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            channel.close();
+            throw new IOException("Not a key-value store file: " + file);
+        }
+        long position = FILE_HEADER_SIZE;
+        while (position < buffer.limit()) {
+            if (isUnwritten(buffer, position)) {
+                // the tail of a store that was not closed
+                channel.truncate(position);
+                break;
+            }
+            long end = replay(buffer, position);
+            if (end < 0) {
+                logger.warn("Dropping a torn record at {} of {}", position, file);
+                channel.truncate(position);
+                break;
+            }
+            position = end;
+        }
+        size = position;
+        map(size);
+    }
+
+    /**
+     * Map the file read-write with room for records up to the required size and then some, growing the file.
+     */
+    private void map(long required) throws IOException {
+        long capacity = Math.min(Integer.MAX_VALUE, Math.max(required, size + Math.max(MIN_GROWTH, size / 4)));
+        mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        mappings++;
+    }
+
+    // a record header of zeros is the start of the zero-filled tail, as no record has an empty key
+    private static boolean isUnwritten(ByteBuffer buffer, long position) {
+        int start = (int) position;
+        for (int i = start; i < Math.min(buffer.limit(), start + 8); i++) {
+            if (buffer.get(i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Apply the record at the position to the index.
+     *
+     * @return position of the next record, or -1 when the record is incomplete or corrupt
+     */
+    private long replay(ByteBuffer buffer, long position) {
+        int start = (int) position;
+        if (buffer.limit() - start < RECORD_OVERHEAD) {
+            return -1;
+        }
+        int keyLength = buffer.getInt(start);
+        int valueLength = buffer.getInt(start + 4);
+        if (keyLength < 0 || valueLength < TOMBSTONE
+                || (long) buffer.limit() - start < (long) RECORD_OVERHEAD + keyLength + Math.max(0, valueLength)) {
+            return -1;
+        }
+        int keyOffset = start + 8;
+        int valueOffset = keyOffset + keyLength;
+        int crcOffset = valueOffset + Math.max(0, valueLength);
+        CRC32 crc = new CRC32();
+        ByteBuffer checked = buffer.duplicate();
+        checked.position(start);
+        checked.limit(crcOffset);
+        crc.update(checked);
+        if ((int) crc.getValue() != buffer.getInt(crcOffset)) {
+            return -1;
+        }
+        byte[] keyBytes = new byte[keyLength];
+        ByteBuffer keyBuffer = buffer.duplicate();
+        keyBuffer.position(keyOffset);
+        keyBuffer.get(keyBytes);
+        apply(new String(keyBytes, StandardCharsets.UTF_8), valueLength == TOMBSTONE ? null
+                : new Location(buffer, valueOffset, valueLength), crcOffset + 4 - start);
+        return crcOffset + 4;
+    }
+
+    private void append(String key, byte[] value) throws IOException {
+        ByteBuffer record = record(key, value);
+        int keyLength = record.getInt(0);
+        long end = size + record.capacity();
+        checkSize(end);
+        if (end > mapping.capacity()) {
+            map(end);
+        }
+        ByteBuffer target = mapping.duplicate();
+        target.position((int) size);
+        target.put(record);
+        mapping.force();
+        long recordStart = size;
+        size = end;
+        apply(key, value == null ? null : new Location(mapping, recordStart + 8 + keyLength, value.length), record.capacity());
+    }
+
+    private void apply(String key, Location location, int recordSize) {
+        Location previous = location == null ? index.remove(key) : index.put(key, location);
+        if (previous != null) {
+            garbage += RECORD_OVERHEAD + key.getBytes(StandardCharsets.UTF_8).length + previous.length;
+        }
+        if (location == null) {
+            // the tombstone itself is garbage once applied
+            garbage += recordSize;
+        }
+    }
+
+    private void compactIfNeeded() throws IOException {
+        if (garbage > MIN_COMPACTION_GARBAGE && garbage * 2 > size) {
+            compact();
+        }
+    }
+
+    private static ByteBuffer header() {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        return header;
+    }
+
+    private static ByteBuffer record(String key, byte[] value) {
+        if (key.isEmpty()) {
+            throw new IllegalArgumentException("Empty key");
+        }
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int valueLength = value == null ? 0 : value.length;
+        ByteBuffer record = ByteBuffer.allocate(RECORD_OVERHEAD + keyBytes.length + valueLength);
+        record.putInt(keyBytes.length).putInt(value == null ? TOMBSTONE : value.length).put(keyBytes);
+        if (value != null) {
+            record.put(value);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, record.position());
+        record.putInt((int) crc.getValue());
+        record.flip();
+        return record;
+    }
+
+    private void checkSize(long newSize) throws IOException {
+        // a single mapping addresses at most 2 GB
+        if (newSize > Integer.MAX_VALUE) {
+            throw new IOException("Key-value store full: " + file);
+        }
+    }
+
+    // a location keeps the mapping it was found in, so a reader never pairs it with the file of a later compaction
+    private static class Location {
+        private final ByteBuffer mapping;
+        private final long offset;
+        private final int length;
+
+        private Location(ByteBuffer mapping, long offset, int length) {
+            this.mapping = mapping;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
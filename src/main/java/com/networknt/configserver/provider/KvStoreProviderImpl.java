@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.provider;
+
+import com.networknt.config.Config;
+import com.networknt.configserver.constants.ConfigServerConstants;
+import com.networknt.configserver.model.ConfigChangeEvent;
+import com.networknt.configserver.model.FileContent;
+import com.networknt.configserver.model.LayeredConfigMap;
+import com.networknt.configserver.model.Service;
+import com.networknt.configserver.model.ServiceConfigs;
+import com.networknt.exception.ApiException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Config Server Provider implementation for an embedded {@link KvStore}.
+ *
+ * Every file is a key "{configType}/{projectName}/{serviceName}/{serviceVersion}/{environment}/{fileName}", the
+ * layout of {@link FileSystemProviderImpl} with globals stored as the "globals" service at the project version.
+ * Requests are answered from the memory-mapped store: a cert or file is a view of the mapping and a values.yml is
+ * parsed once per content. searchServices is a range scan of the keys of a project.
+ *
+ * The store is loaded from kvStoreImportDir, a folder with the File System provider structure, at startup and every
+ * kvStoreImportInterval seconds. An import writes only the keys whose content changed, deletes the keys of removed
+ * files and reports the changes to the listeners.
+ */
+public class KvStoreProviderImpl implements IProvider {
+    private static final String KV_STORE_FILE = "kvStoreFile";
+    private static final String KV_STORE_IMPORT_DIR = "kvStoreImportDir";
+    private static final String KV_STORE_IMPORT_INTERVAL = "kvStoreImportInterval";
+    private static final String[] CONFIG_TYPES = {ConfigServerConstants.CONFIGS, ConfigServerConstants.CERTS, ConfigServerConstants.FILES};
+
+    private final List<ConfigChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile KvStore store;
+
+    public KvStoreProviderImpl() {
+    }
+
+    KvStoreProviderImpl(KvStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public String login(String authorization) throws ApiException {
+        return null;
+    }
+
+    @Override
+    public ServiceConfigs getServiceConfigs(String authToken, Service service) throws ApiException {
+        ServiceConfigs serviceConfigs = new ServiceConfigs();
+        serviceConfigs.setService(service);
+        Map<String, Object> globalsMap = getConfigs(buildKey(service, ConfigServerConstants.CONFIGS, ConfigServerConstants.GLOBALS, service.getProjectVersion()));
+        Map<String, Object> configsMap = getConfigs(buildKey(service, ConfigServerConstants.CONFIGS, service.getServiceName(), service.getServiceVersion()));
+        serviceConfigs.setConfigProperties(LayeredConfigMap.merge(globalsMap, configsMap));
+        return serviceConfigs;
+    }
+
+    @Override
+    public ServiceConfigs getServiceCertificates(String authToken, Service service) throws ApiException {
+        return getMergedFiles(service, ConfigServerConstants.CERTS);
+    }
+
+    @Override
+    public ServiceConfigs getServiceFiles(String authToken, Service service) throws ApiException {
+        return getMergedFiles(service, ConfigServerConstants.FILES);
+    }
+
+    @Override
+    public ServiceConfigs getServiceCertificate(String authToken, Service service, String fileName) throws ApiException {
+        return getFile(service, ConfigServerConstants.CERTS, fileName);
+    }
+
+    @Override
+    public ServiceConfigs getServiceFile(String authToken, Service service, String fileName) throws ApiException {
+        return getFile(service, ConfigServerConstants.FILES, fileName);
+    }
+
+    @Override
+    public Map<String, Map<String, Object>> getServiceFileLayers(String authToken, Service service, String configType) throws ApiException {
+        Map<String, Map<String, Object>> layers = new LinkedHashMap<>();
+        layers.put(ConfigServerConstants.GLOBALS, getFiles(buildKey(service, configType, ConfigServerConstants.GLOBALS, service.getProjectVersion())));
+        layers.put(ConfigServerConstants.SERVICE, getFiles(buildKey(service, configType, service.getServiceName(), service.getServiceVersion())));
+        return layers;
+    }
+
+    /**
+     * Get the services that have configs, certs or files in the store, with a range scan per config type.
+     *
+     * @param authToken   can be ignored for the key-value store provider
+     * @param projectName projectName to get the services for; all projects if null
+     * @return services sorted by project, name, version and environment
+     */
+    @Override
+    public List<Service> searchServices(String authToken, String projectName) throws ApiException {
+        Set<Service> services = new LinkedHashSet<>();
+        for (String configType : CONFIG_TYPES) {
+            String prefix = configType + ConfigServerConstants.SLASH + (projectName == null ? "" : projectName + ConfigServerConstants.SLASH);
+            for (String key : getStore().keys(prefix)) {
+                // {configType}/{projectName}/{serviceName}/{serviceVersion}/{environment}/{fileName}
+                String[] parts = key.split(ConfigServerConstants.SLASH);
+                if (parts.length != 6 || ConfigServerConstants.GLOBALS.equals(parts[2])) {
+                    continue;
+                }
+                Service service = new Service();
+                service.setProjectName(parts[1]);
+                service.setServiceName(parts[2]);
+                service.setServiceVersion(parts[3]);
+                service.setEnvironment(parts[4]);
+                services.add(service);
+            }
+        }
+        List<Service> sorted = new ArrayList<>(services);
+        sorted.sort(Comparator.comparing(Service::getProjectName).thenComparing(Service::getServiceName)
+                .thenComparing(Service::getServiceVersion).thenComparing(Service::getEnvironment));
+        return sorted;
+    }
+
+    @Override
+    public void addChangeListener(ConfigChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Make the store hold exactly the files of a folder with the File System provider structure.
+     *
+     * @param root folder to import
+     * @return number of keys written or deleted
+     */
+    int importDirectory(Path root) throws IOException {
+        KvStore kvStore = getStore();
+        Path base = root.toAbsolutePath().normalize();
+        Set<String> stale = new HashSet<>();
+        for (String configType : CONFIG_TYPES) {
+            stale.addAll(kvStore.keys(configType + ConfigServerConstants.SLASH));
+        }
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(base)) {
+            files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        int count = 0;
+        for (Path file : files) {
+            String key = base.relativize(file).toString().replace(file.getFileSystem().getSeparator(), ConfigServerConstants.SLASH);
+            String[] parts = key.split(ConfigServerConstants.SLASH);
+            if (parts.length != 6 || !Arrays.asList(CONFIG_TYPES).contains(parts[0])) {
+                continue;
+            }
+            stale.remove(key);
+            byte[] content = Files.readAllBytes(file);
+            ByteBuffer current = kvStore.get(key);
+            if (current == null || !current.equals(ByteBuffer.wrap(content))) {
+                kvStore.put(key, content);
+                fire(parts);
+                count++;
+            }
+        }
+        for (String key : stale) {
+            if (kvStore.delete(key)) {
+                fire(key.split(ConfigServerConstants.SLASH));
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void fire(String[] parts) {
+        ConfigChangeEvent event = new ConfigChangeEvent(parts[0], parts[1], parts[2], parts[3], parts[4], parts[5]);
+        for (ConfigChangeListener listener : listeners) {
+            try {
+                listener.onChange(event);
+            } catch (RuntimeException e) {
+                // the key is already written, the other listeners and the rest of the import still run
+                logger.error("Config change listener failed for " + event, e);
+            }
+        }
+    }
+
+    private KvStore getStore() {
+        if (store == null) {
+            synchronized (this) {
+                if (store == null) {
+                    Map<String, Object> config = Config.getInstance().getJsonMapConfig(ConfigServerConstants.CONFIG_NAME);
+                    try {
+                        store = new KvStore(Paths.get((String) config.get(KV_STORE_FILE)));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    logger.info("Opened {} keys from {}", store.count(), config.get(KV_STORE_FILE));
+                    Object importDir = config.get(KV_STORE_IMPORT_DIR);
+                    if (importDir != null && !importDir.toString().isEmpty()) {
+                        scheduleImport(Paths.get(importDir.toString()), config.get(KV_STORE_IMPORT_INTERVAL));
+                    }
+                }
+            }
+        }
+        return store;
+    }
+
+    private void scheduleImport(Path importDir, Object interval) {
+        Runnable importTask = () -> {
+            try {
+                int count = importDirectory(importDir);
+                if (count > 0) {
+                    logger.info("Imported {} changed keys from {}", count, importDir);
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.error("Could not import " + importDir, e);
+            }
+        };
+        // the first import runs before any request is served
+        importTask.run();
+        long period = interval == null ? 0 : Long.parseLong(interval.toString());
+        if (period > 0) {
+            ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "kv-store-import");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleWithFixedDelay(importTask, period, period, TimeUnit.SECONDS);
+        }
+    }
+
+    private String buildKey(Service service, String configType, String name, String version) {
+        return configType + ConfigServerConstants.SLASH + service.getProjectName()
+                + ConfigServerConstants.SLASH + name
+                + ConfigServerConstants.SLASH + version
+                + ConfigServerConstants.SLASH + service.getEnvironment();
+    }
+
+    private Map<String, Object> getConfigs(String directory) throws ApiException {
+        for (String extension : FileSystemConfigIndex.configExtensionsOrdered) {
+            ByteBuffer content = getStore().get(directory + ConfigServerConstants.SLASH + FileSystemConfigIndex.CONFIGS_FILE_NAME + extension);
+            if (content != null) {
+                byte[] bytes = new byte[content.remaining()];
+                content.get(bytes);
+                return ".json".equals(extension) ? ConfigParser.parseJson(bytes) : ConfigParser.parseYaml(bytes);
+            }
+        }
+        return null;
+    }
+
+    private Map<String, Object> getFiles(String directory) {
+        String prefix = directory + ConfigServerConstants.SLASH;
+        Map<String, Object> files = new HashMap<>();
+        for (String key : getStore().keys(prefix)) {
+            ByteBuffer content = getStore().get(key);
+            if (content != null) {
+                files.put(key.substring(prefix.length()), new FileContent(content));
+            }
+        }
+        return files;
+    }
+
+    private ServiceConfigs getMergedFiles(Service service, String configType) {
+        ServiceConfigs serviceConfigs = new ServiceConfigs();
+        serviceConfigs.setService(service);
+        Map<String, Object> globalsMap = getFiles(buildKey(service, configType, ConfigServerConstants.GLOBALS, service.getProjectVersion()));
+        Map<String, Object> filesMap = getFiles(buildKey(service, configType, service.getServiceName(), service.getServiceVersion()));
+        serviceConfigs.setConfigProperties(LayeredConfigMap.merge(globalsMap, filesMap));
+        return serviceConfigs;
+    }
+
+    private ServiceConfigs getFile(Service service, String configType, String fileName) {
+        ServiceConfigs serviceConfigs = new ServiceConfigs();
+        serviceConfigs.setService(service);
+        Map<String, Object> configsMap = new HashMap<>();
+        serviceConfigs.setConfigProperties(configsMap);
+        ByteBuffer content = getStore().get(buildKey(service, configType, service.getServiceName(), service.getServiceVersion())
+                + ConfigServerConstants.SLASH + fileName);
+        if (content == null) {
+            content = getStore().get(buildKey(service, configType, ConfigServerConstants.GLOBALS, service.getProjectVersion())
+                    + ConfigServerConstants.SLASH + fileName);
+        }
+        if (content != null) {
+            configsMap.put(fileName, new FileContent(content));
+        }
+        return serviceConfigs;
+    }
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.provider;
+
+import com.networknt.config.Config;
+import com.networknt.configserver.constants.ConfigServerConstants;
+import com.networknt.configserver.model.FileContent;
+import com.networknt.configserver.model.Service;
+import com.networknt.configserver.model.ServiceConfigs;
+import com.networknt.exception.ApiException;
+import com.networknt.status.Status;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Read-only Config Server Provider serving from a local {@link MirrorStore} that {@link MirrorSync} keeps in sync
+ * with another provider, the source of truth.
+ *
+ * Configs, certs and files of mirrored services are read from the local store, so the backend is only called when
+ * something changes. Login is still done by the source provider, and so is authorization: the store is shared by all
+ * tokens, so before a token is served a mirrored service it must read the same service from the source once, which is
+ * remembered for mirrorAccessTtl seconds per credentials, config type and service. Grants are keyed by a digest of
+ * the Authorization header the token was logged in with, so they still hit when the source issues a new token on every
+ * login. A service that is not mirrored yet, or a
+ * request at a ref, is read from the source; the service is mirrored from then on.
+ *
+ * To use this provider, set mirrorSourceProvider to the class of the source provider and mirrorDir to the directory
+ * of the local store, or mirrorStoreFile to the file of a {@link KvStore} instead. mirrorServices lists the services to mirror from startup, as
+ * "{projectName}/{projectVersion}/{serviceName}/{serviceVersion}/{environment}", or "{projectName}/{projectVersion}"
+ * for all the services the source lists for a project.
+ */
+public class MirrorProviderImpl implements IProvider {
+    private static final String MIRROR_SOURCE_PROVIDER = "mirrorSourceProvider";
+    private static final String MIRROR_DIR = "mirrorDir";
+    private static final String MIRROR_STORE_FILE = "mirrorStoreFile";
+    private static final String MIRROR_AUTHORIZATION = "mirrorAuthorization";
+    private static final String MIRROR_SERVICES = "mirrorServices";
+    private static final String MIRROR_SYNC_INTERVAL = "mirrorSyncInterval";
+    private static final String MIRROR_FULL_SYNC_INTERVAL = "mirrorFullSyncInterval";
+    private static final String MIRROR_ACCESS_TTL = "mirrorAccessTtl";
+    private static final long DEFAULT_ACCESS_TTL = 60;
+    private static final int ACCESS_MAX_SIZE = 10000;
+
+    private volatile MirrorSync sync;
+    private volatile long accessTtl = DEFAULT_ACCESS_TTL;
+    // "{configType} {principal} {serviceKey}" to the epoch millis the source last granted it until
+    private final Map<String, Long> access = Collections.synchronizedMap(new LinkedHashMap<String, Long>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > ACCESS_MAX_SIZE;
+        }
+    });
+    // token returned by the source login to the digest of the Authorization header it was logged in with
+    private final Map<String, String> principals = Collections.synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > ACCESS_MAX_SIZE;
+        }
+    });
+
+    public MirrorProviderImpl() {
+    }
+
+    MirrorProviderImpl(MirrorSync sync) {
+        this.sync = sync;
+    }
+
+    @Override
+    public String login(String authorization) throws ApiException {
+        String authToken = getSync().getSource().login(authorization);
+        if (authToken != null && authorization != null) {
+            principals.put(authToken, digest(authorization));
+        }
+        return authToken;
+    }
+
+    @Override
+    public ServiceConfigs getServiceConfigs(String authToken, Service service) throws ApiException {
+        MirrorSync mirror = getSync();
+        if (!mirror.isMirrored(service)) {
+            return readThrough(mirror, authToken, service, ConfigServerConstants.CONFIGS, mirror.getSource().getServiceConfigs(authToken, service));
+        }
+        checkAccess(mirror, authToken, service, ConfigServerConstants.CONFIGS);
+        ServiceConfigs serviceConfigs = new ServiceConfigs();
+        serviceConfigs.setService(service);
+        ByteBuffer content = read(ConfigServerConstants.CONFIGS + ConfigServerConstants.SLASH + MirrorSync.serviceKey(service));
+        byte[] bytes = new byte[content == null ? 0 : content.remaining()];
+        if (content != null) {
+            content.get(bytes);
+        }
+        serviceConfigs.setConfigProperties(ConfigParser.parseJson(bytes));
+        return serviceConfigs;
+    }
+
+    @Override
+    public ServiceConfigs getServiceCertificates(String authToken, Service service) throws ApiException {
+        MirrorSync mirror = getSync();
+        if (!mirror.isMirrored(service)) {
+            return readThrough(mirror, authToken, service, ConfigServerConstants.CERTS, mirror.getSource().getServiceCertificates(authToken, service));
+        }
+        checkAccess(mirror, authToken, service, ConfigServerConstants.CERTS);
+        return getFiles(service, ConfigServerConstants.CERTS);
+    }
+
+    @Override
+    public ServiceConfigs getServiceFiles(String authToken, Service service) throws ApiException {
+        MirrorSync mirror = getSync();
+        if (!mirror.isMirrored(service)) {
+            return readThrough(mirror, authToken, service, ConfigServerConstants.FILES, mirror.getSource().getServiceFiles(authToken, service));
+        }
+        checkAccess(mirror, authToken, service, ConfigServerConstants.FILES);
+        return getFiles(service, ConfigServerConstants.FILES);
+    }
+
+    /**
+     * Get the mirrored services of a project.
+     *
+     * @param authToken   token returned by the source login
+     * @param projectName projectName to get the services for; all projects if null
+     * @return services sorted by their store key
+     */
+    @Override
+    public List<Service> searchServices(String authToken, String projectName) throws ApiException {
+        List<Service> services = new ArrayList<>();
+        for (Service service : getSync().getServices()) {
+            if (projectName == null || projectName.equals(service.getProjectName())) {
+                services.add(service);
+            }
+        }
+        services.sort(Comparator.comparing(MirrorSync::serviceKey));
+        return services;
+    }
+
+    @Override
+    public void addChangeListener(ConfigChangeListener listener) {
+        getSync().addListener(listener);
+    }
+
+    private ServiceConfigs readThrough(MirrorSync mirror, String authToken, Service service, String configType, ServiceConfigs serviceConfigs) {
+        // mirrored from now on, once the source accepted the token for it
+        if (service.getRef() == null) {
+            mirror.addService(service);
+            granted(authToken, service, configType);
+        }
+        return serviceConfigs;
+    }
+
+    /**
+     * Check that the source lets the token read a mirrored service, by reading it from the source unless the source
+     * granted it less than mirrorAccessTtl seconds ago.
+     *
+     * @throws ApiException as thrown by the source when it denies the token
+     */
+    private void checkAccess(MirrorSync mirror, String authToken, Service service, String configType) throws ApiException {
+        Long grantedUntil = access.get(accessKey(authToken, service, configType));
+        if (grantedUntil != null && System.currentTimeMillis() < grantedUntil) {
+            return;
+        }
+        mirror.getSource().getServiceConfigs(authToken, service, configType);
+        granted(authToken, service, configType);
+    }
+
+    private void granted(String authToken, Service service, String configType) {
+        if (accessTtl > 0) {
+            access.put(accessKey(authToken, service, configType), System.currentTimeMillis() + accessTtl * 1000);
+        }
+    }
+
+    private String accessKey(String authToken, Service service, String configType) {
+        String principal = principals.get(authToken);
+        return configType + ' ' + (principal == null ? "token " + authToken : "authorization " + principal)
+                + ' ' + MirrorSync.serviceKey(service);
+    }
+
+    private static String digest(String authorization) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(messageDigest.digest(authorization.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private ServiceConfigs getFiles(Service service, String configType) throws ApiException {
+        ServiceConfigs serviceConfigs = new ServiceConfigs();
+        serviceConfigs.setService(service);
+        String prefix = configType + ConfigServerConstants.SLASH + MirrorSync.serviceKey(service) + ConfigServerConstants.SLASH;
+        Map<String, Object> files = new HashMap<>();
+        try {
+            for (String key : getSync().getStore().keys(prefix)) {
+                ByteBuffer content = getSync().getStore().get(key);
+                if (content != null) {
+                    files.put(key.substring(prefix.length()), new FileContent(content));
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Could not read the mirror of " + prefix, e);
+            throw new ApiException(new Status("ACS00001", "mirror", e.getMessage()));
+        }
+        serviceConfigs.setConfigProperties(files);
+        return serviceConfigs;
+    }
+
+    private ByteBuffer read(String key) throws ApiException {
+        try {
+            return getSync().getStore().get(key);
+        } catch (IOException e) {
+            logger.error("Could not read the mirror of " + key, e);
+            throw new ApiException(new Status("ACS00001", "mirror", e.getMessage()));
+        }
+    }
+
+    private MirrorSync getSync() {
+        if (sync == null) {
+            synchronized (this) {
+                if (sync == null) {
+                    Map<String, Object> config = Config.getInstance().getJsonMapConfig(ConfigServerConstants.CONFIG_NAME);
+                    accessTtl = getLong(config, MIRROR_ACCESS_TTL, DEFAULT_ACCESS_TTL);
+                    sync = createSync(config);
+                }
+            }
+        }
+        return sync;
+    }
+
+    private static MirrorSync createSync(Map<String, Object> config) {
+        IProvider source;
+        try {
+            source = (IProvider) Class.forName((String) config.get(MIRROR_SOURCE_PROVIDER)).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException | NullPointerException e) {
+            throw new IllegalStateException("Invalid " + MIRROR_SOURCE_PROVIDER + ": " + config.get(MIRROR_SOURCE_PROVIDER), e);
+        }
+        Object authorization = config.get(MIRROR_AUTHORIZATION);
+        Object storeFile = config.get(MIRROR_STORE_FILE);
+        MirrorStore store;
+        if (storeFile != null && !storeFile.toString().isEmpty()) {
+            try {
+                store = new KvStore(Paths.get(storeFile.toString()));
+            } catch (IOException e) {
+                throw new IllegalStateException("Invalid " + MIRROR_STORE_FILE + ": " + storeFile, e);
+            }
+        } else {
+            store = new DirectoryMirrorStore(Paths.get((String) config.get(MIRROR_DIR)));
+        }
+        MirrorSync mirror = new MirrorSync(source, store,
+                authorization == null || authorization.toString().isEmpty() ? null : authorization.toString());
+        try {
+            mirror.loadServices();
+        } catch (IOException e) {
+            logger.warn("Could not load the mirrored services", e);
+        }
+        for (String entry : getList(config.get(MIRROR_SERVICES))) {
+            String[] parts = entry.split(ConfigServerConstants.SLASH);
+            if (parts.length == 2) {
+                mirror.addProject(parts[0], parts[1]);
+            } else if (parts.length == 5) {
+                Service service = new Service();
+                service.setProjectName(parts[0]);
+                service.setProjectVersion(parts[1]);
+                service.setServiceName(parts[2]);
+                service.setServiceVersion(parts[3]);
+                service.setEnvironment(parts[4]);
+                mirror.addService(service);
+            } else {
+                logger.warn("Ignoring invalid {} entry: {}", MIRROR_SERVICES, entry);
+            }
+        }
+        mirror.start(getLong(config, MIRROR_SYNC_INTERVAL, 10), getLong(config, MIRROR_FULL_SYNC_INTERVAL, 300));
+        return mirror;
+    }
+
+    private static List<String> getList(Object value) {
+        List<String> list = new ArrayList<>();
+        if (value instanceof Collection) {
+            for (Object item : (Collection<?>) value) {
+                list.add(String.valueOf(item).trim());
+            }
+        } else if (value != null) {
+            for (String item : value.toString().split(",")) {
+                if (!item.trim().isEmpty()) {
+                    list.add(item.trim());
+                }
+            }
+        }
+        return list;
+    }
+
+    private static long getLong(Map<String, Object> config, String key, long defaultValue) {
+        Object value = config.get(key);
+        return value == null ? defaultValue : Long.parseLong(value.toString());
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.provider;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Local key-value store that {@link MirrorSync} replicates a provider into and {@link MirrorProviderImpl} reads from.
+ *
+ * Keys are '/' separated paths, e.g. "configs/retail/v1/api-customers/v1/dev"; every segment is a valid file name.
+ */
+public interface MirrorStore {
+
+    /**
+     * @return read-only value of the key, or null when the key does not exist
+     */
+    ByteBuffer get(String key) throws IOException;
+
+    /**
+     * Store a value, replacing the previous one atomically.
+     */
+    void put(String key, byte[] value) throws IOException;
+
+    /**
+     * @return true when the key existed
+     */
+    boolean delete(String key) throws IOException;
+
+    /**
+     * @param prefix key prefix, usually ending with '/'
+     * @return sorted keys starting with the prefix
+     */
+    List<String> keys(String prefix) throws IOException;
+}
@@ -0,0 +1,367 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.provider;
+
+import com.networknt.config.Config;
+import com.networknt.configserver.constants.ConfigServerConstants;
+import com.networknt.configserver.model.ConfigChangeEvent;
+import com.networknt.configserver.model.FileContent;
+import com.networknt.configserver.model.Service;
+import com.networknt.configserver.model.ServiceConfigs;
+import com.networknt.exception.ApiException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replicates the configs, certs and files of the services of a source provider into a {@link MirrorStore}.
+ *
+ * Each service is stored merged, under "{configType}/{projectName}/{projectVersion}/{serviceName}/{serviceVersion}/{environment}":
+ * the configs as one JSON document and the certs and files as one key per file. A sync reads a service from the
+ * source and writes only the keys whose content changed, deleting the files that are gone, and reports every change to
+ * its listeners. Services are re-read when the source reports a change, and on a slower full sync for sources that
+ * can not report changes. A full sync skips the services whose source revision, see {@link IProvider#getRevision},
+ * is the one they were last read at, e.g. while the head commit of their Git repository stays the same. Sources
+ * without a revision (the Vault and Url providers) are read in full every time; for the Url provider those are the
+ * requests it revalidates with ETags, the Vault provider has no cheaper check.
+ */
+public class MirrorSync implements ConfigChangeListener {
+    private static final Logger logger = LoggerFactory.getLogger(MirrorSync.class);
+
+    static final String SERVICES = "services";
+
+    private final IProvider source;
+    private final MirrorStore store;
+    private final String authorization;
+    // project name to project version, whose services are discovered with searchServices
+    private final Map<String, String> projects = new ConcurrentHashMap<>();
+    private final Set<Service> services = ConcurrentHashMap.newKeySet();
+    // services written to the store at least once
+    private final Set<Service> synced = ConcurrentHashMap.newKeySet();
+    private final Set<Service> changed = ConcurrentHashMap.newKeySet();
+    // source revision each service was last read at by a full sync
+    private final Map<Service, String> revisions = new ConcurrentHashMap<>();
+    private final List<ConfigChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param source        provider to replicate
+     * @param store         store to replicate into
+     * @param authorization Authorization header to login to the source with
+     */
+    public MirrorSync(IProvider source, MirrorStore store, String authorization) {
+        this.source = source;
+        this.store = store;
+        this.authorization = authorization;
+        source.addChangeListener(this);
+    }
+
+    public IProvider getSource() {
+        return source;
+    }
+
+    public MirrorStore getStore() {
+        return store;
+    }
+
+    public void addListener(ConfigChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Load the services mirrored before, so that they are served from the store right away.
+     */
+    public void loadServices() throws IOException {
+        for (String key : store.keys(SERVICES + ConfigServerConstants.SLASH)) {
+            String[] parts = key.split(ConfigServerConstants.SLASH);
+            if (parts.length == 6) {
+                Service service = toService(parts[1], parts[2], parts[3], parts[4], parts[5]);
+                services.add(service);
+                synced.add(service);
+            }
+        }
+    }
+
+    /**
+     * Mirror the services the source lists for a project, on every full sync.
+     */
+    public void addProject(String projectName, String projectVersion) {
+        projects.put(projectName, projectVersion);
+    }
+
+    /**
+     * Mirror a service; it is read from the source on the next sync.
+     *
+     * @return false when the service was already mirrored or can not be stored
+     */
+    public boolean addService(Service service) {
+        if (serviceKey(service) == null) {
+            return false;
+        }
+        Service mirrored = toService(service.getProjectName(), service.getProjectVersion(), service.getServiceName(),
+                service.getServiceVersion(), service.getEnvironment());
+        if (!services.add(mirrored)) {
+            return false;
+        }
+        changed.add(mirrored);
+        return true;
+    }
+
+    /**
+     * @return true when the service is kept in the store; services read at a ref are never mirrored
+     */
+    public boolean isMirrored(Service service) {
+        return service.getRef() == null && synced.contains(toService(service.getProjectName(), service.getProjectVersion(),
+                service.getServiceName(), service.getServiceVersion(), service.getEnvironment()));
+    }
+
+    /**
+     * @return services kept in the store
+     */
+    public List<Service> getServices() {
+        return new ArrayList<>(synced);
+    }
+
+    /**
+     * Discover the services of the projects and read every service from the source whose revision changed.
+     *
+     * @return number of keys changed in the store
+     */
+    public int syncAll() throws ApiException {
+        String token = source.login(authorization);
+        for (Map.Entry<String, String> project : projects.entrySet()) {
+            try {
+                // listing the services is a catalog scan for the Git rate limit
+                List<Service> found = GitRateLimitScheduler.withPriority(GitRateLimitScheduler.Priority.CATALOG,
+                        () -> source.searchServices(token, project.getKey()));
+                if (found != null) {
+                    for (Service service : found) {
+                        service.setProjectVersion(project.getValue());
+                        addService(service);
+                    }
+                }
+            } catch (Exception e) {
+                logger.warn("Could not list the services of project {} to mirror", project.getKey(), e);
+            }
+        }
+        List<Service> batch = new ArrayList<>(services);
+        changed.removeAll(batch);
+        // one revision per repository, i.e. per project and environment
+        Map<String, String> current = new HashMap<>();
+        int count = 0;
+        for (Service service : batch) {
+            String repository = service.getProjectName() + ConfigServerConstants.SLASH + service.getEnvironment();
+            if (!current.containsKey(repository)) {
+                current.put(repository, getRevision(token, service));
+            }
+            String revision = current.get(repository);
+            if (revision != null && synced.contains(service) && revision.equals(revisions.get(service))) {
+                continue;
+            }
+            revisions.remove(service);
+            try {
+                count += sync(token, service);
+                if (revision != null) {
+                    revisions.put(service, revision);
+                }
+            } catch (ApiException | IOException | RuntimeException e) {
+                logger.warn("Could not mirror {}; retrying on the next full sync", serviceKey(service), e);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Read the services the source reported a change for, or that were added since the last sync.
+     *
+     * @return number of keys changed in the store
+     */
+    public int syncChanged() throws ApiException {
+        if (changed.isEmpty()) {
+            return 0;
+        }
+        List<Service> batch = new ArrayList<>(changed);
+        changed.removeAll(batch);
+        // read at an unknown revision, so the next full sync reads them again
+        batch.forEach(revisions::remove);
+        return sync(source.login(authorization), batch);
+    }
+
+    /**
+     * Run an initial full sync, then sync the changed services every syncInterval seconds and all of them every
+     * fullSyncInterval seconds, on a daemon thread.
+     */
+    public void start(long syncInterval, long fullSyncInterval) {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mirror-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(() -> run(true), 0, Math.max(1, fullSyncInterval), TimeUnit.SECONDS);
+        executor.scheduleWithFixedDelay(() -> run(false), syncInterval, Math.max(1, syncInterval), TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void onChange(ConfigChangeEvent event) {
+        for (Service service : services) {
+            if (!Objects.equals(service.getProjectName(), event.getProjectName())
+                    || !Objects.equals(service.getEnvironment(), event.getEnvironment())) {
+                continue;
+            }
+            if (ConfigServerConstants.GLOBALS.equals(event.getName()) ? Objects.equals(service.getProjectVersion(), event.getVersion())
+                    : Objects.equals(service.getServiceName(), event.getName())
+                    && Objects.equals(service.getServiceVersion(), event.getVersion())) {
+                changed.add(service);
+            }
+        }
+    }
+
+    /**
+     * @return "{projectName}/{projectVersion}/{serviceName}/{serviceVersion}/{environment}", or null when a part of
+     * the service can not be a key segment
+     */
+    static String serviceKey(Service service) {
+        String[] parts = {service.getProjectName(), service.getProjectVersion(), service.getServiceName(),
+                service.getServiceVersion(), service.getEnvironment()};
+        for (String part : parts) {
+            if (!IProvider.isValidFileName(part)) {
+                return null;
+            }
+        }
+        return String.join(ConfigServerConstants.SLASH, parts);
+    }
+
+    private void run(boolean full) {
+        try {
+            // syncs are background work for the Git rate limit
+            int count = GitRateLimitScheduler.withPriority(GitRateLimitScheduler.Priority.BACKGROUND, () -> full ? syncAll() : syncChanged());
+            if (count > 0) {
+                logger.info("Mirrored {} changed keys from {}", count, source.getClass().getSimpleName());
+            }
+        } catch (Exception e) {
+            logger.warn("Could not sync the mirror of {}", source.getClass().getSimpleName(), e);
+        }
+    }
+
+    private String getRevision(String token, Service service) {
+        try {
+            // a change check is a catalog scan for the Git rate limit
+            return GitRateLimitScheduler.withPriority(GitRateLimitScheduler.Priority.CATALOG, () -> source.getRevision(token, service));
+        } catch (Exception e) {
+            logger.warn("Could not get the revision of {}; reading it in full", serviceKey(service), e);
+            return null;
+        }
+    }
+
+    private int sync(String token, List<Service> batch) {
+        int count = 0;
+        for (Service service : batch) {
+            try {
+                count += sync(token, service);
+            } catch (ApiException | IOException | RuntimeException e) {
+                logger.warn("Could not mirror {}; retrying on the next full sync", serviceKey(service), e);
+            }
+        }
+        return count;
+    }
+
+    int sync(String token, Service service) throws ApiException, IOException {
+        String key = serviceKey(service);
+        int count = 0;
+        ServiceConfigs configs = source.getServiceConfigs(token, service);
+        if (configs.getConfigProperties() != null
+                && putIfChanged(ConfigServerConstants.CONFIGS + ConfigServerConstants.SLASH + key,
+                Config.getInstance().getMapper().writeValueAsBytes(configs.getConfigProperties()))) {
+            fire(ConfigServerConstants.CONFIGS, service, null);
+            count++;
+        }
+        count += syncFiles(ConfigServerConstants.CERTS, service, key, source.getServiceCertificates(token, service));
+        count += syncFiles(ConfigServerConstants.FILES, service, key, source.getServiceFiles(token, service));
+        putIfChanged(SERVICES + ConfigServerConstants.SLASH + key, new byte[0]);
+        synced.add(service);
+        return count;
+    }
+
+    private int syncFiles(String configType, Service service, String key, ServiceConfigs serviceConfigs) throws IOException {
+        if (!(serviceConfigs.getConfigProperties() instanceof Map)) {
+            return 0;
+        }
+        String prefix = configType + ConfigServerConstants.SLASH + key + ConfigServerConstants.SLASH;
+        Set<String> stale = new HashSet<>(store.keys(prefix));
+        int count = 0;
+        for (Map.Entry<?, ?> file : ((Map<?, ?>) serviceConfigs.getConfigProperties()).entrySet()) {
+            String fileName = String.valueOf(file.getKey());
+            if (file.getValue() == null || !IProvider.isValidFileName(fileName)) {
+                continue;
+            }
+            ByteBuffer content = FileContent.toBuffer(file.getValue());
+            byte[] bytes = new byte[content.remaining()];
+            content.get(bytes);
+            stale.remove(prefix + fileName);
+            if (putIfChanged(prefix + fileName, bytes)) {
+                fire(configType, service, fileName);
+                count++;
+            }
+        }
+        for (String removed : stale) {
+            if (store.delete(removed)) {
+                fire(configType, service, removed.substring(prefix.length()));
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private boolean putIfChanged(String key, byte[] value) throws IOException {
+        ByteBuffer current = store.get(key);
+        if (current != null && current.equals(ByteBuffer.wrap(value))) {
+            return false;
+        }
+        store.put(key, value);
+        return true;
+    }
+
+    private void fire(String configType, Service service, String fileName) {
+        ConfigChangeEvent event = new ConfigChangeEvent(configType, service.getProjectName(), service.getServiceName(),
+                service.getServiceVersion(), service.getEnvironment(), fileName);
+        for (ConfigChangeListener listener : listeners) {
+            try {
+                listener.onChange(event);
+            } catch (RuntimeException e) {
+                // the key is already written, the other listeners and the rest of the sync still run
+                logger.error("Config change listener failed for " + event, e);
+            }
+        }
+    }
+
+    private static Service toService(String projectName, String projectVersion, String serviceName, String serviceVersion, String environment) {
+        Service service = new Service();
+        service.setProjectName(projectName);
+        service.setProjectVersion(projectVersion);
+        service.setServiceName(serviceName);
+        service.setServiceVersion(serviceVersion);
+        service.setEnvironment(environment);
+        return service;
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.provider;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Negative cache of the backend paths of a provider that returned 404, so that the globals, certs or files a service
+ * does not have cost no backend round trip on every request.
+ *
+ * A miss is kept for missingPathTtl seconds in an exact set. A Bloom filter in front of the set answers the lookups of
+ * paths that exist, the common case, without touching it. The filter can not forget a path, so it is rebuilt from the
+ * set once it holds more forgotten paths than live ones. The providers using it can not detect changes, so a path
+ * created in the backend is only seen once its miss expires, up to missingPathTtl seconds later.
+ */
+public class MissingPathCache {
+    static final String MISSING_PATH_TTL = "missingPathTtl";
+    private static final int MAX_SIZE = 10000;
+    // 16 KB, under 1% false positives when full
+    private static final int BLOOM_BITS = 1 << 17;
+    private static final int BLOOM_HASHES = 7;
+
+    private final Map<String, Long> expiries = new ConcurrentHashMap<>();
+    private volatile long[] bloom = new long[BLOOM_BITS / 64];
+    // paths removed from the set since the filter was built
+    private int removed;
+
+    /**
+     * @return missingPathTtl of the config in seconds, 30 when not set
+     */
+    static long getTtl(Map<String, Object> config) {
+        Object value = config == null ? null : config.get(MISSING_PATH_TTL);
+        return value == null ? 30 : Long.parseLong(value.toString());
+    }
+
+    /**
+     * @param key backend path, with the token when the backend answers 404 for paths the token can not read
+     * @return true when the path returned 404 less than its ttl ago
+     */
+    public boolean isMissing(String key) {
+        if (!mightContain(bloom, key)) {
+            return false;
+        }
+        Long expiresAt = expiries.get(key);
+        if (expiresAt == null) {
+            return false;
+        }
+        if (System.currentTimeMillis() < expiresAt) {
+            return true;
+        }
+        if (expiries.remove(key, expiresAt)) {
+            removed(1);
+        }
+        return false;
+    }
+
+    /**
+     * Remember that a path returned 404.
+     *
+     * @param key backend path
+     * @param ttl seconds to remember it; 0 to disable the cache
+     */
+    public void add(String key, long ttl) {
+        if (ttl <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            if (expiries.size() >= MAX_SIZE && !expiries.containsKey(key)) {
+                int size = expiries.size();
+                expiries.values().removeIf(expiresAt -> expiresAt <= now);
+                removed += size - expiries.size();
+                if (expiries.size() >= MAX_SIZE) {
+                    return;
+                }
+            }
+            expiries.put(key, now + ttl * 1000);
+            set(bloom, key);
+            rebuildIfStale();
+        }
+    }
+
+    public int size() {
+        return expiries.size();
+    }
+
+    private synchronized void removed(int count) {
+        removed += count;
+        rebuildIfStale();
+    }
+
+    private void rebuildIfStale() {
+        if (removed > Math.max(64, expiries.size())) {
+            long[] rebuilt = new long[BLOOM_BITS / 64];
+            for (String key : expiries.keySet()) {
+                set(rebuilt, key);
+            }
+            bloom = rebuilt;
+            removed = 0;
+        }
+    }
+
+    private static void set(long[] bits, String key) {
+        long hash = hash(key);
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = index(hash, i);
+            bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    private static boolean mightContain(long[] bits, String key) {
+        long hash = hash(key);
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = index(hash, i);
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // double hashing: the i-th bit is h1 + i * h2, from the two halves of one 64-bit hash
+    private static int index(long hash, int i) {
+        return ((int) hash + i * (int) (hash >>> 32)) & (BLOOM_BITS - 1);
+    }
+
+    // 64-bit FNV-1a
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
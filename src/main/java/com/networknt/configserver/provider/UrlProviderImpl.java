@@ -1,45 +1,52 @@
 package com.networknt.configserver.provider;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.net.URI;
-import java.net.URISyntaxException;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
-import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import org.jose4j.json.internal.json_simple.JSONValue;
-import org.yaml.snakeyaml.Yaml;
-
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.networknt.client.Http2Client;
 import com.networknt.client.builder.ConnectionCacheManager;
 import com.networknt.client.model.TimeoutDef;
 import com.networknt.config.Config;
 import com.networknt.configserver.constants.ConfigServerConstants;
+import com.networknt.configserver.model.LayeredConfigMap;
 import com.networknt.configserver.model.Service;
 import com.networknt.configserver.model.ServiceConfigs;
 import com.networknt.exception.ApiException;
 import com.networknt.status.Status;
 import com.networknt.utility.StringUtils;
 
+import io.undertow.client.ClientCallback;
 import io.undertow.client.ClientConnection;
+import io.undertow.client.ClientExchange;
 import io.undertow.client.ClientRequest;
 import io.undertow.client.ClientResponse;
+import io.undertow.connector.PooledByteBuffer;
+import io.undertow.util.HeaderMap;
 import io.undertow.util.Headers;
 import io.undertow.util.Methods;
+import org.xnio.ChannelListener;
+import org.xnio.IoUtils;
+import org.xnio.channels.StreamSourceChannel;
 
 /**
  * Config Server Provider with configurations structure lile {@link FileSystemProviderImpl}.
@@ -52,15 +59,20 @@ import io.undertow.util.Methods;
 public class UrlProviderImpl implements IProvider {
 	static final String SERVICE_CONFIGS_HOST = "serviceConfigsHost";
     static final String SERVICE_CONFIGS_DIR = "serviceConfigsDir";
+    static final String SERVICE_CONFIGS_MAX_CONCURRENT_FETCHES = "serviceConfigsMaxConcurrentFetches";
+    static final String SERVICE_CONFIGS_CACHE_MAX_BYTES = "serviceConfigsCacheMaxBytes";
     static final String CONFIGS_FILE_NAME = "values";
     static final String CONFIG_EXT_JSON = ".json";
     static final String CONFIG_EXT_YAML = ".yaml";
     static final String CONFIG_EXT_YML = ".yml";
     static final String[] configExtensionsOrdered = {CONFIG_EXT_YML, CONFIG_EXT_YAML, CONFIG_EXT_JSON};
     static final ConnectionCacheManager connectionCacheManager = new ConnectionCacheManager();
-    static final ExecutorService executorService = Executors.newCachedThreadPool();
-    static final Http2Client client = Http2Client.getInstance();
     static final Pattern files = Pattern.compile(">([^>/]+)</a>");
+    // config extension found for each config directory
+    final Map<String, String> configExtensions = new ConcurrentHashMap<>();
+    final UrlResponseCache responseCache = new UrlResponseCache(UrlResponseCache.MAX_SIZE, getCacheMaxBytes());
+    // endpoints that returned 404 per token, e.g. the config extensions a directory does not use
+    final MissingPathCache missingPaths = new MissingPathCache();
     private TimeoutDef connectionRequestTimeout = new TimeoutDef(5, TimeUnit.SECONDS);
     private TimeoutDef requestTimeout = new TimeoutDef(5, TimeUnit.SECONDS);
     private long connectionCacheTTLms = 10000;
@@ -72,18 +84,16 @@ public class UrlProviderImpl implements IProvider {
 
 	@Override
 	public ServiceConfigs getServiceConfigs(String authToken, Service service) throws ApiException {
-		Map<String, Object> configsMap = new HashMap<String, Object>();
         ServiceConfigs serviceConfigs = new ServiceConfigs();
-        serviceConfigs.setConfigProperties(configsMap);
         serviceConfigs.setService(service);
         String configPath = null;
 
         //Get Global configs
         configPath = buildConfigPath(service, ConfigServerConstants.CONFIGS, ConfigServerConstants.GLOBALS, service.getProjectVersion());
-        configsMap.putAll(getConfigs(authToken, configPath, CONFIGS_FILE_NAME));
+        Map<String, Object> globalsMap = getConfigs(authToken, configPath, CONFIGS_FILE_NAME);
         //Get Service configs
         configPath = buildConfigPath(service, ConfigServerConstants.CONFIGS, service.getServiceName(), service.getServiceVersion());
-        configsMap.putAll(getConfigs(authToken, configPath, CONFIGS_FILE_NAME));
+        serviceConfigs.setConfigProperties(LayeredConfigMap.merge(globalsMap, getConfigs(authToken, configPath, CONFIGS_FILE_NAME)));
         
         return serviceConfigs;
 	}
@@ -98,28 +108,68 @@ public class UrlProviderImpl implements IProvider {
 		return getFileConfigs(authToken, service, ConfigServerConstants.FILES);
 	}
 
+	@Override
+	public ServiceConfigs getServiceCertificate(String authToken, Service service, String fileName) throws ApiException {
+		return getFileConfig(authToken, service, ConfigServerConstants.CERTS, fileName);
+	}
+
+	@Override
+	public ServiceConfigs getServiceFile(String authToken, Service service, String fileName) throws ApiException {
+		return getFileConfig(authToken, service, ConfigServerConstants.FILES, fileName);
+	}
+
+	@Override
+	public Map<String, Map<String, Object>> getServiceFileLayers(String authToken, Service service, String configType) throws ApiException {
+		Map<String, Map<String, Object>> layers = new LinkedHashMap<>();
+		String configPath = buildConfigPath(service, configType, ConfigServerConstants.GLOBALS, service.getProjectVersion());
+		layers.put(ConfigServerConstants.GLOBALS, getFiles(authToken, configPath + ConfigServerConstants.SLASH));
+		configPath = buildConfigPath(service, configType, service.getServiceName(), service.getServiceVersion());
+		layers.put(ConfigServerConstants.SERVICE, getFiles(authToken, configPath + ConfigServerConstants.SLASH));
+		return layers;
+	}
+
 	@Override
 	public List<Service> searchServices(String authToken, String projectName) throws ApiException {
 		return null;
 	}
 	
 	private ServiceConfigs getFileConfigs(String authToken, Service service, String type) throws ApiException {
-		Map<String, Object> configsMap = new HashMap<String, Object>();
         ServiceConfigs serviceConfigs = new ServiceConfigs();
-        serviceConfigs.setConfigProperties(configsMap);
         serviceConfigs.setService(service);
         String configPath = null;
 
         //Get Global files
         configPath = buildConfigPath(service, type, ConfigServerConstants.GLOBALS, service.getProjectVersion());
-        configsMap.putAll(getFiles(authToken, configPath + ConfigServerConstants.SLASH));
+        Map<String, Object> globalsMap = getFiles(authToken, configPath + ConfigServerConstants.SLASH);
         //Get Service files
         configPath = buildConfigPath(service, type, service.getServiceName(), service.getServiceVersion());
-        configsMap.putAll(getFiles(authToken, configPath + ConfigServerConstants.SLASH));
+        serviceConfigs.setConfigProperties(LayeredConfigMap.merge(globalsMap, getFiles(authToken, configPath + ConfigServerConstants.SLASH)));
         
         return serviceConfigs;
 	}
 
+	/**
+	 * Get one file without listing the folders: the service file is requested first, then the global file.
+	 */
+	private ServiceConfigs getFileConfig(String authToken, Service service, String type, String fileName) throws ApiException {
+		Map<String, Object> configsMap = new HashMap<String, Object>();
+        ServiceConfigs serviceConfigs = new ServiceConfigs();
+        serviceConfigs.setConfigProperties(configsMap);
+        serviceConfigs.setService(service);
+
+        String encodedName = IProvider.encodeFileName(fileName);
+        String configPath = buildConfigPath(service, type, service.getServiceName(), service.getServiceVersion());
+        byte[] content = await(getBytes(authToken, configPath + ConfigServerConstants.SLASH + encodedName));
+        if (content == null || content.length == 0) {
+        	configPath = buildConfigPath(service, type, ConfigServerConstants.GLOBALS, service.getProjectVersion());
+        	content = await(getBytes(authToken, configPath + ConfigServerConstants.SLASH + encodedName));
+        }
+        if (content != null && content.length > 0) {
+        	configsMap.put(fileName, Base64.getMimeEncoder().encodeToString(content));
+        }
+        return serviceConfigs;
+	}
+
     private String buildConfigPath(Service service, String configType, String name, String version) {
         Map<String, Object> config = Config.getInstance().getJsonMapConfig(ConfigServerConstants.CONFIG_NAME);
         String configsDir = (String) config.get(SERVICE_CONFIGS_DIR);
@@ -132,117 +182,264 @@ public class UrlProviderImpl implements IProvider {
         return configPath.toString();
     }
     
+    /**
+     * Load the configs file of a directory. The extension that worked before for the directory is tried first;
+     * otherwise all extensions are requested concurrently and the first match in configExtensionsOrdered wins.
+     */
     private Map<String, Object> getConfigs(String clientToken, String configPath, String configName) throws ApiException {
-    	Map<String, Object> config;
+    	String knownExtension = configExtensions.get(configPath);
+    	if (knownExtension != null) {
+    		byte[] content = await(getBytes(clientToken, configFileEndpoint(configPath, configName, knownExtension)));
+    		if (content != null && content.length > 0) return parseConfigFile(content, knownExtension);
+    		configExtensions.remove(configPath, knownExtension);
+    	}
+    	List<CompletableFuture<byte[]>> probes = new ArrayList<>(configExtensionsOrdered.length);
         for (String extension : configExtensionsOrdered) {
-            config = loadSpecificConfigFileAsMap(configPath, configName, extension, clientToken);
-            if (config != null) return config;
+            probes.add(getBytes(clientToken, configFileEndpoint(configPath, configName, extension)));
+        }
+        for (int i = 0; i < probes.size(); i++) {
+        	byte[] content = await(probes.get(i));
+        	if (content != null && content.length > 0) {
+        		configExtensions.put(configPath, configExtensionsOrdered[i]);
+        		return parseConfigFile(content, configExtensionsOrdered[i]);
+        	}
         }
         return Collections.emptyMap();
     }
     
+    /**
+     * Download all files of a directory listing. The downloads are sent concurrently as streams of the cached
+     * HTTP/2 connection, at most serviceConfigsMaxConcurrentFetches at a time.
+     */
     private Map<String, Object> getFiles(String clientToken, String configPath) throws ApiException {
-    	Map<String, Object> configsMap = new HashMap<>();
-    	String respBody = getString(clientToken, configPath);
-    	if(StringUtils.isNotBlank(respBody)) {
-    		Matcher matcher = files.matcher(respBody);
-    		String endpoint = null;
+    	byte[] listing = await(getBytes(clientToken, configPath));
+    	if(listing == null || listing.length == 0) {
+    		return Collections.emptyMap();
+    	}
+    	Map<String, CompletableFuture<byte[]>> downloads = new LinkedHashMap<>();
+    	Semaphore permits = new Semaphore(getMaxConcurrentFetches());
+    	Matcher matcher = files.matcher(new String(listing, StandardCharsets.UTF_8));
+    	try {
     		while(matcher.find()) {
     			String file = matcher.group(1);
-    			endpoint = configPath + ConfigServerConstants.SLASH + file;
-    			byte[] bs = getBytes(clientToken, endpoint);
-    			if(bs!=null && bs.length>0) {
-    				String encodedContent = Base64.getMimeEncoder().encodeToString(bs);
-                    configsMap.put(file, encodedContent);
+    			String endpoint = configPath + ConfigServerConstants.SLASH + file;
+    			permits.acquire();
+    			CompletableFuture<byte[]> download;
+    			try {
+    				download = getBytes(clientToken, endpoint);
+    			} catch (ApiException e) {
+    				permits.release();
+    				throw e;
     			}
+    			download.whenComplete((content, e) -> permits.release());
+    			downloads.put(file, download);
+    		}
+    	} catch (InterruptedException e) {
+    		Thread.currentThread().interrupt();
+    		throw new ApiException(new Status("ACS00001"));
+    	}
+    	Map<String, Object> configsMap = new HashMap<>();
+    	for (Map.Entry<String, CompletableFuture<byte[]>> download : downloads.entrySet()) {
+    		byte[] bs = await(download.getValue());
+    		if(bs!=null && bs.length>0) {
+    			String encodedContent = Base64.getMimeEncoder().encodeToString(bs);
+    			configsMap.put(download.getKey(), encodedContent);
     		}
-    		return configsMap;
     	}
-    	return Collections.emptyMap();
+    	return configsMap;
     }
     
-    private Map<String, Object> loadSpecificConfigFileAsMap(String configPath, String configName, String fileExtension, String clientToken) throws ApiException {
-        String endpoint = new StringBuilder(configPath).append(ConfigServerConstants.SLASH).append(configName).append(fileExtension).toString();
-        String respBody = getString(clientToken, endpoint);
-        if(StringUtils.isNotBlank(respBody)) {
-        	try {
-        		if(!CONFIG_EXT_JSON.equals(fileExtension)) {
-        			respBody = JSONValue.toJSONString(new Yaml().load(respBody));
-        		}
-        		return mapper.readValue(respBody, new TypeReference<Map<String, Object>>() {});
-        	}catch (Exception e) {
-              logger.error("Exception while parsing Url response: ", e);
-              throw new ApiException(new Status("ACS00002"));
-			}
-        }
-        return null;
+    private int getMaxConcurrentFetches() {
+    	Map<String, Object> config = Config.getInstance().getJsonMapConfig(ConfigServerConstants.CONFIG_NAME);
+    	Object value = config.get(SERVICE_CONFIGS_MAX_CONCURRENT_FETCHES);
+    	return value == null ? 8 : Math.max(1, Integer.parseInt(value.toString()));
     }
     
-    private String getString(String clientToken, String endpoint) throws ApiException {
-    	Object object = sendRequest(clientToken, endpoint, false);
-    	return object==null ? null : (String)object;
+    private static long getCacheMaxBytes() {
+    	Map<String, Object> config = Config.getInstance().getJsonMapConfig(ConfigServerConstants.CONFIG_NAME);
+    	Object value = config == null ? null : config.get(SERVICE_CONFIGS_CACHE_MAX_BYTES);
+    	return value == null ? UrlResponseCache.DEFAULT_MAX_BYTES : Long.parseLong(value.toString());
+    }
+    
+    private String configFileEndpoint(String configPath, String configName, String fileExtension) {
+        return new StringBuilder(configPath).append(ConfigServerConstants.SLASH).append(configName).append(fileExtension).toString();
+    }
+    
+    private Map<String, Object> parseConfigFile(byte[] content, String fileExtension) throws ApiException {
+        return CONFIG_EXT_JSON.equals(fileExtension) ? ConfigParser.parseJson(content) : ConfigParser.parseYaml(content);
+    }
+    
+    /**
+     * Get a response body through the response cache: a fresh cached body is returned without a request, a stale one
+     * is revalidated and reused on 304. An endpoint that returned 404 is answered with null without a request for
+     * missingPathTtl seconds.
+     *
+     * @return future of the response body, or of null when the status is not 200 or 304
+     */
+    private CompletableFuture<byte[]> getBytes(String clientToken, String endpoint) throws ApiException {
+    	String cacheKey = clientToken + " " + endpoint;
+    	UrlResponseCache.CachedResponse cached = responseCache.get(cacheKey);
+    	if (cached != null && cached.isFresh(System.currentTimeMillis())) {
+    		logger.debug("Serving cached url configs endpoint:{}", endpoint);
+    		return CompletableFuture.completedFuture(cached.body);
+    	}
+    	if (missingPaths.isMissing(cacheKey)) {
+    		logger.debug("Url configs endpoint known to be missing:{}", endpoint);
+    		return CompletableFuture.completedFuture(null);
+    	}
+    	long missingPathTtl = MissingPathCache.getTtl(Config.getInstance().getJsonMapConfig(ConfigServerConstants.CONFIG_NAME));
+    	return sendRequest(clientToken, endpoint, cached).thenApply(clientResponse -> {
+    		int statusCode = clientResponse.getResponseCode();
+    		HeaderMap headers = clientResponse.getResponseHeaders();
+    		long now = System.currentTimeMillis();
+    		if (statusCode == 200) {
+    			byte[] body = clientResponse.getAttachment(Http2Client.BUFFER_BODY).array();
+    			responseCache.put(cacheKey, body, headers.getFirst(Headers.CACHE_CONTROL),
+    					headers.getFirst(Headers.ETAG), headers.getFirst(Headers.LAST_MODIFIED), now);
+    			return body;
+    		}
+    		if (statusCode == 304) {
+    			UrlResponseCache.CachedResponse revalidated = responseCache.revalidated(cacheKey, headers.getFirst(Headers.CACHE_CONTROL),
+    					headers.getFirst(Headers.ETAG), headers.getFirst(Headers.LAST_MODIFIED), now);
+    			if (revalidated != null) {
+    				return revalidated.body;
+    			}
+    		}
+    		responseCache.remove(cacheKey);
+    		if (statusCode == 404) {
+    			missingPaths.add(cacheKey, missingPathTtl);
+    		}
+    		logger.debug("Received client response: " + clientResponse);
+    		return null;
+    	});
     }
     
-    private byte[] getBytes(String clientToken, String endpoint) throws ApiException {
-    	Object object = sendRequest(clientToken, endpoint, true);
-    	if(object != null) {
-    		ByteBuffer buffer = (ByteBuffer)object;
-    		return buffer.array();
+    /**
+     * Wait for a response future and map its failure to ACS00001.
+     */
+    private static <T> T await(CompletableFuture<T> future) throws ApiException {
+    	try {
+    		return future.get();
+    	} catch (ExecutionException e) {
+    		logger.error("Exception while calling Url Configs API: ", e.getCause());
+    		throw new ApiException(new Status("ACS00001"));
+    	} catch (InterruptedException e) {
+    		Thread.currentThread().interrupt();
+    		throw new ApiException(new Status("ACS00001"));
     	}
-    	return null;
     }
     
-    private Object sendRequest(String clientToken, String endpoint, boolean raw) throws ApiException {
+    /**
+     * Send a GET request without blocking. The returned future is completed by the client callback once the body is
+     * read, and failed with a TimeoutException after requestTimeout by the shared CompletableFuture delay scheduler,
+     * so no thread is held while requests are in flight.
+     */
+    private CompletableFuture<ClientResponse> sendRequest(String clientToken, String endpoint, UrlResponseCache.CachedResponse cached) throws ApiException {
     	Map<String, Object> config = Config.getInstance().getJsonMapConfig(ConfigServerConstants.CONFIG_NAME);
     	String configsHost = Objects.toString(config.get(SERVICE_CONFIGS_HOST), System.getProperty(ConfigServerConstants.CONFIG_NAME + "." + SERVICE_CONFIGS_HOST));
-        ClientResponse clientResponse = null;
+        ClientConnection clientConnection;
+        ClientRequest clientRequest;
         try {
         	logger.info("GET url configs endpoint:{}", endpoint);
         	URI requestHost = new URI(configsHost);
-            ClientRequest clientRequest = new ClientRequest().setMethod(Methods.GET).setPath(endpoint);
+            clientRequest = new ClientRequest().setMethod(Methods.GET).setPath(endpoint);
             if(StringUtils.isNotBlank(clientToken)) {
             	clientRequest.getRequestHeaders().put(Headers.AUTHORIZATION, clientToken);
             }
             clientRequest.getRequestHeaders().put(Headers.HOST, requestHost.getHost());
+            if (cached != null && cached.etag != null) {
+            	clientRequest.getRequestHeaders().put(Headers.IF_NONE_MATCH, cached.etag);
+            }
+            if (cached != null && cached.lastModified != null) {
+            	clientRequest.getRequestHeaders().put(Headers.IF_MODIFIED_SINCE, cached.lastModified);
+            }
             
-        	ClientConnection clientConnection = connectionCacheManager.getConnection(requestHost,
+        	clientConnection = connectionCacheManager.getConnection(requestHost,
         			connectionCacheTTLms, connectionRequestTimeout, true, -1, 0);
-        	
-            // Send the request
-        	AtomicReference<ClientResponse> responseReference = new AtomicReference<>();
-        	CountDownLatch latch = new CountDownLatch(1);
-            clientConnection.sendRequest(clientRequest, raw
-            		? client.byteBufferClientCallback(responseReference, latch)
-            				: client.createClientCallback(responseReference, latch));
-
-            // Start a thread to wait for the timeout if provided.
-            Future<ClientResponse> clientResponseFuture = executorService.submit(() -> {
-                try {
-                    if (requestTimeout != null) {
-                        latch.await(requestTimeout.getTimeout(), requestTimeout.getUnit());
-                    } else {
-                        latch.await();
-                    }
-                    return responseReference.get();
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
-                }
-            });
-
-            clientResponse = clientResponseFuture.get();
-            if (clientResponse != null) {
-                int statusCode = clientResponse.getResponseCode();
-
-                if(statusCode == 200) {
-                	return raw ? clientResponse.getAttachment(Http2Client.BUFFER_BODY) : clientResponse.getAttachment(Http2Client.RESPONSE_BODY);
-                }
-            }
-            logger.debug("Received client response: " + clientResponse);
-        } catch (URISyntaxException | ExecutionException | TimeoutException | InterruptedException e) {
+        } catch (Exception e) {
+        	if (e instanceof InterruptedException) {
+        		Thread.currentThread().interrupt();
+        	}
             logger.error("Exception while calling Url Configs API: ", e);
             throw new ApiException(new Status("ACS00001"));
         }
-        return null;
+        CompletableFuture<ClientResponse> future = new CompletableFuture<>();
+        clientConnection.sendRequest(clientRequest, new ClientCallback<ClientExchange>() {
+        	@Override
+        	public void completed(ClientExchange exchange) {
+        		exchange.setResponseListener(new ClientCallback<ClientExchange>() {
+        			@Override
+        			public void completed(ClientExchange result) {
+        				new ResponseBodyReader(result, future).setup(result.getResponseChannel());
+        			}
+
+        			@Override
+        			public void failed(IOException e) {
+        				future.completeExceptionally(e);
+        			}
+        		});
+        	}
+
+        	@Override
+        	public void failed(IOException e) {
+        		future.completeExceptionally(e);
+        	}
+        });
+        return requestTimeout == null ? future : future.orTimeout(requestTimeout.getTimeout(), requestTimeout.getUnit());
+    }
+    
+    /**
+     * Reads a response body on the I/O thread and completes the request future with the body attached as
+     * {@link Http2Client#BUFFER_BODY}.
+     */
+    private static class ResponseBodyReader implements ChannelListener<StreamSourceChannel> {
+    	private final ClientExchange exchange;
+    	private final CompletableFuture<ClientResponse> future;
+    	private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    	private final WritableByteChannel sink = Channels.newChannel(body);
+
+    	private ResponseBodyReader(ClientExchange exchange, CompletableFuture<ClientResponse> future) {
+    		this.exchange = exchange;
+    		this.future = future;
+    	}
+
+    	void setup(StreamSourceChannel channel) {
+    		if (read(channel) == 0) {
+    			channel.getReadSetter().set(this);
+    			channel.resumeReads();
+    		}
+    	}
+
+    	@Override
+    	public void handleEvent(StreamSourceChannel channel) {
+    		read(channel);
+    	}
+
+    	/**
+    	 * @return -1 when the body is complete or failed, 0 when more data has to be waited for
+    	 */
+    	private int read(StreamSourceChannel channel) {
+    		try (PooledByteBuffer pooled = exchange.getConnection().getBufferPool().allocate()) {
+    			ByteBuffer buffer = pooled.getBuffer();
+    			int read;
+    			while ((read = channel.read(buffer)) > 0) {
+    				buffer.flip();
+    				sink.write(buffer);
+    				buffer.clear();
+    			}
+    			if (read == -1) {
+    				IoUtils.safeClose(channel);
+    				ClientResponse response = exchange.getResponse();
+    				response.putAttachment(Http2Client.BUFFER_BODY, ByteBuffer.wrap(body.toByteArray()));
+    				future.complete(response);
+    			}
+    			return read;
+    		} catch (IOException | RuntimeException e) {
+    			IoUtils.safeClose(channel);
+    			future.completeExceptionally(e);
+    			return -1;
+    		}
+    	}
     }
     
 }
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.provider;
+
+import com.networknt.configserver.cache.DedupPool;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * HTTP cache of {@link UrlProviderImpl} responses, following the Cache-Control, ETag and Last-Modified headers
+ * of the config host.
+ *
+ * A response is fresh for its max-age and served without a request; after that it is revalidated with
+ * If-None-Match/If-Modified-Since and its body is reused on 304. Responses with no-store, or without max-age and
+ * validators, are not cached. Entries are keyed by the client token and endpoint, so the host still authorizes
+ * every token.
+ *
+ * The least recently used entries are dropped when there are more than maxSize of them or their keys and bodies
+ * take more than maxBytes in total. A body larger than the whole budget is not cached.
+ */
+class UrlResponseCache {
+    static final int MAX_SIZE = 1024;
+    static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+    private final int maxSize;
+    private final long maxBytes;
+    private final LinkedHashMap<String, CachedResponse> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    UrlResponseCache() {
+        this(MAX_SIZE, DEFAULT_MAX_BYTES);
+    }
+
+    UrlResponseCache(int maxSize, long maxBytes) {
+        this.maxSize = maxSize;
+        this.maxBytes = maxBytes;
+    }
+
+    synchronized CachedResponse get(String key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Store a 200 response, or drop the previous one when the new response is not cacheable.
+     */
+    synchronized void put(String key, byte[] body, String cacheControl, String etag, String lastModified, long now) {
+        remove(key);
+        if (size(key, body) > maxBytes) {
+            return;
+        }
+        CachedResponse entry = newEntry(DedupPool.dedup(body), cacheControl, etag, lastModified, now);
+        if (entry != null) {
+            store(key, entry);
+        }
+    }
+
+    /**
+     * Refresh a stored response after a 304.
+     *
+     * @return the refreshed entry, or null when nothing was stored for the key
+     */
+    synchronized CachedResponse revalidated(String key, String cacheControl, String etag, String lastModified, long now) {
+        CachedResponse entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        CachedResponse refreshed = newEntry(entry.body, cacheControl,
+                etag == null ? entry.etag : etag, lastModified == null ? entry.lastModified : lastModified, now);
+        remove(key);
+        if (refreshed == null) {
+            return entry;
+        }
+        store(key, refreshed);
+        return refreshed;
+    }
+
+    synchronized void remove(String key) {
+        CachedResponse previous = entries.remove(key);
+        if (previous != null) {
+            bytes -= size(key, previous.body);
+        }
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized long getBytes() {
+        return bytes;
+    }
+
+    private void store(String key, CachedResponse entry) {
+        entries.put(key, entry);
+        bytes += size(key, entry.body);
+        Iterator<Map.Entry<String, CachedResponse>> eldest = entries.entrySet().iterator();
+        while (bytes > maxBytes || entries.size() > maxSize) {
+            Map.Entry<String, CachedResponse> next = eldest.next();
+            bytes -= size(next.getKey(), next.getValue().body);
+            eldest.remove();
+        }
+    }
+
+    private static long size(String key, byte[] body) {
+        return key.length() + body.length;
+    }
+
+    static CachedResponse newEntry(byte[] body, String cacheControl, String etag, String lastModified, long now) {
+        if (hasDirective(cacheControl, "no-store")) {
+            return null;
+        }
+        long maxAge = hasDirective(cacheControl, "no-cache") ? 0 : getMaxAge(cacheControl);
+        if (maxAge <= 0 && etag == null && lastModified == null) {
+            return null;
+        }
+        return new CachedResponse(body, etag, lastModified, now + Math.max(0, maxAge) * 1000);
+    }
+
+    /**
+     * @return max-age in seconds, or 0 when absent or invalid
+     */
+    static long getMaxAge(String cacheControl) {
+        if (cacheControl == null) {
+            return 0;
+        }
+        for (String directive : cacheControl.split(",")) {
+            String[] parts = directive.trim().split("=", 2);
+            if (parts.length == 2 && "max-age".equalsIgnoreCase(parts[0].trim())) {
+                try {
+                    return Long.parseLong(parts[1].trim().replace("\"", ""));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 0;
+    }
+
+    private static boolean hasDirective(String cacheControl, String name) {
+        if (cacheControl == null) {
+            return false;
+        }
+        for (String directive : cacheControl.split(",")) {
+            if (directive.trim().toLowerCase(Locale.ROOT).split("=", 2)[0].trim().equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static class CachedResponse {
+        final byte[] body;
+        final String etag;
+        final String lastModified;
+        final long expiresAt;
+
+        CachedResponse(byte[] body, String etag, String lastModified, long expiresAt) {
+            this.body = body;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isFresh(long now) {
+            return now < expiresAt;
+        }
+    }
+}
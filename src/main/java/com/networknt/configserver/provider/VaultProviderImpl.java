@@ -17,6 +17,7 @@
 package com.networknt.configserver.provider;
 
 import com.networknt.configserver.constants.ConfigServerConstants;
+import com.networknt.configserver.model.LayeredConfigMap;
 import com.networknt.configserver.model.Service;
 import com.networknt.configserver.model.ServiceConfigs;
 import com.networknt.configserver.model.VaultLoginRequest;
@@ -72,6 +73,18 @@ public class VaultProviderImpl implements IProvider {
     private static final String VAULT_SERVICE_FILES_PATH = "/v1/files/data/{project_name}/{service_name}/{service_version}/{environment}";
     private static final String VAULT_GLOBALS_FILES_PATH = "/v1/files/data/{project_name}/globals/{project_version}/{environment}";
 
+    // Paths that returned 404, per user and path, so a token never skips a request its own policy would have denied
+    private final MissingPathCache missingPaths = new MissingPathCache();
+
+    // User each client token was issued to; every login issues a new token, so misses are kept by user instead
+    private static final int TOKEN_USERS_MAX_SIZE = 10000;
+    private final Map<String, String> tokenUsers = Collections.synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > TOKEN_USERS_MAX_SIZE;
+        }
+    });
+
 
     /**
      * Login to Vault Server
@@ -128,6 +141,9 @@ public class VaultProviderImpl implements IProvider {
                 token = (String) authMap.get("client_token");
             }
             logger.debug("Received client token: {}", token);
+            if (token != null) {
+                tokenUsers.put(token, username);
+            }
         } catch (IOException e) {
             logger.error("Exception while parsing Vault response: ", e);
             throw new ApiException(new Status("ACS00002"));
@@ -168,8 +184,7 @@ public class VaultProviderImpl implements IProvider {
         logger.info("Calling vault service configs endpoint:{}", endpoint);
 
         //Merging two configs
-        configsMap.putAll(getConfigs(clientToken, endpoint));
-        serviceConfigs.setConfigProperties(configsMap);
+        serviceConfigs.setConfigProperties(LayeredConfigMap.merge(configsMap, getConfigs(clientToken, endpoint)));
         return serviceConfigs;
     }
 
@@ -178,6 +193,12 @@ public class VaultProviderImpl implements IProvider {
         Map<String, Object> config = Config.getInstance().getJsonMapConfig(ConfigServerConstants.CONFIG_NAME);
         ClientResponse clientResponse = null;
         Map<String, Object> innerDataMap = new HashMap<String, Object>();
+        String user = tokenUsers.get(clientToken);
+        String missingKey = (user != null ? "user " + user : "token " + clientToken) + " " + endpoint;
+        if (missingPaths.isMissing(missingKey)) {
+            logger.debug("Path known to be missing in vault: {}", endpoint);
+            return innerDataMap;
+        }
         try {
             HttpString headerName = new HttpString("X-Vault-Token");
             //Calling the vault configs api!
@@ -197,6 +218,9 @@ public class VaultProviderImpl implements IProvider {
 
                 checkForErrors(endpoint, respBody, statusCode);
 
+                if (statusCode == 404) {
+                    missingPaths.add(missingKey, MissingPathCache.getTtl(config));
+                }
                 if(statusCode == 200) {
                     Map<String, Object> response = (Map<String, Object>) mapper.readValue(respBody, new TypeReference<Map<String, Object>>() {
                     });
@@ -367,12 +391,27 @@ public class VaultProviderImpl implements IProvider {
         logger.info("Calling vault service certificates endpoint:{}", endpoint);
 
         //Merging two Certificates
-        configsMap.putAll(getConfigs(clientToken, endpoint));
-        serviceConfigs.setConfigProperties(configsMap);
+        serviceConfigs.setConfigProperties(LayeredConfigMap.merge(configsMap, getConfigs(clientToken, endpoint)));
         return serviceConfigs;
     }
 
 
+    @Override
+    public Map<String, Map<String, Object>> getServiceFileLayers(String clientToken, Service service, String configType) throws ApiException {
+        boolean certs = ConfigServerConstants.CERTS.equals(configType);
+        Map<String, Map<String, Object>> layers = new LinkedHashMap<>();
+        String endpoint = (certs ? VAULT_GLOBALS_CERTS_PATH : VAULT_GLOBALS_FILES_PATH).replace("{project_name}", service.getProjectName())
+                .replace("{project_version}", service.getProjectVersion())
+                .replace("{environment}", service.getEnvironment());
+        layers.put(ConfigServerConstants.GLOBALS, getConfigs(clientToken, endpoint));
+        endpoint = (certs ? VAULT_SERVICE_CERTS_PATH : VAULT_SERVICE_FILES_PATH).replace("{project_name}", service.getProjectName())
+                .replace("{service_name}", service.getServiceName())
+                .replace("{service_version}", service.getServiceVersion())
+                .replace("{environment}", service.getEnvironment());
+        layers.put(ConfigServerConstants.SERVICE, getConfigs(clientToken, endpoint));
+        return layers;
+    }
+
     /**
      * Get files from Vault server for given service details
      *
@@ -402,8 +441,7 @@ public class VaultProviderImpl implements IProvider {
         logger.info("Calling vault service files endpoint:{}", endpoint);
 
         //Merging two files
-        configsMap.putAll(getConfigs(clientToken, endpoint));
-        serviceConfigs.setConfigProperties(configsMap);
+        serviceConfigs.setConfigProperties(LayeredConfigMap.merge(configsMap, getConfigs(clientToken, endpoint)));
         return serviceConfigs;
     }
 }
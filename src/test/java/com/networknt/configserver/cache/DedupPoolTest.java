@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.cache;
+
+import com.networknt.configserver.model.CompactConfigMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+public class DedupPoolTest {
+
+    @Test
+    public void testInternSharesEqualStrings() {
+        String first = new String("jdbc:postgresql://db.example.com:5432/retail");
+        String second = new String("jdbc:postgresql://db.example.com:5432/retail");
+        Assert.assertSame(first, DedupPool.intern(first));
+        Assert.assertSame(first, DedupPool.intern(second));
+        Assert.assertNull(DedupPool.intern(null));
+    }
+
+    @Test
+    public void testDedupSharesEqualPayloads() {
+        byte[] first = new byte[DedupPool.MIN_BYTES];
+        Arrays.fill(first, (byte) 7);
+        byte[] second = first.clone();
+        Assert.assertSame(first, DedupPool.dedup(first));
+        Assert.assertSame(first, DedupPool.dedup(second));
+
+        byte[] other = first.clone();
+        other[0] = 8;
+        Assert.assertSame(other, DedupPool.dedup(other));
+
+        byte[] small = new byte[DedupPool.MIN_BYTES - 1];
+        Assert.assertSame(small, DedupPool.dedup(small));
+        Assert.assertNotSame(small, DedupPool.dedup(small.clone()));
+    }
+
+    @Test
+    public void testCompactMapsShareValues() {
+        Map<String, Object> first = CompactConfigMap.of(Collections.singletonMap("server.host", new String("api.example.com")));
+        Map<String, Object> second = CompactConfigMap.of(Collections.singletonMap("server.host", new String("api.example.com")));
+        Assert.assertSame(first.get("server.host"), second.get("server.host"));
+        Assert.assertSame(first.keySet().iterator().next(), second.keySet().iterator().next());
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.networknt.configserver.constants.ConfigServerConstants;
+import com.networknt.configserver.model.ConfigChangeEvent;
+import com.networknt.configserver.model.Service;
+import com.networknt.configserver.model.ServiceConfigs;
+import com.networknt.configserver.provider.ConfigChangeListener;
+import com.networknt.configserver.provider.IProvider;
+import com.networknt.exception.ApiException;
+import com.networknt.status.Status;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+public class ResponseCacheTest {
+    private static final byte[] BODY = "{\"configProperties\":{\"server.httpsPort\":8443}}".getBytes(StandardCharsets.UTF_8);
+
+    private final StubProvider provider = new StubProvider();
+
+    @Test
+    public void testDisabledCacheStoresNothing() {
+        ResponseCache cache = new ResponseCache(false, 60, 10, 1024, 0);
+        String key = ResponseCache.key(ConfigServerConstants.CONFIGS, "Basic abc", service("dev"), "application/json");
+        Assert.assertNotNull(cache.put(key, ConfigServerConstants.CONFIGS, service("dev"), BODY, "application/json", false));
+        Assert.assertNull(cache.get(provider, key));
+    }
+
+    @Test
+    public void testKeyedByCredentials() {
+        ResponseCache cache = new ResponseCache(true, 60, 10, 1024, 0);
+        String key = ResponseCache.key(ConfigServerConstants.CONFIGS, "Basic abc", service("dev"), "application/json");
+        cache.put(key, ConfigServerConstants.CONFIGS, service("dev"), BODY, "application/json", false);
+        Assert.assertNotNull(cache.get(provider, key));
+        Assert.assertNull(cache.get(provider, ResponseCache.key(ConfigServerConstants.CONFIGS, "Basic xyz", service("dev"), "application/json")));
+    }
+
+    @Test
+    public void testInvalidatedByChange() {
+        ResponseCache cache = new ResponseCache(true, 60, 10, 1024, 0);
+        String devKey = ResponseCache.key(ConfigServerConstants.CONFIGS, "Basic abc", service("dev"), "application/json");
+        String sitKey = ResponseCache.key(ConfigServerConstants.CONFIGS, "Basic abc", service("sit"), "application/json");
+        cache.put(devKey, ConfigServerConstants.CONFIGS, service("dev"), BODY, "application/json", false);
+        cache.put(sitKey, ConfigServerConstants.CONFIGS, service("sit"), BODY, "application/json", false);
+        cache.get(provider, devKey);
+
+        provider.listener.onChange(new ConfigChangeEvent(ConfigServerConstants.CONFIGS, "retail", ConfigServerConstants.GLOBALS, "v1", "dev", "values.yml"));
+        Assert.assertNull(cache.get(provider, devKey));
+        Assert.assertNotNull(cache.get(provider, sitKey));
+    }
+
+    @Test
+    public void testPayloadsKeptOffHeapUntilReleased() {
+        ResponseCache cache = new ResponseCache(true, 60, 1, 1024, 0);
+        String certsKey = ResponseCache.key(ConfigServerConstants.CERTS, "Basic abc", service("dev"), "application/json");
+        CachedResponse certs = cache.put(certsKey, ConfigServerConstants.CERTS, service("dev"), BODY, "application/json", false);
+        Assert.assertTrue(certs.isOffHeap());
+        Assert.assertTrue(certs.getBody(null).isDirect());
+        Assert.assertEquals(ByteBuffer.wrap(BODY), certs.getBody(null));
+        Assert.assertEquals(BODY.length, cache.getOffHeapStore().getUsedBytes());
+
+        // evicted by the next entry while the caller still holds its reference
+        String configsKey = ResponseCache.key(ConfigServerConstants.CONFIGS, "Basic abc", service("dev"), "application/json");
+        cache.put(configsKey, ConfigServerConstants.CONFIGS, service("dev"), BODY, "application/json", false).release();
+        Assert.assertNull(cache.get(provider, certsKey));
+        Assert.assertEquals(BODY.length, cache.getOffHeapStore().getUsedBytes());
+        certs.release();
+        Assert.assertEquals(0, cache.getOffHeapStore().getUsedBytes());
+        Assert.assertFalse(certs.retain());
+    }
+
+    @Test
+    public void testVariantAfterLastReleaseKeptOnHeap() {
+        OffHeapStore offHeapStore = new OffHeapStore(1024);
+        CachedResponse response = new CachedResponse(BODY, "application/json", false, Long.MAX_VALUE, offHeapStore);
+        response.getBody(CachedResponse.DEFLATE);
+        Assert.assertTrue(offHeapStore.getUsedBytes() > BODY.length);
+        response.release();
+        Assert.assertEquals(0, offHeapStore.getUsedBytes());
+
+        // a reader racing the last release must not charge a variant nobody credits
+        Assert.assertFalse(response.getBody(CachedResponse.GZIP).isDirect());
+        Assert.assertEquals(0, offHeapStore.getUsedBytes());
+    }
+
+    @Test
+    public void testIdleEntriesCompressedUntilRead() throws Exception {
+        ResponseCache cache = new ResponseCache(true, 60, 10, 1024, 1);
+        String key = ResponseCache.key(ConfigServerConstants.FILES, "Basic abc", service("dev"), "application/json");
+        cache.put(key, ConfigServerConstants.FILES, service("dev"), BODY, "application/json", false).release();
+        Assert.assertEquals(0, cache.compactColdEntries(System.currentTimeMillis()));
+        Assert.assertEquals(1, cache.compactColdEntries(System.currentTimeMillis() + 2000));
+        Assert.assertEquals(0, cache.getOffHeapStore().getUsedBytes());
+
+        CachedResponse response = cache.get(provider, key);
+        Assert.assertFalse(response.isCold());
+        Assert.assertTrue(response.isOffHeap());
+        Assert.assertEquals(ByteBuffer.wrap(BODY), response.getBody(null));
+        Assert.assertArrayEquals(BODY, readAll(new GZIPInputStream(new ByteArrayInputStream(toArray(response.getBody(CachedResponse.GZIP))))));
+        response.release();
+    }
+
+    @Test
+    public void testRestoredFromSnapshotAndRevalidated() throws Exception {
+        Path snapshot = Files.createTempFile("response-cache", ".snapshot");
+        try {
+            ResponseCache cache = new ResponseCache(true, 60, 10, 1024, 0);
+            String key = ResponseCache.key(ConfigServerConstants.CONFIGS, "Basic abc", service("dev"), "application/json");
+            cache.put(key, ConfigServerConstants.CONFIGS, service("dev"), BODY, "application/json", false).release();
+            cache.checkpoint(snapshot);
+
+            ResponseCache restarted = new ResponseCache(true, 0, 10, 1024, 0);
+            Assert.assertEquals(1, restarted.restore(snapshot));
+            CachedResponse restored = restarted.get(provider, key);
+            Assert.assertEquals(ByteBuffer.wrap(BODY), restored.getBody(null));
+            restored.release();
+
+            // served while the provider can not be reached, then replaced by the refreshed response
+            restarted.revalidate(key, new ObjectMapper(), () -> {
+                throw new IOException("provider unreachable");
+            });
+            Thread.sleep(200);
+            Assert.assertNotNull(restarted.get(provider, key));
+            ServiceConfigs serviceConfigs = new ServiceConfigs();
+            serviceConfigs.setService(service("dev"));
+            serviceConfigs.setConfigProperties(Collections.singletonMap("server.httpsPort", 8443));
+            restarted.revalidate(key, new ObjectMapper(), () -> serviceConfigs);
+            Thread.sleep(200);
+            // not cached again with a zero ttl
+            Assert.assertNull(restarted.get(provider, key));
+        } finally {
+            Files.deleteIfExists(snapshot);
+        }
+    }
+
+    @Test
+    public void testRestoredDroppedWhenDenied() throws Exception {
+        Path snapshot = Files.createTempFile("response-cache", ".snapshot");
+        try {
+            ResponseCache cache = new ResponseCache(true, 60, 10, 1024, 0);
+            String key = ResponseCache.key(ConfigServerConstants.CONFIGS, "Basic abc", service("dev"), "application/json");
+            cache.put(key, ConfigServerConstants.CONFIGS, service("dev"), BODY, "application/json", false).release();
+            cache.checkpoint(snapshot);
+            if (Files.getFileStore(snapshot).supportsFileAttributeView(PosixFileAttributeView.class)) {
+                Assert.assertEquals(PosixFilePermissions.fromString("rw-------"), Files.getPosixFilePermissions(snapshot));
+            }
+
+            ResponseCache restarted = new ResponseCache(true, 60, 10, 1024, 0);
+            restarted.restore(snapshot);
+            restarted.get(provider, key).release();
+            restarted.revalidate(key, new ObjectMapper(), () -> {
+                throw new ApiException(new Status("ACS00001", 403, "Forbidden"));
+            });
+            Thread.sleep(200);
+            Assert.assertNull(restarted.get(provider, key));
+        } finally {
+            Files.deleteIfExists(snapshot);
+        }
+    }
+
+    @Test
+    public void testRestoredNotServedPastMaxStale() throws Exception {
+        Path snapshot = Files.createTempFile("response-cache", ".snapshot");
+        try {
+            long now = System.currentTimeMillis();
+            List<ResponseCacheSnapshot.Entry> entries = new ArrayList<>();
+            for (String environment : new String[]{"dev", "sit"}) {
+                String key = ResponseCache.key(ConfigServerConstants.CONFIGS, "Basic abc", service(environment), "application/json");
+                CachedResponse response = new CachedResponse(BODY, "application/json", false, now);
+                // expired a minute ago, and two hours ago
+                entries.add(new ResponseCacheSnapshot.Entry(key, ConfigServerConstants.CONFIGS, "retail", environment,
+                        "application/json", response.getETag(), false, "dev".equals(environment) ? now - 60000 : now - 7200000,
+                        response.getBody(null)));
+            }
+            ResponseCacheSnapshot.write(snapshot, entries);
+
+            ResponseCache restarted = new ResponseCache(true, 60, 10, 1024, 0, 3600);
+            Assert.assertEquals(2, restarted.restore(snapshot));
+            Assert.assertNotNull(restarted.get(provider, entries.get(0).key));
+            Assert.assertNull(restarted.get(provider, entries.get(1).key));
+        } finally {
+            Files.deleteIfExists(snapshot);
+        }
+    }
+
+    @Test
+    public void testIsUnavailable() {
+        Assert.assertTrue(ResponseCache.isUnavailable(new IOException("connection refused")));
+        Assert.assertTrue(ResponseCache.isUnavailable(new ApiException(new Status("ACS00001", 500, "Could not connect to Git server"))));
+        Assert.assertTrue(ResponseCache.isUnavailable(new ApiException(new Status("ACS00001", 429, "Git API rate limit exceeded"))));
+        Assert.assertTrue(ResponseCache.isUnavailable(new ApiException(new Status("ACS00001", 503, "Service Unavailable"))));
+        Assert.assertFalse(ResponseCache.isUnavailable(new ApiException(new Status("ACS00001", 401, "Unauthorized"))));
+        Assert.assertFalse(ResponseCache.isUnavailable(new ApiException(new Status("ACS00001", 404, "Not Found"))));
+        Assert.assertFalse(ResponseCache.isUnavailable(new ApiException(new Status("ACS00004", "values.yml"))));
+        Assert.assertFalse(ResponseCache.isUnavailable(new IllegalStateException("no configProperties returned")));
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedSnapshot() throws Exception {
+        Path snapshot = Files.createTempFile("response-cache", ".snapshot");
+        try {
+            Files.write(snapshot, new byte[]{0x4c, 0x43, 0x53, 0x43, 0, 0, 0, 1, 0, 0, 0, 1});
+            new ResponseCache(true, 60, 10, 1024, 0).restore(snapshot);
+        } finally {
+            Files.deleteIfExists(snapshot);
+        }
+    }
+
+    @Test
+    public void testColdResponse() throws Exception {
+        CachedResponse cold = new CachedResponse(BODY, "application/json", false, Long.MAX_VALUE).toCold();
+        Assert.assertTrue(cold.isCold());
+        Assert.assertEquals(ByteBuffer.wrap(BODY), cold.getBody(null));
+        Assert.assertArrayEquals(BODY, readAll(new InflaterInputStream(new ByteArrayInputStream(toArray(cold.getBody(CachedResponse.DEFLATE))))));
+        Assert.assertEquals(ByteBuffer.wrap(BODY), cold.toHot(null).getBody(null));
+    }
+
+    @Test
+    public void testCompressedVariants() throws Exception {
+        CachedResponse response = new CachedResponse(BODY, "application/json", false, Long.MAX_VALUE);
+        Assert.assertEquals(ByteBuffer.wrap(BODY), response.getBody(null));
+        Assert.assertArrayEquals(BODY, readAll(new GZIPInputStream(new ByteArrayInputStream(toArray(response.getBody(CachedResponse.GZIP))))));
+        Assert.assertArrayEquals(BODY, readAll(new InflaterInputStream(new ByteArrayInputStream(toArray(response.getBody(CachedResponse.DEFLATE))))));
+        Assert.assertEquals(response.getBody(CachedResponse.GZIP), response.getBody(CachedResponse.GZIP));
+    }
+
+    private static Service service(String environment) {
+        Service service = new Service();
+        service.setProjectName("retail");
+        service.setProjectVersion("v1");
+        service.setServiceName("api-customers");
+        service.setServiceVersion("v1");
+        service.setEnvironment(environment);
+        return service;
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static byte[] readAll(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static class StubProvider implements IProvider {
+        private ConfigChangeListener listener;
+
+        @Override
+        public String login(String authorization) {
+            return authorization;
+        }
+
+        @Override
+        public ServiceConfigs getServiceConfigs(String authToken, Service service) {
+            return null;
+        }
+
+        @Override
+        public ServiceConfigs getServiceCertificates(String authToken, Service service) {
+            return null;
+        }
+
+        @Override
+        public ServiceConfigs getServiceFiles(String authToken, Service service) {
+            return null;
+        }
+
+        @Override
+        public List<Service> searchServices(String authToken, String projectName) {
+            return null;
+        }
+
+        @Override
+        public void addChangeListener(ConfigChangeListener listener) {
+            this.listener = listener;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.handler;
+
+import com.networknt.configserver.constants.ConfigServerConstants;
+import com.networknt.configserver.model.Service;
+import com.networknt.configserver.model.ServiceConfigs;
+import com.networknt.configserver.provider.IProvider;
+import com.networknt.exception.ApiException;
+import com.networknt.status.Status;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+public class GetFingerprintHandlerTest {
+    private static final String SERVICE = "retail/v1/api-customers/v1/dev";
+
+    @Test
+    public void testServiceAuthorizedPerConfigType() throws Exception {
+        StubProvider provider = new StubProvider();
+        GetFingerprintHandler.authorize(provider, "Bearer payments", "Bearer payments", (SERVICE + "/configs/server.httpsPort").split("/"), 60);
+        Assert.assertEquals(1, provider.reads.size());
+        Assert.assertEquals(ConfigServerConstants.CONFIGS + " retail/v1/api-customers/v1/dev", provider.reads.get(0));
+        // granted for the ttl
+        GetFingerprintHandler.authorize(provider, "Bearer payments", "Bearer payments", (SERVICE + "/configs").split("/"), 60);
+        Assert.assertEquals(1, provider.reads.size());
+        // the service node covers every config type
+        GetFingerprintHandler.authorize(provider, "Bearer payments", "Bearer payments", SERVICE.split("/"), 60);
+        Assert.assertEquals(3, provider.reads.size());
+    }
+
+    @Test
+    public void testGrantedPerAuthorization() throws Exception {
+        StubProvider provider = new StubProvider();
+        String[] parts = ("retail/v1/api-orders/v1/dev/files").split("/");
+        GetFingerprintHandler.authorize(provider, "Basic cGF5bWVudHM6c2VjcmV0", "s.token1", parts, 60);
+        // a new token for the same Authorization header is still granted
+        GetFingerprintHandler.authorize(provider, "Basic cGF5bWVudHM6c2VjcmV0", "s.token2", parts, 60);
+        Assert.assertEquals(1, provider.reads.size());
+        GetFingerprintHandler.authorize(provider, "Basic b3RoZXI6c2VjcmV0", "s.token3", parts, 60);
+        Assert.assertEquals(2, provider.reads.size());
+    }
+
+    @Test(expected = ApiException.class)
+    public void testDenied() throws Exception {
+        StubProvider provider = new StubProvider();
+        provider.denied = "Bearer other";
+        GetFingerprintHandler.authorize(provider, "Bearer other", "Bearer other", (SERVICE + "/certs").split("/"), 60);
+    }
+
+    @Test(expected = ApiException.class)
+    public void testUnknownConfigType() throws Exception {
+        StubProvider provider = new StubProvider();
+        try {
+            GetFingerprintHandler.authorize(provider, "Bearer payments", "Bearer payments", (SERVICE + "/secrets").split("/"), 60);
+        } finally {
+            Assert.assertTrue(provider.reads.isEmpty());
+        }
+    }
+
+    private static class StubProvider implements IProvider {
+        private final List<String> reads = new ArrayList<>();
+        private String denied;
+
+        @Override
+        public String login(String authorization) {
+            return authorization;
+        }
+
+        @Override
+        public ServiceConfigs getServiceConfigs(String authToken, Service service) throws ApiException {
+            return read(authToken, service, ConfigServerConstants.CONFIGS);
+        }
+
+        @Override
+        public ServiceConfigs getServiceCertificates(String authToken, Service service) throws ApiException {
+            return read(authToken, service, ConfigServerConstants.CERTS);
+        }
+
+        @Override
+        public ServiceConfigs getServiceFiles(String authToken, Service service) throws ApiException {
+            return read(authToken, service, ConfigServerConstants.FILES);
+        }
+
+        @Override
+        public List<Service> searchServices(String authToken, String projectName) {
+            return null;
+        }
+
+        private ServiceConfigs read(String authToken, Service service, String configType) throws ApiException {
+            if (authToken.equals(denied)) {
+                throw new ApiException(new Status("ACS00001", 403, "permission denied"));
+            }
+            reads.add(configType + " " + service.getProjectName() + "/" + service.getProjectVersion() + "/"
+                    + service.getServiceName() + "/" + service.getServiceVersion() + "/" + service.getEnvironment());
+            ServiceConfigs serviceConfigs = new ServiceConfigs();
+            serviceConfigs.setService(service);
+            serviceConfigs.setConfigProperties(new HashMap<>());
+            return serviceConfigs;
+        }
+    }
+}
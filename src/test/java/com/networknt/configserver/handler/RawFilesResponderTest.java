@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.handler;
+
+import com.networknt.configserver.model.FileContent;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class RawFilesResponderTest {
+
+    @Test
+    public void testGetFilesDecodesValues() {
+        byte[] cert = new byte[300];
+        for (int i = 0; i < cert.length; i++) {
+            cert[i] = (byte) i;
+        }
+        Map<String, Object> configProperties = new HashMap<>();
+        configProperties.put("server.keystore", Base64.getMimeEncoder().encodeToString(cert));
+        configProperties.put("logback.xml", new FileContent(ByteBuffer.wrap("<configuration/>".getBytes(StandardCharsets.UTF_8))));
+
+        Map<String, ByteBuffer> files = RawFilesResponder.getFiles(configProperties);
+        Assert.assertEquals(ByteBuffer.wrap(cert), files.get("server.keystore"));
+        Assert.assertEquals("<configuration/>", StandardCharsets.UTF_8.decode(files.get("logback.xml")).toString());
+    }
+
+    @Test
+    public void testQuoteFileName() {
+        Assert.assertEquals("client.truststore", RawFilesResponder.quoteFileName("client.truststore"));
+        Assert.assertEquals("a\\\"b\\\\c", RawFilesResponder.quoteFileName("a\"b\\c"));
+        // a line break can not end the part header and start another one
+        Assert.assertEquals("x.pem%0D%0AContent-Type: text/html", RawFilesResponder.quoteFileName("x.pem\r\nContent-Type: text/html"));
+        Assert.assertEquals("tab%09del%7F", RawFilesResponder.quoteFileName("tab\tdel\u007f"));
+    }
+
+    @Test
+    public void testZipSizeMatchesArchive() throws Exception {
+        Map<String, ByteBuffer> files = new HashMap<>();
+        files.put("client.truststore", ByteBuffer.wrap(new byte[1234]));
+        files.put("zertifikat-\u00e4.pem", ByteBuffer.wrap("pem".getBytes(StandardCharsets.UTF_8)));
+        files.put("empty.txt", ByteBuffer.allocate(0));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(out, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, ByteBuffer> file : files.entrySet()) {
+                byte[] content = file.getValue().array();
+                CRC32 crc = new CRC32();
+                crc.update(content);
+                ZipEntry entry = new ZipEntry(file.getKey());
+                entry.setMethod(ZipEntry.STORED);
+                entry.setSize(content.length);
+                entry.setCompressedSize(content.length);
+                entry.setCrc(crc.getValue());
+                zip.putNextEntry(entry);
+                zip.write(content);
+                zip.closeEntry();
+            }
+        }
+        Assert.assertEquals(out.size(), RawFilesResponder.getZipSize(files));
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.handler;
+
+import com.networknt.configserver.model.FileContent;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Map;
+
+public class ResponseFormatTest {
+
+    @Test
+    public void testFromAccept() {
+        Assert.assertEquals(ResponseFormat.JSON, ResponseFormat.fromAccept(null));
+        Assert.assertEquals(ResponseFormat.JSON, ResponseFormat.fromAccept("*/*"));
+        Assert.assertEquals(ResponseFormat.CBOR, ResponseFormat.fromAccept("application/cbor"));
+        Assert.assertEquals(ResponseFormat.SMILE, ResponseFormat.fromAccept("text/html, application/x-jackson-smile;q=0.9"));
+        Assert.assertEquals(ResponseFormat.YAML, ResponseFormat.fromAccept("application/x-yaml"));
+        Assert.assertEquals(ResponseFormat.JSON, ResponseFormat.fromAccept("application/json, application/cbor"));
+        Assert.assertEquals(ResponseFormat.JSON, ResponseFormat.fromAccept("application/cbor;q=0"));
+    }
+
+    @Test
+    public void testBinaryFormatsWriteByteStrings() throws Exception {
+        byte[] content = {0, 1, 2, (byte) 0xff};
+        Map<String, FileContent> files = Collections.singletonMap("client.keystore", new FileContent(ByteBuffer.wrap(content)));
+        for (ResponseFormat format : new ResponseFormat[]{ResponseFormat.CBOR, ResponseFormat.SMILE}) {
+            Assert.assertTrue(format.isBinary());
+            Map<?, ?> read = format.getMapper().readValue(format.getMapper().writeValueAsBytes(files), Map.class);
+            Assert.assertArrayEquals(content, (byte[]) read.get("client.keystore"));
+        }
+        Assert.assertFalse(ResponseFormat.JSON.isBinary());
+        Assert.assertFalse(ResponseFormat.YAML.isBinary());
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+public class CompactConfigMapTest {
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void testEqualsParsedTree() throws Exception {
+        Map<String, Object> client = new LinkedHashMap<>();
+        client.put("timeout", 3000);
+        client.put("maxConnectionNumPerHost", 1000000000000L);
+        client.put("verifyHostname", true);
+        Map<String, Object> tree = new LinkedHashMap<>();
+        tree.put("server.httpsPort", 9444);
+        tree.put("server.ratio", 0.75);
+        tree.put("acPrefix", "RET");
+        tree.put("missing", null);
+        tree.put("client", client);
+        tree.put("hosts", Arrays.asList("a.example.com", client, 7));
+
+        CompactConfigMap compact = CompactConfigMap.of(tree);
+        Assert.assertEquals(tree, compact);
+        Assert.assertEquals(tree.hashCode(), compact.hashCode());
+        Assert.assertEquals(Integer.valueOf(9444), compact.get("server.httpsPort"));
+        Assert.assertEquals(Double.valueOf(0.75), compact.get("server.ratio"));
+        Assert.assertEquals(Long.valueOf(1000000000000L), ((Map) compact.get("client")).get("maxConnectionNumPerHost"));
+        Assert.assertEquals(Boolean.TRUE, ((Map) compact.get("client")).get("verifyHostname"));
+        Assert.assertTrue(((List) compact.get("hosts")).get(1) instanceof CompactConfigMap);
+        Assert.assertTrue(compact.containsKey("missing"));
+        Assert.assertNull(compact.get("unknown"));
+        Assert.assertEquals(mapper.readTree(mapper.writeValueAsBytes(tree)), mapper.readTree(mapper.writeValueAsBytes(compact)));
+    }
+
+    @Test
+    public void testIteratesInKeyOrder() {
+        Map<String, Object> tree = new LinkedHashMap<>();
+        tree.put("b", 1);
+        tree.put("c", "x");
+        tree.put("a", false);
+        Assert.assertEquals(Arrays.asList("a", "b", "c"), new ArrayList<>(CompactConfigMap.of(tree).keySet()));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testListIsUnmodifiable() {
+        ((List) CompactConfigMap.of(Collections.singletonMap("hosts", new ArrayList<>(Arrays.asList(1, 2)))).get("hosts")).add(3);
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+public class FileContentTest {
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void testSerializesLikeMimeBase64String() throws Exception {
+        Random random = new Random(42);
+        for (int size : new int[]{0, 1, 57, 58, 3648, 100000}) {
+            byte[] content = new byte[size];
+            random.nextBytes(content);
+            Map<String, Object> streamed = new LinkedHashMap<>();
+            streamed.put("client.keystore", new FileContent(ByteBuffer.wrap(content)));
+            streamed.put("next", "value");
+            Map<String, Object> encoded = new LinkedHashMap<>();
+            encoded.put("client.keystore", Base64.getMimeEncoder().encodeToString(content));
+            encoded.put("next", "value");
+
+            Assert.assertArrayEquals(mapper.writeValueAsBytes(encoded), mapper.writeValueAsBytes(streamed));
+            Assert.assertEquals(mapper.writeValueAsString(encoded), mapper.writeValueAsString(streamed));
+        }
+    }
+
+    @Test
+    public void testToFileContents() {
+        byte[] content = {1, 2, 3};
+        Map<String, Object> files = new LinkedHashMap<>();
+        files.put("client.keystore", Base64.getMimeEncoder().encodeToString(content));
+        files.put("client.truststore", new FileContent(ByteBuffer.wrap(content)));
+
+        Map<?, ?> converted = (Map<?, ?>) FileContent.toFileContents(files);
+        Assert.assertEquals(new FileContent(ByteBuffer.wrap(content)), converted.get("client.keystore"));
+        Assert.assertSame(files.get("client.truststore"), converted.get("client.truststore"));
+        Assert.assertEquals("value", FileContent.toFileContents("value"));
+    }
+
+    @Test
+    public void testBufferIsNotConsumed() {
+        FileContent fileContent = new FileContent(ByteBuffer.wrap(new byte[]{1, 2, 3}));
+        fileContent.getBuffer().get();
+        Assert.assertEquals(3, fileContent.size());
+        Assert.assertEquals(3, fileContent.getBuffer().remaining());
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+public class LayeredConfigMapTest {
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void testEqualsFlatMerge() throws Exception {
+        Map<String, Object> globals = new HashMap<>();
+        globals.put("server.httpsPort", 8443);
+        globals.put("server.enableHttp", false);
+        globals.put("client.timeout", null);
+        Map<String, Object> overrides = new HashMap<>();
+        overrides.put("server.httpsPort", 9443);
+        overrides.put("service.name", "api-customers");
+        overrides.put("client.timeout", 3000);
+
+        Map<String, Object> flat = new HashMap<>(globals);
+        flat.putAll(overrides);
+        Map<String, Object> layered = LayeredConfigMap.merge(globals, overrides);
+
+        Assert.assertEquals(flat, layered);
+        Assert.assertEquals(flat.hashCode(), layered.hashCode());
+        Assert.assertEquals(4, layered.size());
+        Assert.assertEquals(9443, layered.get("server.httpsPort"));
+        Assert.assertEquals(mapper.readTree(mapper.writeValueAsBytes(flat)), mapper.readTree(mapper.writeValueAsBytes(layered)));
+    }
+
+    @Test
+    public void testMissingLayers() {
+        Map<String, Object> globals = Collections.singletonMap("server.httpsPort", 8443);
+        Assert.assertEquals(globals, LayeredConfigMap.merge(globals, null));
+        Assert.assertEquals(globals, LayeredConfigMap.merge(null, globals));
+        Assert.assertTrue(LayeredConfigMap.merge(null, Collections.emptyMap()).isEmpty());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testReadOnly() {
+        Map<String, Object> layered = LayeredConfigMap.merge(Collections.singletonMap("a", 1), Collections.singletonMap("b", 2));
+        layered.entrySet().iterator().next().setValue(3);
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.provider;
+
+import com.networknt.configserver.constants.ConfigServerConstants;
+import com.networknt.configserver.model.ConfigChangeEvent;
+import com.networknt.configserver.model.ConfigFingerprint;
+import com.networknt.configserver.model.FileContent;
+import com.networknt.configserver.model.Service;
+import com.networknt.configserver.model.ServiceConfigs;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+public class ConfigMerkleTreeTest {
+    private static final byte[] KEY = "fingerprint-key".getBytes(StandardCharsets.UTF_8);
+    private final IProvider provider = new StubProvider();
+
+    @Test
+    public void testSameContentSameHashes() {
+        ConfigMerkleTree tree = new ConfigMerkleTree(KEY, 0);
+        ConfigMerkleTree replica = new ConfigMerkleTree(KEY, 0);
+        tree.record(provider, configs(service("api-customers"), 8443), ConfigServerConstants.CONFIGS);
+        tree.record(provider, files(service("api-customers"), "<configuration/>"), ConfigServerConstants.FILES);
+        replica.record(provider, files(service("api-customers"), "<configuration/>"), ConfigServerConstants.FILES);
+        replica.record(provider, configs(service("api-customers"), 8443), ConfigServerConstants.CONFIGS);
+        Assert.assertEquals(tree.getFingerprint(""), replica.getFingerprint(""));
+
+        ConfigFingerprint service = tree.getFingerprint("retail/v1/api-customers/v1/dev");
+        Assert.assertEquals(Arrays.asList(ConfigServerConstants.CONFIGS, ConfigServerConstants.FILES), new ArrayList<>(service.getChildren().keySet()));
+        ConfigFingerprint configs = tree.getFingerprint("retail/v1/api-customers/v1/dev/configs");
+        Assert.assertEquals(Arrays.asList("server.httpsPort", "server.ioThreads"), new ArrayList<>(configs.getChildren().keySet()));
+        Assert.assertTrue(tree.getFingerprint("retail/v1/api-customers/v1/dev/configs/server.httpsPort").getChildren().isEmpty());
+        Assert.assertNull(tree.getFingerprint("retail/v2"));
+
+        // another key gives other hashes, a fingerprint does not reveal the value behind it
+        ConfigMerkleTree other = new ConfigMerkleTree("other-key".getBytes(StandardCharsets.UTF_8), 0);
+        other.record(provider, configs(service("api-customers"), 8443), ConfigServerConstants.CONFIGS);
+        Assert.assertNotEquals(configs.getHash(), other.getFingerprint("retail/v1/api-customers/v1/dev/configs").getHash());
+    }
+
+    @Test
+    public void testChangedBranchOnly() {
+        ConfigMerkleTree tree = new ConfigMerkleTree(KEY, 0);
+        tree.record(provider, configs(service("api-customers"), 8443), ConfigServerConstants.CONFIGS);
+        tree.record(provider, configs(service("api-orders"), 8443), ConfigServerConstants.CONFIGS);
+        ConfigFingerprint before = tree.getFingerprint("retail/v1");
+
+        tree.record(provider, configs(service("api-orders"), 9443), ConfigServerConstants.CONFIGS);
+        ConfigFingerprint after = tree.getFingerprint("retail/v1");
+        Assert.assertNotEquals(before.getHash(), after.getHash());
+        Assert.assertEquals(before.getChildren().get("api-customers"), after.getChildren().get("api-customers"));
+        Assert.assertNotEquals(before.getChildren().get("api-orders"), after.getChildren().get("api-orders"));
+    }
+
+    @Test
+    public void testRecordedUntilTtl() {
+        ConfigMerkleTree tree = new ConfigMerkleTree(KEY, 60);
+        tree.record(provider, configs(service("api-customers"), 8443), ConfigServerConstants.CONFIGS);
+        String hash = tree.getFingerprint("").getHash();
+        tree.record(provider, configs(service("api-customers"), 9443), ConfigServerConstants.CONFIGS);
+        Assert.assertEquals(hash, tree.getFingerprint("").getHash());
+
+        // a change reported by the provider drops the branch until it is read again
+        tree.onChange(new ConfigChangeEvent(ConfigServerConstants.CONFIGS, "retail", "api-customers", "v1", "dev", "values.yml"));
+        Assert.assertNull(tree.getFingerprint("retail"));
+        tree.record(provider, configs(service("api-customers"), 9443), ConfigServerConstants.CONFIGS);
+        Assert.assertNotEquals(hash, tree.getFingerprint("").getHash());
+    }
+
+    @Test
+    public void testGlobalsChange() {
+        ConfigMerkleTree tree = new ConfigMerkleTree(KEY, 60);
+        tree.record(provider, configs(service("api-customers"), 8443), ConfigServerConstants.CONFIGS);
+        tree.record(provider, configs(service("api-orders"), 8443), ConfigServerConstants.CONFIGS);
+        tree.record(provider, files(service("api-orders"), "<configuration/>"), ConfigServerConstants.FILES);
+        tree.onChange(new ConfigChangeEvent(ConfigServerConstants.CONFIGS, "retail", ConfigServerConstants.GLOBALS, "v1", "dev", "values.yml"));
+        Assert.assertEquals(Collections.singleton("api-orders"), tree.getFingerprint("retail/v1").getChildren().keySet());
+        Assert.assertEquals(Collections.singleton(ConfigServerConstants.FILES), tree.getFingerprint("retail/v1/api-orders/v1/dev").getChildren().keySet());
+    }
+
+    @Test
+    public void testRefNotRecorded() {
+        ConfigMerkleTree tree = new ConfigMerkleTree(KEY, 0);
+        Service service = service("api-customers");
+        service.setRef("release-1.2");
+        tree.record(provider, configs(service, 8443), ConfigServerConstants.CONFIGS);
+        Assert.assertNull(tree.getFingerprint("retail"));
+    }
+
+    @Test
+    public void testEmptyNotRecorded() {
+        ConfigMerkleTree tree = new ConfigMerkleTree(KEY, 0);
+        ServiceConfigs empty = configs(service("api-unknown"), 8443);
+        empty.setConfigProperties(new HashMap<>());
+        tree.record(provider, empty, ConfigServerConstants.CONFIGS);
+        Assert.assertNull(tree.getFingerprint("retail"));
+
+        // an empty response drops what was recorded before
+        tree.record(provider, configs(service("api-customers"), 8443), ConfigServerConstants.CONFIGS);
+        empty.setService(service("api-customers"));
+        tree.record(provider, empty, ConfigServerConstants.CONFIGS);
+        Assert.assertNull(tree.getFingerprint("retail"));
+    }
+
+    @Test
+    public void testMaxBranches() {
+        ConfigMerkleTree tree = new ConfigMerkleTree(KEY, 0, 2);
+        tree.record(provider, configs(service("api-customers"), 8443), ConfigServerConstants.CONFIGS);
+        tree.record(provider, files(service("api-customers"), "<configuration/>"), ConfigServerConstants.FILES);
+        tree.record(provider, configs(service("api-orders"), 8443), ConfigServerConstants.CONFIGS);
+        Assert.assertNull(tree.getFingerprint("retail/v1/api-orders"));
+        // recorded branches are still refreshed
+        String hash = tree.getFingerprint("").getHash();
+        tree.record(provider, configs(service("api-customers"), 9443), ConfigServerConstants.CONFIGS);
+        Assert.assertNotEquals(hash, tree.getFingerprint("").getHash());
+
+        tree.onChange(new ConfigChangeEvent(ConfigServerConstants.FILES, "retail", "api-customers", "v1", "dev", "logback.xml"));
+        tree.record(provider, configs(service("api-orders"), 8443), ConfigServerConstants.CONFIGS);
+        Assert.assertNotNull(tree.getFingerprint("retail/v1/api-orders"));
+    }
+
+    private static Service service(String serviceName) {
+        Service service = new Service();
+        service.setProjectName("retail");
+        service.setProjectVersion("v1");
+        service.setServiceName(serviceName);
+        service.setServiceVersion("v1");
+        service.setEnvironment("dev");
+        return service;
+    }
+
+    private static ServiceConfigs configs(Service service, int httpsPort) {
+        Map<String, Object> configs = new HashMap<>();
+        configs.put("server.httpsPort", httpsPort);
+        configs.put("server.ioThreads", 4);
+        ServiceConfigs serviceConfigs = new ServiceConfigs();
+        serviceConfigs.setService(service);
+        serviceConfigs.setConfigProperties(configs);
+        return serviceConfigs;
+    }
+
+    private static ServiceConfigs files(Service service, String logback) {
+        Map<String, Object> files = new HashMap<>();
+        files.put("logback.xml", new FileContent(ByteBuffer.wrap(logback.getBytes(StandardCharsets.UTF_8))));
+        ServiceConfigs serviceConfigs = new ServiceConfigs();
+        serviceConfigs.setService(service);
+        serviceConfigs.setConfigProperties(files);
+        return serviceConfigs;
+    }
+
+    private static class StubProvider implements IProvider {
+        @Override
+        public String login(String authorization) {
+            return null;
+        }
+
+        @Override
+        public ServiceConfigs getServiceConfigs(String authToken, Service service) {
+            return null;
+        }
+
+        @Override
+        public ServiceConfigs getServiceCertificates(String authToken, Service service) {
+            return null;
+        }
+
+        @Override
+        public ServiceConfigs getServiceFiles(String authToken, Service service) {
+            return null;
+        }
+
+        @Override
+        public List<Service> searchServices(String authToken, String projectName) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.provider;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+public class ConfigParserTest {
+
+    @Test
+    public void testParseYaml() throws Exception {
+        byte[] content = "server.httpsPort: 9444\nacPrefix: RET\nclient:\n  timeout: 3000\n".getBytes(StandardCharsets.UTF_8);
+        Map<String, Object> configsMap = ConfigParser.parseYaml(content);
+        Assert.assertEquals(3, configsMap.size());
+        Assert.assertEquals(9444, configsMap.get("server.httpsPort"));
+        Assert.assertEquals(3000, ((Map) configsMap.get("client")).get("timeout"));
+    }
+
+    @Test
+    public void testParsedDocumentIsCachedByContent() throws Exception {
+        Map<String, Object> first = ConfigParser.parseYaml("cached: true\n".getBytes(StandardCharsets.UTF_8));
+        Map<String, Object> second = ConfigParser.parseYaml("cached: true\n".getBytes(StandardCharsets.UTF_8));
+        Assert.assertSame(first, second);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testParsedDocumentIsUnmodifiable() throws Exception {
+        ConfigParser.parseYaml("key: value\n".getBytes(StandardCharsets.UTF_8)).put("key", "changed");
+    }
+
+    @Test
+    public void testParseEmptyContent() throws Exception {
+        Assert.assertTrue(ConfigParser.parseYaml(new byte[0]).isEmpty());
+    }
+}
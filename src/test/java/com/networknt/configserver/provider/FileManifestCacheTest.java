@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.provider;
+
+import com.networknt.configserver.constants.ConfigServerConstants;
+import com.networknt.configserver.model.FileContent;
+import com.networknt.configserver.model.FileManifest;
+import com.networknt.configserver.model.FileManifestEntry;
+import com.networknt.configserver.model.Service;
+import com.networknt.configserver.model.ServiceConfigs;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class FileManifestCacheTest {
+
+    @Test
+    public void testBuildManifest() {
+        Map<String, Object> globals = new HashMap<>();
+        globals.put("logback.xml", Base64.getMimeEncoder().encodeToString("global".getBytes(StandardCharsets.UTF_8)));
+        globals.put("hibernate.properties", Base64.getMimeEncoder().encodeToString("abc".getBytes(StandardCharsets.UTF_8)));
+        Map<String, Object> serviceFiles = new HashMap<>();
+        serviceFiles.put("logback.xml", new FileContent(ByteBuffer.wrap("service".getBytes(StandardCharsets.UTF_8))));
+        Map<String, Map<String, Object>> layers = new LinkedHashMap<>();
+        layers.put(ConfigServerConstants.GLOBALS, globals);
+        layers.put(ConfigServerConstants.SERVICE, serviceFiles);
+
+        FileManifest manifest = FileManifestCache.buildManifest(new Service(), layers);
+        Assert.assertEquals(2, manifest.getFiles().size());
+        FileManifestEntry properties = manifest.getFiles().get(0);
+        Assert.assertEquals("hibernate.properties", properties.getName());
+        Assert.assertEquals(3, properties.getSize());
+        Assert.assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", properties.getSha256());
+        Assert.assertEquals(ConfigServerConstants.GLOBALS, properties.getLayer());
+        FileManifestEntry logback = manifest.getFiles().get(1);
+        Assert.assertEquals("logback.xml", logback.getName());
+        Assert.assertEquals(7, logback.getSize());
+        Assert.assertEquals(ConfigServerConstants.SERVICE, logback.getLayer());
+    }
+
+    @Test
+    public void testKeyedByAuthorization() throws Exception {
+        StubProvider provider = new StubProvider();
+        FileManifestCache cache = new FileManifestCache();
+        Service service = new Service();
+        service.setProjectName("retail");
+        service.setEnvironment("dev");
+        // a new token on every login still hits the manifest cached for the same Authorization header
+        cache.getManifest(provider, "Basic cGF5bWVudHM6c2VjcmV0", "s.token1", service, ConfigServerConstants.CERTS);
+        cache.getManifest(provider, "Basic cGF5bWVudHM6c2VjcmV0", "s.token2", service, ConfigServerConstants.CERTS);
+        Assert.assertEquals(1, provider.reads);
+        cache.getManifest(provider, "Basic b3RoZXI6c2VjcmV0", "s.token3", service, ConfigServerConstants.CERTS);
+        Assert.assertEquals(2, provider.reads);
+    }
+
+    private static class StubProvider implements IProvider {
+        private int reads;
+
+        @Override
+        public String login(String authorization) {
+            return authorization;
+        }
+
+        @Override
+        public ServiceConfigs getServiceConfigs(String authToken, Service service) {
+            return null;
+        }
+
+        @Override
+        public ServiceConfigs getServiceCertificates(String authToken, Service service) {
+            reads++;
+            ServiceConfigs serviceConfigs = new ServiceConfigs();
+            serviceConfigs.setService(service);
+            serviceConfigs.setConfigProperties(new HashMap<>());
+            return serviceConfigs;
+        }
+
+        @Override
+        public ServiceConfigs getServiceFiles(String authToken, Service service) {
+            return null;
+        }
+
+        @Override
+        public List<Service> searchServices(String authToken, String projectName) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.provider;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class FileSystemConfigIndexTest {
+    private static final String FILES_DIR = "files/retail/api-customers/v1/dev";
+
+    private Path tempDir;
+    private FileSystemConfigIndex index;
+
+    @Before
+    public void setUp() throws Exception {
+        tempDir = Files.createTempDirectory("light-service-configs");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (index != null) {
+            index.close();
+        }
+        try (Stream<Path> paths = Files.walk(tempDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testContentKeptWhenFileTruncated() throws Exception {
+        Path file = tempDir.resolve(FILES_DIR).resolve("logback.xml");
+        Files.createDirectories(file.getParent());
+        Files.write(file, "<configuration>service</configuration>".getBytes(StandardCharsets.UTF_8));
+        index = new FileSystemConfigIndex(tempDir, 50);
+        index.start();
+        ByteBuffer content = index.getFile(FILES_DIR, "logback.xml");
+
+        // edited in place, e.g. by cp or an editor that truncates the file first
+        Files.write(file, new byte[0]);
+        Assert.assertEquals("<configuration>service</configuration>", toString(content));
+    }
+
+    @Test
+    public void testRootCreatedAfterStart() throws Exception {
+        Path root = tempDir.resolve("configs-dir");
+        index = new FileSystemConfigIndex(root, 50);
+        List<String> changes = new ArrayList<>();
+        index.addListener(event -> {
+            synchronized (changes) {
+                changes.add(event.getName() + "/" + event.getFileName());
+            }
+        });
+        index.start();
+        Assert.assertNull(index.getFile(FILES_DIR, "logback.xml"));
+
+        Path file = root.resolve(FILES_DIR).resolve("logback.xml");
+        Files.createDirectories(file.getParent());
+        Files.write(file, "<configuration/>".getBytes(StandardCharsets.UTF_8));
+        // the file may first be indexed between its creation and the write of its content
+        String content = null;
+        for (int i = 0; i < 100 && !"<configuration/>".equals(content); i++) {
+            Thread.sleep(50);
+            ByteBuffer indexed = index.getFile(FILES_DIR, "logback.xml");
+            content = indexed == null ? null : toString(indexed);
+        }
+        Assert.assertEquals("<configuration/>", content);
+        synchronized (changes) {
+            Assert.assertTrue(changes.contains("api-customers/logback.xml"));
+        }
+    }
+
+    private static String toString(ByteBuffer content) {
+        byte[] bytes = new byte[content.remaining()];
+        content.duplicate().get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
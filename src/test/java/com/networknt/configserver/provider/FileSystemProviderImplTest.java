@@ -20,6 +20,7 @@ import com.networknt.configserver.model.Service;
 import com.networknt.configserver.model.ServiceConfigs;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.networknt.config.Config;
+import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Ignore;
@@ -34,11 +35,17 @@ import org.powermock.core.classloader.annotations.PowerMockIgnore;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.io.FileInputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Base64;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 import static org.mockito.Mockito.*;
 
@@ -46,7 +53,8 @@ import static org.mockito.Mockito.*;
 @PrepareForTest({Config.class, FileSystemProviderImpl.class, ObjectMapper.class, Paths.class})
 @PowerMockIgnore({"com.sun.org.apache.xerces.*", "javax.xml.*", "org.xml.*", "org.w3c.*"})
 public class FileSystemProviderImplTest {
-    private static IProvider fileSystemProvider = new FileSystemProviderImpl();
+    private IProvider fileSystemProvider;
+    private Path configsDir;
     @Mock
     Config config;
     @Mock
@@ -55,40 +63,76 @@ public class FileSystemProviderImplTest {
     ObjectMapper objectMapper;
 
     @Before
-    public void setUp() {
+    public void setUp() throws Exception {
         PowerMockito.mockStatic(Config.class);
         when(Config.getInstance()).thenReturn(config);
         when(config.getMapper()).thenReturn(objectMapper);
+        configsDir = Files.createTempDirectory("light-service-configs");
         Map configDirMap = new HashMap();
-        configDirMap.put("serviceConfigsDir", "/users/userName");
+        configDirMap.put("serviceConfigsDir", configsDir.toString());
         when(config.getJsonMapConfig(anyString())).thenReturn(configDirMap);
+        fileSystemProvider = new FileSystemProviderImpl();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ((FileSystemProviderImpl) fileSystemProvider).close();
+        try (Stream<Path> paths = Files.walk(configsDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
     }
 
     @Test
     public void testGetServiceConfigs() throws Exception {
         mockService();
-        Map<String, Object> globalConfigsMap = new HashMap();
-        globalConfigsMap.put("name", "global networknt");
-        globalConfigsMap.put("global", "global configs");
-        Map<String, Object> serviceConfigsMap = new HashMap();
-        serviceConfigsMap.put("name", "service networknt");
-        serviceConfigsMap.put("service", "service configs");
-        when(config.getJsonMapConfigNoCache(anyString(), anyString())).thenReturn(globalConfigsMap, serviceConfigsMap);
+        writeFile("configs/retail/globals/v1/dev/values.yml", "name: global networknt\nglobal: global configs\n");
+        writeFile("configs/retail/retail-dev/v1/dev/values.yml", "name: service networknt\nservice: service configs\n");
 
         ServiceConfigs serviceConfigs = fileSystemProvider.getServiceConfigs("xyz123", service);
-        verify(config, times(2)).getJsonMapConfigNoCache(anyString(), anyString());
-        Map response = (HashMap) serviceConfigs.getConfigProperties();
+        verify(config, never()).getJsonMapConfigNoCache(anyString(), anyString());
+        Map response = (Map) serviceConfigs.getConfigProperties();
         Assert.assertEquals(3, response.size());
         Assert.assertEquals("service networknt", response.get("name"));
     }
 
+    @Test
+    public void testSearchServices() throws Exception {
+        writeFile("configs/retail/globals/v1/dev/values.yml", "name: global networknt\n");
+        writeFile("configs/retail/retail-dev/v1/dev/values.yml", "name: service networknt\n");
+        writeFile("files/retail/retail-dev/v1/dev/logback.xml", "<configuration/>");
+        writeFile("configs/marketing/api-offers/v2/sit/values.yml", "name: offers\n");
+
+        List<Service> services = fileSystemProvider.searchServices("xyz123", "retail");
+        Assert.assertEquals(1, services.size());
+        Assert.assertEquals("retail-dev", services.get(0).getServiceName());
+        Assert.assertEquals("dev", services.get(0).getEnvironment());
+        Assert.assertEquals(2, fileSystemProvider.searchServices("xyz123", null).size());
+    }
+
+    @Test
+    public void testGetServiceFile() throws Exception {
+        mockService();
+        writeFile("files/retail/globals/v1/dev/logback.xml", "<configuration>global</configuration>");
+        writeFile("files/retail/globals/v1/dev/hibernate.properties", "dialect=h2");
+        writeFile("files/retail/retail-dev/v1/dev/logback.xml", "<configuration>service</configuration>");
+
+        Map response = (Map) fileSystemProvider.getServiceFile("xyz123", service, "logback.xml").getConfigProperties();
+        Assert.assertEquals(1, response.size());
+        Assert.assertEquals(Base64.getMimeEncoder().encodeToString("<configuration>service</configuration>".getBytes(StandardCharsets.UTF_8)),
+                response.get("logback.xml").toString());
+
+        response = (Map) fileSystemProvider.getServiceFile("xyz123", service, "hibernate.properties").getConfigProperties();
+        Assert.assertEquals(1, response.size());
+        Assert.assertTrue(((Map) fileSystemProvider.getServiceFile("xyz123", service, "missing.xml").getConfigProperties()).isEmpty());
+    }
+
     @Test
     @Ignore
     public void testGetServiceCertificates() throws Exception {
         mockService();
         mockConfigDir();
         ServiceConfigs serviceConfigs = fileSystemProvider.getServiceCertificates("xyz123", service);
-        Map response = (HashMap) serviceConfigs.getConfigProperties();
+        Map response = (Map) serviceConfigs.getConfigProperties();
         Assert.assertEquals(1, response.size());
         PowerMockito.verifyStatic(FileSystemProviderImplTest.class, VerificationModeFactory.times(2));
         Paths.get(anyString());
@@ -100,7 +144,7 @@ public class FileSystemProviderImplTest {
         mockService();
         mockConfigDir();
         ServiceConfigs serviceConfigs = fileSystemProvider.getServiceFiles("xyz123", service);
-        Map response = (HashMap) serviceConfigs.getConfigProperties();
+        Map response = (Map) serviceConfigs.getConfigProperties();
         Assert.assertEquals(1, response.size());
         PowerMockito.verifyStatic(FileSystemProviderImplTest.class, VerificationModeFactory.times(2));
         Paths.get(anyString());
@@ -114,6 +158,12 @@ public class FileSystemProviderImplTest {
         PowerMockito.whenNew(FileInputStream.class).withArguments(anyString()).thenReturn(fileInputStream);
     }
 
+    private void writeFile(String relativePath, String content) throws Exception {
+        Path file = configsDir.resolve(relativePath);
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
     private void mockService() {
         when(service.getProjectName()).thenReturn("retail");
         when(service.getProjectVersion()).thenReturn("v1");
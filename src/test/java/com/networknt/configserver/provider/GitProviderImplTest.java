@@ -104,19 +104,57 @@ public class GitProviderImplTest {
         configsMap.put("content", configsContent);
         when(objectMapper.readValue(anyString(), Mockito.<TypeReference<Map<String, Object>>>any())).thenReturn(configsMap, getConfigsMap());
         ServiceConfigs serviceConfigs = gitProvider.getServiceConfigs("Bearer b4285895f0e67", service);
-        Map response = (HashMap) serviceConfigs.getConfigProperties();
+        Map response = (Map) serviceConfigs.getConfigProperties();
         verify(httpClient, times(2)).execute(httpGet);
         Assert.assertEquals(3, response.size());
         Assert.assertEquals(9444, response.get("server.httpsPort"));
     }
 
+    @Test
+    public void testIsCommitSha() {
+        Assert.assertTrue(GitProviderImpl.isCommitSha("0c7d9a6b3e2f4a1d8c5b7e9f0a2d4c6e8b1a3f5d"));
+        Assert.assertTrue(GitProviderImpl.isCommitSha("0c7d9a6b3e2f4a1d8c5b7e9f0a2d4c6e8b1a3f5d0c7d9a6b3e2f4a1d8c5b7e9f"));
+        Assert.assertFalse(GitProviderImpl.isCommitSha("0c7d9a6"));
+        Assert.assertFalse(GitProviderImpl.isCommitSha("release-1.2"));
+        Assert.assertFalse(GitProviderImpl.isCommitSha("main"));
+        Assert.assertFalse(GitProviderImpl.isCommitSha("refs/tags/0c7d9a6b3e2f4a1d8c5b7e9f0a2d4c6e8b1a3f5d"));
+        Assert.assertFalse(GitProviderImpl.isCommitSha(null));
+    }
+
+    @Test
+    public void testImmutableOnlyAtCommitSha() throws Exception {
+        mockService();
+        when(objectMapper.readValue(anyString(), Mockito.<TypeReference<Map<String, Object>>>any())).thenReturn(new HashMap<>());
+        when(service.getRef()).thenReturn(null);
+        Assert.assertFalse(gitProvider.getServiceConfigs("Bearer b4285895f0e67", service).isImmutable());
+        // branches and tags can move, so responses read at them are not immutable
+        when(service.getRef()).thenReturn("main");
+        Assert.assertFalse(gitProvider.getServiceConfigs("Bearer b4285895f0e67", service).isImmutable());
+        when(service.getRef()).thenReturn("v1.2.0");
+        Assert.assertFalse(gitProvider.getServiceFile("Bearer b4285895f0e67", service, "logback.xml").isImmutable());
+        when(service.getRef()).thenReturn("0c7d9a6b3e2f4a1d8c5b7e9f0a2d4c6e8b1a3f5d");
+        Assert.assertTrue(gitProvider.getServiceConfigs("Bearer b4285895f0e67", service).isImmutable());
+        Assert.assertTrue(gitProvider.getServiceFile("Bearer b4285895f0e67", service, "logback.xml").isImmutable());
+    }
+
+    @Test
+    public void testFileNameEncoded() throws Exception {
+        mockService();
+        when(objectMapper.readValue(anyString(), Mockito.<TypeReference<Map<String, Object>>>any())).thenReturn(new HashMap<>());
+        when(service.getRef()).thenReturn("main");
+        gitProvider.getServiceFile("Bearer b4285895f0e67", service, "x?ref=0c7d9a6b3e2f4a1d8c5b7e9f0a2d4c6e8b1a3f5d# y.pem");
+        // the name can not override the requested ref
+        PowerMockito.verifyNew(HttpGet.class, atLeastOnce()).withArguments(
+                endsWith("/x%3Fref%3D0c7d9a6b3e2f4a1d8c5b7e9f0a2d4c6e8b1a3f5d%23%20y.pem?ref=main"));
+    }
+
     /*
     @Test
     public void testGetServiceCertificates() throws Exception {
         mockService();
         mockFileNamesAndFileContent();
         ServiceConfigs serviceConfigs = gitProvider.getServiceCertificates("Bearer b4285895f0e67", service);
-        Map certsMap = (HashMap) serviceConfigs.getConfigProperties();
+        Map certsMap = (Map) serviceConfigs.getConfigProperties();
         Assert.assertEquals(1, certsMap.size());
         verify(httpClient, times(4)).execute(httpGet);
     }
@@ -126,7 +164,7 @@ public class GitProviderImplTest {
         mockService();
         mockFileNamesAndFileContent();
         ServiceConfigs serviceConfigs = gitProvider.getServiceFiles("Bearer b4285895f0e67", service);
-        Map filesMap = (HashMap) serviceConfigs.getConfigProperties();
+        Map filesMap = (Map) serviceConfigs.getConfigProperties();
         Assert.assertEquals(1, filesMap.size());
         verify(httpClient, times(4)).execute(httpGet);
     }
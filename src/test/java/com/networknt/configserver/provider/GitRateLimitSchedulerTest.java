@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.provider;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GitRateLimitSchedulerTest {
+
+    @Test
+    public void testUnknownBudgetAdmitsAllLanes() {
+        GitRateLimitScheduler scheduler = new GitRateLimitScheduler(10, 50, 2);
+        Assert.assertTrue(scheduler.hasBudget(GitRateLimitScheduler.Priority.INTERACTIVE));
+        Assert.assertTrue(scheduler.hasBudget(GitRateLimitScheduler.Priority.BACKGROUND));
+        Assert.assertTrue(scheduler.hasBudget(GitRateLimitScheduler.Priority.CATALOG));
+    }
+
+    @Test
+    public void testReserveKeptForInteractiveLane() {
+        GitRateLimitScheduler scheduler = new GitRateLimitScheduler(10, 50, 2);
+        long reset = System.currentTimeMillis() / 1000 + 3600;
+        scheduler.update("30", String.valueOf(reset), null);
+        Assert.assertTrue(scheduler.hasBudget(GitRateLimitScheduler.Priority.INTERACTIVE));
+        Assert.assertTrue(scheduler.hasBudget(GitRateLimitScheduler.Priority.BACKGROUND));
+        Assert.assertFalse(scheduler.hasBudget(GitRateLimitScheduler.Priority.CATALOG));
+
+        scheduler.update("5", String.valueOf(reset), null);
+        Assert.assertTrue(scheduler.tryAcquire(GitRateLimitScheduler.Priority.INTERACTIVE));
+        Assert.assertFalse(scheduler.tryAcquire(GitRateLimitScheduler.Priority.BACKGROUND));
+        scheduler.release(GitRateLimitScheduler.Priority.INTERACTIVE);
+
+        scheduler.update("0", String.valueOf(reset), null);
+        Assert.assertFalse(scheduler.tryAcquire(GitRateLimitScheduler.Priority.INTERACTIVE));
+    }
+
+    @Test
+    public void testBudgetRestoredAfterReset() {
+        GitRateLimitScheduler scheduler = new GitRateLimitScheduler(10, 50, 2);
+        long reset = System.currentTimeMillis() / 1000 - 1;
+        scheduler.update("0", String.valueOf(reset), null);
+        Assert.assertTrue(scheduler.hasBudget(GitRateLimitScheduler.Priority.CATALOG));
+        Assert.assertEquals(-1, scheduler.getRemaining());
+    }
+
+    @Test
+    public void testIsRateLimited() {
+        Assert.assertTrue(GitRateLimitScheduler.isRateLimited(403, "0", null));
+        Assert.assertTrue(GitRateLimitScheduler.isRateLimited(403, "12", "60"));
+        Assert.assertTrue(GitRateLimitScheduler.isRateLimited(429, null, null));
+        Assert.assertFalse(GitRateLimitScheduler.isRateLimited(403, "12", null));
+        Assert.assertFalse(GitRateLimitScheduler.isRateLimited(404, "0", null));
+    }
+}
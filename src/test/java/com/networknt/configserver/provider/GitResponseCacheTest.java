@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.provider;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GitResponseCacheTest {
+    private static String body(int length) {
+        StringBuilder body = new StringBuilder();
+        while (body.length() < length) {
+            body.append('a');
+        }
+        return body.toString();
+    }
+
+    @Test
+    public void testBoundedByBytes() {
+        GitResponseCache cache = new GitResponseCache(100, 1000);
+        cache.put("k1", body(398));
+        cache.put("k2", body(398));
+        Assert.assertEquals(800, cache.getBytes());
+        cache.get("k1");
+        // the least recently used entry goes first
+        cache.put("k3", body(398));
+        Assert.assertNull(cache.get("k2"));
+        Assert.assertNotNull(cache.get("k1"));
+        Assert.assertNotNull(cache.get("k3"));
+        Assert.assertEquals(800, cache.getBytes());
+
+        cache.put("k1", body(98));
+        Assert.assertEquals(500, cache.getBytes());
+        // larger than the whole budget, not cached and nothing else evicted
+        cache.put("k4", body(1000));
+        Assert.assertNull(cache.get("k4"));
+        Assert.assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testBoundedBySize() {
+        GitResponseCache cache = new GitResponseCache(2, 1000);
+        cache.put("k1", "1");
+        cache.put("k2", "2");
+        cache.put("k3", "3");
+        Assert.assertEquals(2, cache.size());
+        Assert.assertNull(cache.get("k1"));
+        Assert.assertEquals(6, cache.getBytes());
+    }
+
+    @Test
+    public void testMaxAge() throws Exception {
+        GitResponseCache cache = new GitResponseCache(2, 1000, 50);
+        cache.put("k1", "1");
+        Assert.assertEquals("1", cache.get("k1"));
+        Thread.sleep(100);
+        // expired entries are dropped when read
+        Assert.assertNull(cache.get("k1"));
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(0, cache.getBytes());
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.provider;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class IProviderTest {
+
+    @Test
+    public void testIsValidFileName() {
+        Assert.assertTrue(IProvider.isValidFileName("client.truststore"));
+        Assert.assertTrue(IProvider.isValidFileName("zertifikat-\u00e4.pem"));
+        Assert.assertFalse(IProvider.isValidFileName(null));
+        Assert.assertFalse(IProvider.isValidFileName(" "));
+        Assert.assertFalse(IProvider.isValidFileName(".."));
+        Assert.assertFalse(IProvider.isValidFileName("../secret"));
+        Assert.assertFalse(IProvider.isValidFileName("certs\\client.keystore"));
+        Assert.assertFalse(IProvider.isValidFileName("x.pem\r\nContent-Type: text/html"));
+        Assert.assertFalse(IProvider.isValidFileName("x\u0000.pem"));
+    }
+
+    @Test
+    public void testEncodeFileName() {
+        Assert.assertEquals("client.truststore", IProvider.encodeFileName("client.truststore"));
+        // a query or fragment can not be smuggled into the backend URL, e.g. to override the Git ref
+        Assert.assertEquals("x%3Fref%3Dmain%23", IProvider.encodeFileName("x?ref=main#"));
+        Assert.assertEquals("my%20cert%25.pem", IProvider.encodeFileName("my cert%.pem"));
+        Assert.assertEquals("zertifikat-%C3%A4.pem", IProvider.encodeFileName("zertifikat-\u00e4.pem"));
+    }
+}
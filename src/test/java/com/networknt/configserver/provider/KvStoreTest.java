@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.provider;
+
+import com.networknt.configserver.model.ConfigChangeEvent;
+import com.networknt.configserver.model.FileContent;
+import com.networknt.configserver.model.Service;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.Stream;
+
+public class KvStoreTest {
+    private Path dir;
+    private Path file;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("light-service-configs-kv");
+        file = dir.resolve("configs.kv");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testPutGetDelete() throws Exception {
+        try (KvStore store = new KvStore(file)) {
+            store.put("files/retail/api-customers/v1/dev/logback.xml", bytes("<configuration/>"));
+            ByteBuffer value = store.get("files/retail/api-customers/v1/dev/logback.xml");
+            store.put("files/retail/api-customers/v1/dev/logback.xml", bytes("<configuration debug=\"true\"/>"));
+            // a value already read is not changed by a later write
+            Assert.assertEquals(ByteBuffer.wrap(bytes("<configuration/>")), value);
+            Assert.assertEquals(ByteBuffer.wrap(bytes("<configuration debug=\"true\"/>")), store.get("files/retail/api-customers/v1/dev/logback.xml"));
+            Assert.assertTrue(store.delete("files/retail/api-customers/v1/dev/logback.xml"));
+            Assert.assertFalse(store.delete("files/retail/api-customers/v1/dev/logback.xml"));
+            Assert.assertNull(store.get("files/retail/api-customers/v1/dev/logback.xml"));
+        }
+    }
+
+    @Test
+    public void testKeysRangeScan() throws Exception {
+        try (KvStore store = new KvStore(file)) {
+            store.put("configs/retail/api-orders/v1/dev/values.yml", bytes("a: 1"));
+            store.put("configs/retail/api-customers/v1/dev/values.yml", bytes("a: 1"));
+            store.put("configs/retailer/api-customers/v1/dev/values.yml", bytes("a: 1"));
+            Assert.assertEquals(Arrays.asList("configs/retail/api-customers/v1/dev/values.yml", "configs/retail/api-orders/v1/dev/values.yml"),
+                    store.keys("configs/retail/"));
+        }
+    }
+
+    @Test
+    public void testReopenDropsTornRecord() throws Exception {
+        try (KvStore store = new KvStore(file)) {
+            store.put("certs/retail/globals/v1/dev/client.truststore", bytes("truststore"));
+            store.delete("certs/retail/globals/v1/dev/client.truststore");
+            store.put("certs/retail/globals/v1/dev/client.keystore", bytes("keystore"));
+        }
+        long size = Files.size(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            // a record cut short by a crash
+            channel.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 4, 0, 0}), size);
+        }
+        try (KvStore store = new KvStore(file)) {
+            Assert.assertEquals(1, store.count());
+            Assert.assertEquals(ByteBuffer.wrap(bytes("keystore")), store.get("certs/retail/globals/v1/dev/client.keystore"));
+        }
+        Assert.assertEquals(size, Files.size(file));
+    }
+
+    @Test
+    public void testPutsWrittenIntoOneMapping() throws Exception {
+        byte[] value = new byte[1024];
+        try (KvStore store = new KvStore(file)) {
+            for (int i = 0; i < 1000; i++) {
+                store.put("files/retail/api-customers/v1/dev/file-" + i, value);
+            }
+            // 1 MB of records fits in the room mapped when the store was opened
+            Assert.assertEquals(1, store.getMappings());
+            for (int i = 0; i < 5000; i++) {
+                store.put("files/retail/api-orders/v1/dev/file-" + i, value);
+            }
+            Assert.assertTrue(store.getMappings() <= 3);
+            Assert.assertEquals(6000, store.count());
+        }
+        try (KvStore store = new KvStore(file)) {
+            Assert.assertEquals(6000, store.count());
+            Assert.assertEquals(ByteBuffer.wrap(value), store.get("files/retail/api-orders/v1/dev/file-4999"));
+        }
+    }
+
+    @Test
+    public void testReopenNotClosed() throws Exception {
+        Path crashed = dir.resolve("crashed.kv");
+        try (KvStore store = new KvStore(file)) {
+            store.put("configs/retail/globals/v1/dev/values.yml", bytes("version: 1"));
+            // the file as a crash leaves it, with the zero-filled tail
+            Files.copy(file, crashed);
+        }
+        Assert.assertTrue(Files.size(crashed) > 1024 * 1024);
+        try (KvStore store = new KvStore(crashed)) {
+            Assert.assertEquals(1, store.count());
+            store.put("configs/retail/globals/v1/sit/values.yml", bytes("version: 1"));
+        }
+        try (KvStore store = new KvStore(crashed)) {
+            Assert.assertEquals(2, store.count());
+        }
+    }
+
+    @Test
+    public void testCompact() throws Exception {
+        try (KvStore store = new KvStore(file)) {
+            for (int i = 0; i < 10; i++) {
+                store.put("configs/retail/globals/v1/dev/values.yml", bytes("version: " + i));
+            }
+            store.put("configs/retail/globals/v1/sit/values.yml", bytes("version: 0"));
+            ByteBuffer before = store.get("configs/retail/globals/v1/dev/values.yml");
+            Assert.assertTrue(store.getGarbage() > 0);
+            store.compact();
+            Assert.assertEquals(0, store.getGarbage());
+            Assert.assertEquals(before, store.get("configs/retail/globals/v1/dev/values.yml"));
+            Assert.assertEquals(ByteBuffer.wrap(bytes("version: 0")), store.get("configs/retail/globals/v1/sit/values.yml"));
+            store.put("configs/retail/globals/v1/prod/values.yml", bytes("version: 1"));
+        }
+        try (KvStore store = new KvStore(file)) {
+            Assert.assertEquals(3, store.count());
+            Assert.assertEquals(ByteBuffer.wrap(bytes("version: 9")), store.get("configs/retail/globals/v1/dev/values.yml"));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotAStore() throws Exception {
+        Files.write(file, bytes("server.httpsPort: 8443"));
+        new KvStore(file);
+    }
+
+    @Test
+    public void testProviderImport() throws Exception {
+        Path configs = dir.resolve("configs");
+        write(configs.resolve("configs/retail/globals/v1/dev/values.json"), "{\"server.httpsPort\": 8443, \"server.ioThreads\": 4}");
+        write(configs.resolve("configs/retail/api-customers/v1/dev/values.json"), "{\"server.httpsPort\": 9443}");
+        write(configs.resolve("files/retail/api-customers/v1/dev/logback.xml"), "<configuration/>");
+        try (KvStore store = new KvStore(file)) {
+            KvStoreProviderImpl provider = new KvStoreProviderImpl(store);
+            List<ConfigChangeEvent> events = new ArrayList<>();
+            provider.addChangeListener(events::add);
+            Assert.assertEquals(3, provider.importDirectory(configs));
+            Assert.assertEquals(0, provider.importDirectory(configs));
+
+            Map<?, ?> values = (Map<?, ?>) provider.getServiceConfigs(null, service()).getConfigProperties();
+            Assert.assertEquals(9443, values.get("server.httpsPort"));
+            Assert.assertEquals(4, values.get("server.ioThreads"));
+            Map<?, ?> files = (Map<?, ?>) provider.getServiceFile(null, service(), "logback.xml").getConfigProperties();
+            Assert.assertEquals(ByteBuffer.wrap(bytes("<configuration/>")), FileContent.toBuffer(files.get("logback.xml")));
+            Service listed = service();
+            listed.setProjectVersion(null);
+            Assert.assertEquals(Collections.singletonList(listed), provider.searchServices(null, "retail"));
+
+            Files.delete(configs.resolve("files/retail/api-customers/v1/dev/logback.xml"));
+            events.clear();
+            Assert.assertEquals(1, provider.importDirectory(configs));
+            Assert.assertEquals("logback.xml", events.get(0).getFileName());
+            Assert.assertTrue(((Map<?, ?>) provider.getServiceFiles(null, service()).getConfigProperties()).isEmpty());
+        }
+    }
+
+    private static Service service() {
+        Service service = new Service();
+        service.setProjectName("retail");
+        service.setProjectVersion("v1");
+        service.setServiceName("api-customers");
+        service.setServiceVersion("v1");
+        service.setEnvironment("dev");
+        return service;
+    }
+
+    private static void write(Path path, String content) throws IOException {
+        Files.createDirectories(path.getParent());
+        Files.write(path, bytes(content));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.provider;
+
+import com.networknt.configserver.constants.ConfigServerConstants;
+import com.networknt.configserver.model.ConfigChangeEvent;
+import com.networknt.configserver.model.FileContent;
+import com.networknt.configserver.model.Service;
+import com.networknt.configserver.model.ServiceConfigs;
+import com.networknt.exception.ApiException;
+import com.networknt.status.Status;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+public class MirrorSyncTest {
+    private final StubProvider source = new StubProvider();
+    private final List<ConfigChangeEvent> events = new ArrayList<>();
+    private Path mirrorDir;
+    private MirrorSync mirror;
+
+    @Before
+    public void setUp() throws Exception {
+        mirrorDir = Files.createTempDirectory("light-service-configs-mirror");
+        mirror = new MirrorSync(source, new DirectoryMirrorStore(mirrorDir), "Bearer abc");
+        mirror.addListener(events::add);
+        source.configs.put("server.httpsPort", 8443);
+        source.files.put("logback.xml", "<configuration/>");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Stream<Path> files = Files.walk(mirrorDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testServedFromMirrorAfterSync() throws Exception {
+        MirrorProviderImpl provider = new MirrorProviderImpl(mirror);
+        Assert.assertEquals(8443, ((Map<?, ?>) provider.getServiceConfigs("token", service()).getConfigProperties()).get("server.httpsPort"));
+        Assert.assertEquals(1, source.reads);
+
+        Assert.assertEquals(2, mirror.syncChanged());
+        source.configs.put("server.httpsPort", 9443);
+        Map<?, ?> configs = (Map<?, ?>) provider.getServiceConfigs("token", service()).getConfigProperties();
+        Assert.assertEquals(8443, configs.get("server.httpsPort"));
+        Map<?, ?> files = (Map<?, ?>) provider.getServiceFiles("token", service()).getConfigProperties();
+        Assert.assertEquals(ByteBuffer.wrap("<configuration/>".getBytes(StandardCharsets.UTF_8)), FileContent.toBuffer(files.get("logback.xml")));
+        Assert.assertEquals(Collections.singletonList(service()), provider.searchServices("token", "retail"));
+        // the read through granted the configs to the token, the files are checked once
+        Assert.assertEquals(5, source.reads);
+        provider.getServiceFiles("token", service());
+        Assert.assertEquals(5, source.reads);
+    }
+
+    @Test
+    public void testMirroredServiceCheckedPerToken() throws Exception {
+        MirrorProviderImpl provider = new MirrorProviderImpl(mirror);
+        mirror.addService(service());
+        mirror.syncAll();
+        source.denied.add("other");
+        try {
+            provider.getServiceConfigs("other", service());
+            Assert.fail("served a mirrored service to a token the source denies");
+        } catch (ApiException e) {
+            // denied by the source
+        }
+        Assert.assertEquals(8443, ((Map<?, ?>) provider.getServiceConfigs("token", service()).getConfigProperties()).get("server.httpsPort"));
+    }
+
+    @Test
+    public void testGrantedPerAuthorization() throws Exception {
+        MirrorProviderImpl provider = new MirrorProviderImpl(mirror);
+        mirror.addService(service());
+        mirror.syncAll();
+        source.newTokenPerLogin = true;
+        int reads = source.reads;
+        provider.getServiceConfigs(provider.login("Bearer payments"), service());
+        Assert.assertEquals(reads + 1, source.reads);
+        // a new token for the same Authorization header is still granted
+        provider.getServiceConfigs(provider.login("Bearer payments"), service());
+        Assert.assertEquals(reads + 1, source.reads);
+        provider.getServiceConfigs(provider.login("Bearer other"), service());
+        Assert.assertEquals(reads + 2, source.reads);
+    }
+
+    @Test
+    public void testUnchangedRevisionSkipped() throws Exception {
+        source.revision = "a";
+        mirror.addService(service());
+        Assert.assertEquals(2, mirror.syncAll());
+        int reads = source.reads;
+        Assert.assertEquals(0, mirror.syncAll());
+        Assert.assertEquals(reads, source.reads);
+
+        source.configs.put("server.httpsPort", 9443);
+        source.revision = "b";
+        Assert.assertEquals(1, mirror.syncAll());
+        Assert.assertEquals(reads + 3, source.reads);
+    }
+
+    @Test
+    public void testFailingListener() throws Exception {
+        mirror.addListener(event -> {
+            throw new IllegalStateException("listener failed");
+        });
+        mirror.addService(service());
+        Assert.assertEquals(2, mirror.syncAll());
+        Assert.assertEquals(2, events.size());
+        Assert.assertTrue(mirror.isMirrored(service()));
+    }
+
+    @Test
+    public void testOnlyChangedKeysWritten() throws Exception {
+        mirror.addService(service());
+        Assert.assertEquals(2, mirror.syncAll());
+        Assert.assertEquals(0, mirror.syncAll());
+
+        source.files.remove("logback.xml");
+        source.files.put("hibernate.properties", "hibernate.show_sql=true");
+        events.clear();
+        Assert.assertEquals(2, mirror.syncAll());
+        Assert.assertEquals(2, events.size());
+        Assert.assertEquals(Collections.singletonList("files/retail/v1/api-customers/v1/dev/hibernate.properties"),
+                mirror.getStore().keys("files/"));
+    }
+
+    @Test
+    public void testChangedServicesSynced() throws Exception {
+        mirror.addService(service());
+        mirror.syncChanged();
+        Assert.assertEquals(0, mirror.syncChanged());
+
+        source.configs.put("server.httpsPort", 9443);
+        mirror.onChange(new ConfigChangeEvent(ConfigServerConstants.CONFIGS, "retail", ConfigServerConstants.GLOBALS, "v1", "dev", "values.yml"));
+        Assert.assertEquals(1, mirror.syncChanged());
+        Assert.assertEquals(ConfigServerConstants.CONFIGS, events.get(events.size() - 1).getConfigType());
+    }
+
+    @Test
+    public void testLoadServices() throws Exception {
+        mirror.addService(service());
+        mirror.syncAll();
+        MirrorSync restarted = new MirrorSync(source, new DirectoryMirrorStore(mirrorDir), "Bearer abc");
+        Assert.assertFalse(restarted.isMirrored(service()));
+        restarted.loadServices();
+        Assert.assertTrue(restarted.isMirrored(service()));
+        Service atRef = service();
+        atRef.setRef("release-1.2");
+        Assert.assertFalse(restarted.isMirrored(atRef));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidKey() throws Exception {
+        new DirectoryMirrorStore(mirrorDir).get("configs/../secret");
+    }
+
+    private static Service service() {
+        Service service = new Service();
+        service.setProjectName("retail");
+        service.setProjectVersion("v1");
+        service.setServiceName("api-customers");
+        service.setServiceVersion("v1");
+        service.setEnvironment("dev");
+        return service;
+    }
+
+    private static class StubProvider implements IProvider {
+        private final Map<String, Object> configs = new HashMap<>();
+        private final Map<String, Object> files = new HashMap<>();
+        private final Set<String> denied = new HashSet<>();
+        private String revision;
+        private int reads;
+        private boolean newTokenPerLogin;
+        private int logins;
+
+        @Override
+        public String login(String authorization) {
+            return newTokenPerLogin ? "s.token" + ++logins : authorization;
+        }
+
+        @Override
+        public ServiceConfigs getServiceConfigs(String authToken, Service service) throws ApiException {
+            check(authToken, ConfigServerConstants.CONFIGS);
+            return serviceConfigs(service, new HashMap<>(configs));
+        }
+
+        @Override
+        public ServiceConfigs getServiceCertificates(String authToken, Service service) throws ApiException {
+            check(authToken, ConfigServerConstants.CERTS);
+            return serviceConfigs(service, new HashMap<>());
+        }
+
+        @Override
+        public ServiceConfigs getServiceFiles(String authToken, Service service) throws ApiException {
+            check(authToken, ConfigServerConstants.FILES);
+            Map<String, Object> encoded = new HashMap<>();
+            files.forEach((name, content) -> encoded.put(name,
+                    Base64.getMimeEncoder().encodeToString(content.toString().getBytes(StandardCharsets.UTF_8))));
+            return serviceConfigs(service, encoded);
+        }
+
+        @Override
+        public String getRevision(String authToken, Service service) {
+            return revision;
+        }
+
+        private void check(String authToken, String configType) throws ApiException {
+            if (denied.contains(authToken)) {
+                throw new ApiException(new Status("ACS00001", 403, configType + " denied to " + authToken));
+            }
+        }
+
+        @Override
+        public List<Service> searchServices(String authToken, String projectName) {
+            return null;
+        }
+
+        private ServiceConfigs serviceConfigs(Service service, Map<String, Object> configProperties) {
+            reads++;
+            ServiceConfigs serviceConfigs = new ServiceConfigs();
+            serviceConfigs.setService(service);
+            serviceConfigs.setConfigProperties(configProperties);
+            return serviceConfigs;
+        }
+    }
+}
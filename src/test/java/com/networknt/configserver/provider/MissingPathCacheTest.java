@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.provider;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+
+public class MissingPathCacheTest {
+    private static final String GLOBALS_CERTS = "/v1/certs/data/retail/globals/v1/dev";
+
+    @Test
+    public void testMissingUntilTtl() throws Exception {
+        MissingPathCache cache = new MissingPathCache();
+        Assert.assertFalse(cache.isMissing(GLOBALS_CERTS));
+        cache.add(GLOBALS_CERTS, 1);
+        Assert.assertTrue(cache.isMissing(GLOBALS_CERTS));
+        Assert.assertFalse(cache.isMissing("/v1/certs/data/retail/api-customers/v1/dev"));
+
+        Thread.sleep(1100);
+        Assert.assertFalse(cache.isMissing(GLOBALS_CERTS));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testDisabled() {
+        MissingPathCache cache = new MissingPathCache();
+        cache.add(GLOBALS_CERTS, MissingPathCache.getTtl(Collections.singletonMap(MissingPathCache.MISSING_PATH_TTL, 0)));
+        Assert.assertFalse(cache.isMissing(GLOBALS_CERTS));
+        Assert.assertEquals(30, MissingPathCache.getTtl(null));
+    }
+
+    @Test
+    public void testManyPaths() {
+        MissingPathCache cache = new MissingPathCache();
+        for (int i = 0; i < 20000; i++) {
+            cache.add("/v1/files/data/retail/api-" + i + "/v1/dev", 30);
+        }
+        // bounded; paths over the limit are simply requested again
+        Assert.assertEquals(10000, cache.size());
+        Assert.assertTrue(cache.isMissing("/v1/files/data/retail/api-0/v1/dev"));
+        Assert.assertFalse(cache.isMissing("/v1/files/data/retail/api-19999/v1/dev"));
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            falsePositives += cache.isMissing("/v1/configs/data/retail/api-" + i + "/v1/dev") ? 1 : 0;
+        }
+        Assert.assertEquals(0, falsePositives);
+    }
+}
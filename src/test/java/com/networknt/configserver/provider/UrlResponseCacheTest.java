@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2016 Network New Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.networknt.configserver.provider;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UrlResponseCacheTest {
+    private static final byte[] BODY = "key: value".getBytes();
+
+    @Test
+    public void testGetMaxAge() {
+        Assert.assertEquals(60, UrlResponseCache.getMaxAge("public, max-age=60"));
+        Assert.assertEquals(0, UrlResponseCache.getMaxAge("public"));
+        Assert.assertEquals(0, UrlResponseCache.getMaxAge("max-age=abc"));
+        Assert.assertEquals(0, UrlResponseCache.getMaxAge(null));
+    }
+
+    @Test
+    public void testFreshForMaxAge() {
+        UrlResponseCache cache = new UrlResponseCache();
+        cache.put("key", BODY, "max-age=60", null, null, 1000);
+        UrlResponseCache.CachedResponse cached = cache.get("key");
+        Assert.assertArrayEquals(BODY, cached.body);
+        Assert.assertTrue(cached.isFresh(60999));
+        Assert.assertFalse(cached.isFresh(61000));
+    }
+
+    @Test
+    public void testNotCacheable() {
+        UrlResponseCache cache = new UrlResponseCache();
+        cache.put("key", BODY, "no-store, max-age=60", "\"v1\"", null, 1000);
+        Assert.assertNull(cache.get("key"));
+        cache.put("key", BODY, null, null, null, 1000);
+        Assert.assertNull(cache.get("key"));
+    }
+
+    @Test
+    public void testRevalidated() {
+        UrlResponseCache cache = new UrlResponseCache();
+        cache.put("key", BODY, "no-cache", "\"v1\"", "Mon, 12 Oct 2020 10:00:00 GMT", 1000);
+        UrlResponseCache.CachedResponse cached = cache.get("key");
+        Assert.assertFalse(cached.isFresh(1000));
+        Assert.assertEquals("\"v1\"", cached.etag);
+
+        UrlResponseCache.CachedResponse revalidated = cache.revalidated("key", "max-age=10", null, null, 2000);
+        Assert.assertArrayEquals(BODY, revalidated.body);
+        Assert.assertEquals("\"v1\"", revalidated.etag);
+        Assert.assertEquals("Mon, 12 Oct 2020 10:00:00 GMT", revalidated.lastModified);
+        Assert.assertTrue(revalidated.isFresh(11999));
+        Assert.assertNull(cache.revalidated("missing", "max-age=10", null, null, 2000));
+    }
+
+    @Test
+    public void testBoundedByBytes() {
+        UrlResponseCache cache = new UrlResponseCache(100, 1000);
+        cache.put("k1", new byte[398], "max-age=60", null, null, 1000);
+        cache.put("k2", new byte[398], "max-age=60", null, null, 1000);
+        Assert.assertEquals(800, cache.getBytes());
+        cache.get("k1");
+        // the least recently used entry goes first
+        cache.put("k3", new byte[398], "max-age=60", null, null, 1000);
+        Assert.assertNull(cache.get("k2"));
+        Assert.assertNotNull(cache.get("k1"));
+        Assert.assertNotNull(cache.get("k3"));
+        Assert.assertEquals(800, cache.getBytes());
+
+        cache.revalidated("k1", "max-age=60", null, null, 2000);
+        Assert.assertEquals(800, cache.getBytes());
+        cache.remove("k3");
+        Assert.assertEquals(400, cache.getBytes());
+        // larger than the whole budget, not cached and nothing else evicted
+        cache.put("k4", new byte[1000], "max-age=60", null, null, 1000);
+        Assert.assertNull(cache.get("k4"));
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testBoundedBySize() {
+        UrlResponseCache cache = new UrlResponseCache(2, 1000);
+        cache.put("k1", BODY, "max-age=60", null, null, 1000);
+        cache.put("k2", BODY, "max-age=60", null, null, 1000);
+        cache.put("k3", BODY, "max-age=60", null, null, 1000);
+        Assert.assertEquals(2, cache.size());
+        Assert.assertNull(cache.get("k1"));
+        Assert.assertEquals(24, cache.getBytes());
+    }
+}
@@ -102,7 +102,7 @@ public class VaultProviderImplTest {
         configsMap = getConfigsMap(configsMap);
         when(objectMapper.readValue(anyString(), Mockito.<TypeReference<Map<String, Object>>>any())).thenReturn(configsMap);
         ServiceConfigs serviceConfigs = vaultProvider.getServiceConfigs("xyz123", service);
-        Map response = (HashMap) serviceConfigs.getConfigProperties();
+        Map response = (Map) serviceConfigs.getConfigProperties();
         verify(httpClientBuilder, times(2)).send();
         Assert.assertEquals(2, response.size());
         Assert.assertEquals("networknt", response.get("company"));
@@ -117,7 +117,7 @@ public class VaultProviderImplTest {
         certsMap = getConfigsMap(certsMap);
         when(objectMapper.readValue(anyString(), Mockito.<TypeReference<Map<String, Object>>>any())).thenReturn(certsMap);
         ServiceConfigs serviceCerts = vaultProvider.getServiceCertificates("123xyx", service);
-        Map response = (HashMap) serviceCerts.getConfigProperties();
+        Map response = (Map) serviceCerts.getConfigProperties();
         verify(httpClientBuilder, times(2)).send();
         Assert.assertEquals(2, response.size());
         Assert.assertEquals("MIIDmzCCAoOgAwI", response.get("primary.crt"));
@@ -133,7 +133,7 @@ public class VaultProviderImplTest {
         when(objectMapper.readValue(anyString(), Mockito.<TypeReference<Map<String, Object>>>any())).thenReturn(filesMap);
         ServiceConfigs serviceFiles = vaultProvider.getServiceFiles("abc1234", service);
         verify(httpClientBuilder, times(2)).send();
-        Map response = (HashMap) serviceFiles.getConfigProperties();
+        Map response = (Map) serviceFiles.getConfigProperties();
         Assert.assertEquals(2, response.size());
         Assert.assertEquals("logging info", response.get("logback.xml"));
     }